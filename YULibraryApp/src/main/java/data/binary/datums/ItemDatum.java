@@ -15,7 +15,8 @@ public class ItemDatum implements Datum {
     public static final int LOCATION_LENGTH = 256;
     public static final int ITEM_ID_SIZE = 8; // Long.SIZE / Byte.SIZE
     public static final int ENABLED_SIZE = 1;
-    public static final int ITEM_DATUM_SIZE = 345; // Updated size including new fields
+    public static final int ITEM_DATUM_SIZE = ITEM_ID_SIZE + TITLE_LENGTH + AUTHOR_LENGTH + ENABLED_SIZE
+            + Integer.BYTES + Byte.BYTES + LOCATION_LENGTH; // 350: id, title, author, enabled, copies, lost, location
     public long itemId; // Unique identifier for the item : 8 Bytes
     public String title; // Title of the item : 50 characters, 50 bytes
     public String author; // Author of the item : 30 characters, 30 bytes
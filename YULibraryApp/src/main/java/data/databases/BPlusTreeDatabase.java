@@ -0,0 +1,743 @@
+package data.databases;
+
+import data.Record;
+import data.binary.datums.Datum;
+import data.parsers.binary.BinaryParser;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * A disk-backed database that keeps its records in key order in a B+tree of fixed-size pages, so besides point
+ * lookups it can answer {@link #floor(String)}, {@link #ceiling(String)} and {@link #range(String, String)} queries
+ * without holding the whole data set on the heap. Keys are the int keys the {@link BinaryParser} formats already use,
+ * ordered numerically.
+ * <p>Leaves store each record as its key followed by the parser's bytes, unchanged, and are chained both ways for
+ * ordered scans. Inner pages hold separator keys and child page numbers. Pages are cached in a {@link BufferPool};
+ * changes reach the file when a page is evicted or on {@link #flush()} and {@link #close()}. There is no log, so
+ * changes since the last flush are lost in a crash.</p>
+ * <p>Any number of readers run in parallel; writers take the tree lock exclusively. Deletes leave underfull leaves in
+ * place instead of merging them: the tree never shrinks, but it also never rebalances under a reader.</p>
+ *
+ * @param <T> The Datum type stored in the tree.
+ */
+public class BPlusTreeDatabase<T extends Datum> implements IDatabase<T> {
+
+    private static final Logger LOGGER = Logger.getLogger(BPlusTreeDatabase.class.getName());
+
+    public static final int DEFAULT_CACHE_PAGES = 256;
+
+    private static final int MAGIC = 0x42505431; // "BPT1"
+    private static final int MIN_PAGE_SIZE = 4096;
+    private static final int MIN_LEAF_RECORDS = 4;
+
+    // File header, in page 0
+    private static final int HEADER_PAGE = 0;
+    private static final int H_MAGIC = 0;
+    private static final int H_PAGE_SIZE = 4;
+    private static final int H_RECORD_SIZE = 8;
+    private static final int H_ROOT = 12;
+    private static final int H_PAGE_COUNT = 16;
+    private static final int H_SIZE = 20;
+
+    // Every page: [type byte][pad][count short]; leaves add [next int][prev int], then (key, record) entries.
+    // Inner pages follow with child 0, key 0, child 1, ..., key n-1, child n.
+    private static final byte LEAF = 1;
+    private static final byte INNER = 2;
+    private static final int TYPE_OFFSET = 0;
+    private static final int COUNT_OFFSET = 2;
+    private static final int NEXT_OFFSET = 4;
+    private static final int PREV_OFFSET = 8;
+    private static final int LEAF_HEADER = 12;
+    private static final int INNER_HEADER = 4;
+    private static final int NO_PAGE = 0; // page 0 is the file header, so it is never a sibling
+    private static final long NO_SPLIT = Long.MIN_VALUE; // a split never produces page 0 either
+
+    private final String path;
+    private final BinaryParser<T> binaryParser;
+    private final int recordSize;
+    private final int entrySize;
+    private final int pageSize;
+    private final int leafCapacity;
+    private final int innerCapacity;
+    private final FileChannel channel;
+    private final BufferPool pool;
+    private final ReentrantReadWriteLock treeLock = new ReentrantReadWriteLock();
+    private int root;
+    private int pageCount;
+    private int size;
+
+    /**
+     * Opens or creates a tree file with the default number of cached pages.
+     *
+     * @param path         The file system path of the tree file.
+     * @param binaryParser The parser used to convert records to and from their binary form.
+     */
+    public BPlusTreeDatabase(String path, BinaryParser<T> binaryParser) {
+        this(path, binaryParser, DEFAULT_CACHE_PAGES);
+    }
+
+    /**
+     * Opens or creates a tree file.
+     *
+     * @param path         The file system path of the tree file.
+     * @param binaryParser The parser used to convert records to and from their binary form.
+     * @param cachePages   The number of pages the buffer pool keeps in memory.
+     * @throws UncheckedIOException     If the file cannot be opened or read.
+     * @throws IllegalArgumentException If the file is not a tree file, or holds records of another size.
+     */
+    public BPlusTreeDatabase(String path, BinaryParser<T> binaryParser, int cachePages) {
+        this.path = path;
+        this.binaryParser = binaryParser;
+        this.recordSize = binaryParser.getSize();
+        this.entrySize = Integer.BYTES + recordSize;
+        try {
+            this.channel = FileChannel.open(Paths.get(path), READ, WRITE, CREATE);
+            ByteBuffer header = ByteBuffer.allocate(H_SIZE + Integer.BYTES);
+            boolean fresh = channel.size() == 0;
+            if (fresh) {
+                this.pageSize = pageSizeFor(entrySize);
+            } else {
+                channel.read(header, 0);
+                if (header.getInt(H_MAGIC) != MAGIC) {
+                    throw new IllegalArgumentException(path + " is not a B+tree file");
+                }
+                if (header.getInt(H_RECORD_SIZE) != recordSize) {
+                    throw new IllegalArgumentException(path + " holds records of " + header.getInt(H_RECORD_SIZE)
+                            + " bytes, the parser writes " + recordSize);
+                }
+                this.pageSize = header.getInt(H_PAGE_SIZE);
+            }
+            this.leafCapacity = (pageSize - LEAF_HEADER) / entrySize;
+            this.innerCapacity = (pageSize - INNER_HEADER - Integer.BYTES) / (2 * Integer.BYTES);
+            this.pool = new BufferPool(channel, pageSize, cachePages);
+            if (fresh) {
+                root = 1;
+                pageCount = 2;
+                BufferPool.Page leaf = pool.allocate(root);
+                leaf.data.put(TYPE_OFFSET, LEAF);
+                pool.unpin(leaf);
+                writeHeader();
+            } else {
+                root = header.getInt(H_ROOT);
+                pageCount = header.getInt(H_PAGE_COUNT);
+                size = header.getInt(H_SIZE);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open B+tree file " + path, e);
+        }
+    }
+
+    /**
+     * Adds a record, replacing any record with the same key.
+     */
+    @Override
+    public void add(Record<T> record) {
+        treeLock.writeLock().lock();
+        try {
+            put(Integer.parseInt(record.getKey()), binaryParser.getData(record));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write to " + path, e);
+        } finally {
+            treeLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds several records under one acquisition of the tree lock, in key order so consecutive inserts land in the
+     * same leaves.
+     */
+    @Override
+    public void addAll(Collection<Record<T>> records) {
+        List<Record<T>> sorted = new ArrayList<>(records);
+        sorted.sort((a, b) -> Integer.compare(Integer.parseInt(a.getKey()), Integer.parseInt(b.getKey())));
+        treeLock.writeLock().lock();
+        try {
+            for (Record<T> record : sorted) {
+                put(Integer.parseInt(record.getKey()), binaryParser.getData(record));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write to " + path, e);
+        } finally {
+            treeLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void update(String key, Record<T> record) {
+        add(record);
+    }
+
+    @Override
+    public void delete(String key) {
+        int k = Integer.parseInt(key);
+        treeLock.writeLock().lock();
+        try {
+            BufferPool.Page leaf = findLeaf(k);
+            try {
+                int index = search(leaf, k);
+                if (index >= 0) {
+                    int count = count(leaf);
+                    byte[] bytes = leaf.data.array();
+                    System.arraycopy(bytes, entryOffset(index + 1), bytes, entryOffset(index), (count - index - 1) * entrySize);
+                    setCount(leaf, count - 1);
+                    leaf.dirty = true;
+                    size--;
+                }
+            } finally {
+                pool.unpin(leaf);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write to " + path, e);
+        } finally {
+            treeLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Record<T> read(String key) {
+        int k = Integer.parseInt(key);
+        treeLock.readLock().lock();
+        try {
+            BufferPool.Page leaf = findLeaf(k);
+            try {
+                int index = search(leaf, k);
+                return index >= 0 ? recordAt(leaf, index) : null;
+            } finally {
+                pool.unpin(leaf);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read from " + path, e);
+        } finally {
+            treeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reads several records in key order, staying on a leaf for as long as the next key can be on it.
+     */
+    @Override
+    public Map<String, Record<T>> readMany(Collection<String> keys) {
+        int[] sorted = keys.stream().mapToInt(Integer::parseInt).sorted().distinct().toArray();
+        Map<Integer, Record<T>> byKey = new LinkedHashMap<>();
+        treeLock.readLock().lock();
+        try {
+            BufferPool.Page leaf = null;
+            try {
+                for (int k : sorted) {
+                    int count = leaf == null ? 0 : count(leaf);
+                    if (leaf == null || count == 0 || k > keyAt(leaf, count - 1)) {
+                        if (leaf != null) {
+                            pool.unpin(leaf);
+                        }
+                        leaf = findLeaf(k);
+                    }
+                    int index = search(leaf, k);
+                    if (index >= 0) {
+                        byKey.put(k, recordAt(leaf, index));
+                    }
+                }
+            } finally {
+                if (leaf != null) {
+                    pool.unpin(leaf);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read from " + path, e);
+        } finally {
+            treeLock.readLock().unlock();
+        }
+
+        Map<String, Record<T>> ordered = new LinkedHashMap<>();
+        for (String key : keys) {
+            Record<T> record = byKey.get(Integer.parseInt(key));
+            if (record != null) {
+                ordered.put(key, record);
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * @return Every record, in key order.
+     */
+    @Override
+    public List<Record<T>> readAll() {
+        return range(Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return The records whose keys lie between {@code fromKey} and {@code toKey}, both inclusive, in key order.
+     */
+    public List<Record<T>> range(String fromKey, String toKey) {
+        return range(Integer.parseInt(fromKey), Integer.parseInt(toKey));
+    }
+
+    /**
+     * @return The record with the greatest key less than or equal to {@code key}, or {@code null} if there is none.
+     */
+    public Record<T> floor(String key) {
+        int k = Integer.parseInt(key);
+        treeLock.readLock().lock();
+        try {
+            BufferPool.Page leaf = findLeaf(k);
+            int index = search(leaf, k);
+            int position = index >= 0 ? index : -index - 2; // the entry before the insertion point
+            while (position < 0) {
+                int prev = leaf.data.getInt(PREV_OFFSET);
+                pool.unpin(leaf);
+                if (prev == NO_PAGE) {
+                    return null;
+                }
+                leaf = pool.fetch(prev);
+                position = count(leaf) - 1;
+            }
+            try {
+                return recordAt(leaf, position);
+            } finally {
+                pool.unpin(leaf);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read from " + path, e);
+        } finally {
+            treeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return The record with the least key greater than or equal to {@code key}, or {@code null} if there is none.
+     */
+    public Record<T> ceiling(String key) {
+        int k = Integer.parseInt(key);
+        treeLock.readLock().lock();
+        try {
+            BufferPool.Page leaf = findLeaf(k);
+            int index = search(leaf, k);
+            int position = index >= 0 ? index : -index - 1;
+            while (position >= count(leaf)) {
+                int next = leaf.data.getInt(NEXT_OFFSET);
+                pool.unpin(leaf);
+                if (next == NO_PAGE) {
+                    return null;
+                }
+                leaf = pool.fetch(next);
+                position = 0;
+            }
+            try {
+                return recordAt(leaf, position);
+            } finally {
+                pool.unpin(leaf);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read from " + path, e);
+        } finally {
+            treeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes every cached change and the file header to disk.
+     */
+    public void flush() {
+        treeLock.writeLock().lock();
+        try {
+            writeHeader();
+            binaryParser.sync();
+            pool.flush();
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to flush " + path, e);
+        } finally {
+            treeLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Flushes and closes the tree file.
+     */
+    public void close() {
+        flush();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to close " + path, e);
+        }
+    }
+
+    /**
+     * @return The number of records in the tree.
+     */
+    public int size() {
+        treeLock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            treeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return The number of page levels from the root down to the leaves, inclusive.
+     */
+    public int getHeight() {
+        treeLock.readLock().lock();
+        try {
+            int height = 1;
+            int pageId = root;
+            while (true) {
+                BufferPool.Page page = pool.fetch(pageId);
+                try {
+                    if (page.data.get(TYPE_OFFSET) == LEAF) {
+                        return height;
+                    }
+                    pageId = childAt(page, 0);
+                    height++;
+                } finally {
+                    pool.unpin(page);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read from " + path, e);
+        } finally {
+            treeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return The share of page fetches served from the buffer pool.
+     */
+    public double getCacheHitRatio() {
+        return pool.getHitRatio();
+    }
+
+    private List<Record<T>> range(int from, int to) {
+        List<Record<T>> records = new ArrayList<>();
+        if (from > to) {
+            return records;
+        }
+        treeLock.readLock().lock();
+        try {
+            BufferPool.Page leaf = findLeaf(from);
+            int index = search(leaf, from);
+            int position = index >= 0 ? index : -index - 1;
+            while (true) {
+                int next;
+                try {
+                    int count = count(leaf);
+                    for (; position < count; position++) {
+                        if (keyAt(leaf, position) > to) {
+                            return records;
+                        }
+                        records.add(recordAt(leaf, position));
+                    }
+                    next = leaf.data.getInt(NEXT_OFFSET);
+                } finally {
+                    pool.unpin(leaf);
+                }
+                if (next == NO_PAGE) {
+                    return records;
+                }
+                leaf = pool.fetch(next);
+                position = 0;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read from " + path, e);
+        } finally {
+            treeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Descends from the root to the leaf that holds, or would hold, {@code key}.
+     *
+     * @return The leaf, pinned.
+     */
+    private BufferPool.Page findLeaf(int key) throws IOException {
+        BufferPool.Page page = pool.fetch(root);
+        while (page.data.get(TYPE_OFFSET) == INNER) {
+            int child = childAt(page, childIndex(page, key));
+            pool.unpin(page);
+            page = pool.fetch(child);
+        }
+        return page;
+    }
+
+    /**
+     * Inserts or replaces a record. Must be called with the write lock held.
+     */
+    private void put(int key, byte[] data) throws IOException {
+        long split = insert(root, key, data);
+        if (split != NO_SPLIT) {
+            BufferPool.Page newRoot = pool.allocate(pageCount++);
+            try {
+                newRoot.data.put(TYPE_OFFSET, INNER);
+                setCount(newRoot, 1);
+                setChildAt(newRoot, 0, root);
+                setKeyAt(newRoot, 0, splitKey(split));
+                setChildAt(newRoot, 1, splitPage(split));
+                root = newRoot.id;
+            } finally {
+                pool.unpin(newRoot);
+            }
+        }
+    }
+
+    /**
+     * Inserts into the subtree rooted at {@code pageId}.
+     *
+     * @return {@link #NO_SPLIT}, or the separator key (high half) and new right sibling (low half) if the page split.
+     */
+    private long insert(int pageId, int key, byte[] data) throws IOException {
+        BufferPool.Page page = pool.fetch(pageId);
+        try {
+            if (page.data.get(TYPE_OFFSET) == LEAF) {
+                return insertIntoLeaf(page, key, data);
+            }
+            int childIndex = childIndex(page, key);
+            long split = insert(childAt(page, childIndex), key, data);
+            if (split == NO_SPLIT) {
+                return NO_SPLIT;
+            }
+            return insertIntoInner(page, childIndex, splitKey(split), splitPage(split));
+        } finally {
+            pool.unpin(page);
+        }
+    }
+
+    private long insertIntoLeaf(BufferPool.Page leaf, int key, byte[] data) throws IOException {
+        int index = search(leaf, key);
+        byte[] bytes = leaf.data.array();
+        leaf.dirty = true;
+        if (index >= 0) {
+            System.arraycopy(data, 0, bytes, entryOffset(index) + Integer.BYTES, recordSize);
+            return NO_SPLIT;
+        }
+        size++;
+        int position = -index - 1;
+        int count = count(leaf);
+        if (count < leafCapacity) {
+            System.arraycopy(bytes, entryOffset(position), bytes, entryOffset(position + 1), (count - position) * entrySize);
+            writeEntry(leaf, position, key, data);
+            setCount(leaf, count + 1);
+            return NO_SPLIT;
+        }
+
+        // Full: lay the entries out with the new one in place, then give the upper half to a new right sibling
+        byte[] merged = new byte[(count + 1) * entrySize];
+        System.arraycopy(bytes, LEAF_HEADER, merged, 0, position * entrySize);
+        ByteBuffer.wrap(merged).putInt(position * entrySize, key);
+        System.arraycopy(data, 0, merged, position * entrySize + Integer.BYTES, recordSize);
+        System.arraycopy(bytes, entryOffset(position), merged, (position + 1) * entrySize, (count - position) * entrySize);
+        int leftCount = (count + 1) / 2;
+        int rightCount = count + 1 - leftCount;
+
+        BufferPool.Page right = pool.allocate(pageCount++);
+        try {
+            right.data.put(TYPE_OFFSET, LEAF);
+            System.arraycopy(merged, 0, bytes, LEAF_HEADER, leftCount * entrySize);
+            System.arraycopy(merged, leftCount * entrySize, right.data.array(), LEAF_HEADER, rightCount * entrySize);
+            setCount(leaf, leftCount);
+            setCount(right, rightCount);
+
+            int next = leaf.data.getInt(NEXT_OFFSET);
+            right.data.putInt(NEXT_OFFSET, next);
+            right.data.putInt(PREV_OFFSET, leaf.id);
+            leaf.data.putInt(NEXT_OFFSET, right.id);
+            if (next != NO_PAGE) {
+                BufferPool.Page after = pool.fetch(next);
+                after.data.putInt(PREV_OFFSET, right.id);
+                after.dirty = true;
+                pool.unpin(after);
+            }
+            return split(keyAt(right, 0), right.id);
+        } finally {
+            pool.unpin(right);
+        }
+    }
+
+    /**
+     * Adds the separator and right child produced by splitting child {@code childIndex}, splitting this page in turn
+     * if it is full: the middle key moves up and the keys after it go to a new right sibling.
+     */
+    private long insertIntoInner(BufferPool.Page page, int childIndex, int separator, int rightChild) throws IOException {
+        int count = count(page);
+        int[] keys = new int[count + 1];
+        int[] children = new int[count + 2];
+        for (int i = 0, k = 0; i < count; i++) {
+            if (i == childIndex) {
+                keys[k++] = separator;
+            }
+            keys[k++] = innerKeyAt(page, i);
+        }
+        if (childIndex == count) {
+            keys[count] = separator;
+        }
+        for (int i = 0, c = 0; i <= count; i++) {
+            children[c++] = childAt(page, i);
+            if (i == childIndex) {
+                children[c++] = rightChild;
+            }
+        }
+        page.dirty = true;
+        if (count < innerCapacity) {
+            writeInner(page, keys, children, 0, count + 1);
+            return NO_SPLIT;
+        }
+
+        int middle = (count + 1) / 2;
+        BufferPool.Page right = pool.allocate(pageCount++);
+        try {
+            right.data.put(TYPE_OFFSET, INNER);
+            writeInner(page, keys, children, 0, middle);
+            writeInner(right, keys, children, middle + 1, count - middle);
+            return split(keys[middle], right.id);
+        } finally {
+            pool.unpin(right);
+        }
+    }
+
+    /**
+     * Writes {@code keyCount} keys starting at {@code firstKey} into an inner page, with the children around them.
+     */
+    private void writeInner(BufferPool.Page page, int[] keys, int[] children, int firstKey, int keyCount) {
+        setCount(page, keyCount);
+        for (int i = 0; i < keyCount; i++) {
+            setChildAt(page, i, children[firstKey + i]);
+            setKeyAt(page, i, keys[firstKey + i]);
+        }
+        setChildAt(page, keyCount, children[firstKey + keyCount]);
+    }
+
+    private void writeHeader() throws IOException {
+        BufferPool.Page header = pool.fetch(HEADER_PAGE);
+        try {
+            header.data.putInt(H_MAGIC, MAGIC);
+            header.data.putInt(H_PAGE_SIZE, pageSize);
+            header.data.putInt(H_RECORD_SIZE, recordSize);
+            header.data.putInt(H_ROOT, root);
+            header.data.putInt(H_PAGE_COUNT, pageCount);
+            header.data.putInt(H_SIZE, size);
+            header.dirty = true;
+        } finally {
+            pool.unpin(header);
+        }
+    }
+
+    /**
+     * Binary search of a leaf.
+     *
+     * @return The index of {@code key}, or {@code -(insertion point) - 1} if it is not in the leaf.
+     */
+    private int search(BufferPool.Page leaf, int key) {
+        int low = 0;
+        int high = count(leaf) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midKey = keyAt(leaf, mid);
+            if (midKey < key) {
+                low = mid + 1;
+            } else if (midKey > key) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * @return The child of an inner page to follow for {@code key}: the number of separators less than or equal to it.
+     */
+    private int childIndex(BufferPool.Page page, int key) {
+        int low = 0;
+        int high = count(page);
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (innerKeyAt(page, mid) <= key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private Record<T> recordAt(BufferPool.Page leaf, int index) {
+        byte[] data = new byte[recordSize];
+        leaf.data.get(entryOffset(index) + Integer.BYTES, data);
+        return binaryParser.parseData(data);
+    }
+
+    private void writeEntry(BufferPool.Page leaf, int index, int key, byte[] data) {
+        leaf.data.putInt(entryOffset(index), key);
+        leaf.data.put(entryOffset(index) + Integer.BYTES, data);
+    }
+
+    private int entryOffset(int index) {
+        return LEAF_HEADER + index * entrySize;
+    }
+
+    private int keyAt(BufferPool.Page leaf, int index) {
+        return leaf.data.getInt(entryOffset(index));
+    }
+
+    private static int count(BufferPool.Page page) {
+        return page.data.getShort(COUNT_OFFSET) & 0xffff;
+    }
+
+    private static void setCount(BufferPool.Page page, int count) {
+        page.data.putShort(COUNT_OFFSET, (short) count);
+        page.dirty = true;
+    }
+
+    private static int childAt(BufferPool.Page page, int index) {
+        return page.data.getInt(INNER_HEADER + index * 2 * Integer.BYTES);
+    }
+
+    private static void setChildAt(BufferPool.Page page, int index, int child) {
+        page.data.putInt(INNER_HEADER + index * 2 * Integer.BYTES, child);
+    }
+
+    private static int innerKeyAt(BufferPool.Page page, int index) {
+        return page.data.getInt(INNER_HEADER + Integer.BYTES + index * 2 * Integer.BYTES);
+    }
+
+    private static void setKeyAt(BufferPool.Page page, int index, int key) {
+        page.data.putInt(INNER_HEADER + Integer.BYTES + index * 2 * Integer.BYTES, key);
+    }
+
+    private static long split(int separator, int rightPage) {
+        return ((long) separator << 32) | (rightPage & 0xffffffffL);
+    }
+
+    private static int splitKey(long split) {
+        return (int) (split >>> 32);
+    }
+
+    private static int splitPage(long split) {
+        return (int) split;
+    }
+
+    /**
+     * The smallest power-of-two page, at least {@link #MIN_PAGE_SIZE}, that fits {@link #MIN_LEAF_RECORDS} entries.
+     */
+    private static int pageSizeFor(int entrySize) {
+        int pageSize = MIN_PAGE_SIZE;
+        while ((pageSize - LEAF_HEADER) / entrySize < MIN_LEAF_RECORDS) {
+            pageSize *= 2;
+        }
+        return pageSize;
+    }
+}
@@ -0,0 +1,67 @@
+package data.databases;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A daemon thread that runs a flush whenever a condition holds. It checks the condition every poll interval, and
+ * writers can {@link #nudge()} it to check right away.
+ */
+final class BackgroundFlusher {
+
+    private static final Logger LOGGER = Logger.getLogger(BackgroundFlusher.class.getName());
+
+    private final Thread thread;
+    private final Runnable flush;
+    private final BooleanSupplier due;
+    private final long pollNanos;
+    private volatile boolean running = true;
+
+    BackgroundFlusher(String name, long pollInterval, TimeUnit unit, BooleanSupplier due, Runnable flush) {
+        this.flush = flush;
+        this.due = due;
+        this.pollNanos = unit.toNanos(pollInterval);
+        this.thread = new Thread(this::run, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Wakes the flusher so it re-checks its condition without waiting for the next tick.
+     */
+    void nudge() {
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Stops the flusher and waits for a flush in progress to finish. Pending changes are left for the caller.
+     */
+    void stop() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(TimeUnit.MINUTES.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        while (running) {
+            LockSupport.parkNanos(this, pollNanos);
+            if (!running) {
+                return;
+            }
+            try {
+                if (due.getAsBoolean()) {
+                    flush.run();
+                }
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.SEVERE, "Background flush failed", e);
+            }
+        }
+    }
+}
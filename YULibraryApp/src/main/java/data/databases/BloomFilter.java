@@ -0,0 +1,164 @@
+package data.databases;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * A Bloom filter over int record keys, so a lookup for a key that was never written can be answered "no" from a few
+ * cache lines instead of the slot index or the mapped file. Keys cannot be removed; deleted keys keep their bits
+ * until the table is rehashed into a fresh filter.
+ * <p>Like {@link SlotIndex} there is one writer at a time (the thread holding the database monitor) and any number of
+ * lock-free readers. Words are published with release/acquire, and a key's bits are set before the key becomes
+ * visible anywhere else, so a reader never gets a false "no" for a written key.</p>
+ */
+final class BloomFilter {
+
+    private static final int BITS_PER_KEY = 10; // about a 1% false-positive rate at the expected key count
+    private static final int HASH_COUNT = 7;    // ln 2 * BITS_PER_KEY, rounded
+    private static final int FILE_MAGIC = 0x424C4D31; // "BLM1"
+    private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final long[] words;
+    private final long bitCount;
+
+    /**
+     * @param expectedKeys The number of keys to size the filter for.
+     */
+    BloomFilter(int expectedKeys) {
+        this(new long[(int) ((Math.max(64L, (long) expectedKeys * BITS_PER_KEY) + 63) / 64)]);
+    }
+
+    private BloomFilter(long[] words) {
+        this.words = words;
+        this.bitCount = (long) words.length * 64;
+    }
+
+    /**
+     * Sets the bits of a key. Writer only.
+     */
+    void put(int key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < HASH_COUNT; i++) {
+            long bit = Integer.toUnsignedLong(h1 + i * h2) % bitCount;
+            int word = (int) (bit >>> 6);
+            long current = (long) WORDS.getOpaque(words, word);
+            long updated = current | (1L << bit);
+            if (updated != current) {
+                WORDS.setRelease(words, word, updated);
+            }
+        }
+    }
+
+    /**
+     * @return {@code false} if the key was certainly never put; {@code true} if it may have been.
+     */
+    boolean mightContain(int key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < HASH_COUNT; i++) {
+            long bit = Integer.toUnsignedLong(h1 + i * h2) % bitCount;
+            if (((long) WORDS.getAcquire(words, (int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes the filter to {@code file}, tagged with the table capacity it was built for. Writer only.
+     */
+    void save(Path file, int capacity) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(2 * Integer.BYTES + serializedSize());
+        buffer.putInt(FILE_MAGIC).putInt(capacity);
+        writeTo(buffer);
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(file, WRITE, CREATE, TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Loads a filter written by {@link #save} and deletes the file, so a crash before the next save cannot leave a
+     * filter behind that misses later writes.
+     *
+     * @return The filter, or {@code null} if there is none or it was built for a table of another capacity.
+     */
+    static BloomFilter load(Path file, int capacity) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+            if (buffer.remaining() < 3 * Integer.BYTES || buffer.getInt() != FILE_MAGIC || buffer.getInt() != capacity) {
+                return null;
+            }
+            return readFrom(buffer);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * @return The number of bytes {@link #writeTo(ByteBuffer)} writes.
+     */
+    int serializedSize() {
+        return Integer.BYTES + words.length * Long.BYTES;
+    }
+
+    /**
+     * Writes the word count and the words at the buffer's position, for filters stored inside another file.
+     * Writer only.
+     */
+    void writeTo(ByteBuffer buffer) {
+        buffer.putInt(words.length);
+        for (long word : words) {
+            buffer.putLong(word);
+        }
+    }
+
+    /**
+     * Reads a filter written by {@link #writeTo(ByteBuffer)} from the buffer's position.
+     *
+     * @return The filter, or {@code null} if the buffer does not hold exactly one.
+     */
+    static BloomFilter readFrom(ByteBuffer buffer) {
+        int wordCount = buffer.getInt();
+        if (wordCount <= 0 || buffer.remaining() != (long) wordCount * Long.BYTES) {
+            return null;
+        }
+        long[] words = new long[wordCount];
+        buffer.asLongBuffer().get(words);
+        buffer.position(buffer.position() + wordCount * Long.BYTES);
+        return new BloomFilter(words);
+    }
+
+    /**
+     * Two independent 32-bit hashes of the key in one long, for double hashing; the finalizer of MurmurHash3's
+     * 64-bit variant.
+     */
+    private static long hash(int key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h | 1L << 32; // keep the second hash odd, so the probe sequence never collapses onto one bit
+    }
+}
@@ -0,0 +1,145 @@
+package data.databases;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A fixed number of page frames caching a file of fixed-size pages, evicting the least recently used unpinned page
+ * when a frame is needed. Dirty pages reach the file when they are evicted or on {@link #flush()}.
+ * <p>Callers pin a page with {@link #fetch(int)} or {@link #allocate(int)} and must {@link #unpin(Page)} it when done;
+ * a pinned page is never evicted. If every frame is pinned the pool grows past its capacity rather than fail. The
+ * pool's bookkeeping is synchronized; the contents of a page are guarded by whoever owns the file, e.g. the tree
+ * lock of a {@link BPlusTreeDatabase}.</p>
+ */
+final class BufferPool {
+
+    private final FileChannel channel;
+    private final int pageSize;
+    private final int capacity;
+    private final LinkedHashMap<Integer, Page> frames = new LinkedHashMap<>(16, 0.75f, true); // access order
+    private long hits;
+    private long misses;
+
+    /**
+     * @param channel  The open page file. The pool reads and writes it with positional I/O.
+     * @param pageSize The size of one page in bytes.
+     * @param capacity The number of pages to keep cached.
+     */
+    BufferPool(FileChannel channel, int pageSize, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.channel = channel;
+        this.pageSize = pageSize;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Pins a page, reading it from the file if it is not cached. A page past the end of the file reads as zeroes.
+     */
+    synchronized Page fetch(int pageId) throws IOException {
+        Page page = frames.get(pageId);
+        if (page != null) {
+            hits++;
+        } else {
+            misses++;
+            page = newFrame(pageId);
+            ByteBuffer buffer = page.data.duplicate();
+            long position = (long) pageId * pageSize;
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    break; // past the end of the file, the rest stays zeroed
+                }
+            }
+        }
+        page.pins++;
+        return page;
+    }
+
+    /**
+     * Pins a new, zeroed page without reading the file. The page starts out dirty.
+     */
+    synchronized Page allocate(int pageId) throws IOException {
+        Page page = newFrame(pageId);
+        page.dirty = true;
+        page.pins++;
+        return page;
+    }
+
+    synchronized void unpin(Page page) {
+        page.pins--;
+    }
+
+    /**
+     * Writes every dirty page to the file and forces it to the storage device.
+     */
+    synchronized void flush() throws IOException {
+        for (Page page : frames.values()) {
+            if (page.dirty) {
+                write(page);
+            }
+        }
+        channel.force(false);
+    }
+
+    /**
+     * @return The share of fetches answered from a cached frame since the pool was created.
+     */
+    synchronized double getHitRatio() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    private Page newFrame(int pageId) throws IOException {
+        if (frames.size() >= capacity) {
+            evictOne();
+        }
+        Page page = new Page(pageId, ByteBuffer.allocate(pageSize));
+        frames.put(pageId, page);
+        return page;
+    }
+
+    private void evictOne() throws IOException {
+        Iterator<Map.Entry<Integer, Page>> eldestFirst = frames.entrySet().iterator();
+        while (eldestFirst.hasNext()) {
+            Page page = eldestFirst.next().getValue();
+            if (page.pins == 0) {
+                if (page.dirty) {
+                    write(page);
+                }
+                eldestFirst.remove();
+                return;
+            }
+        }
+        // Every frame is pinned: let the pool grow instead of failing the caller
+    }
+
+    private void write(Page page) throws IOException {
+        ByteBuffer buffer = page.data.duplicate();
+        buffer.clear();
+        long position = (long) page.id * pageSize;
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+        page.dirty = false;
+    }
+
+    /**
+     * One cached page. Read and write {@link #data} with absolute gets and puts, and set {@link #dirty} after writing.
+     */
+    static final class Page {
+        final int id;
+        final ByteBuffer data;
+        boolean dirty;
+        private int pins;
+
+        private Page(int id, ByteBuffer data) {
+            this.id = id;
+            this.data = data;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package data.databases;
+
+/**
+ * A point-in-time view of a database's pending change buffer, handed to a {@link FlushPolicy} to decide whether the
+ * buffer should be written out.
+ */
+public final class ChangeBufferStats {
+    private final int pendingRecords;
+    private final long pendingBytes;
+    private final long oldestChangeAgeNanos;
+    private final double writesPerSecond;
+
+    public ChangeBufferStats(int pendingRecords, long pendingBytes, long oldestChangeAgeNanos, double writesPerSecond) {
+        this.pendingRecords = pendingRecords;
+        this.pendingBytes = pendingBytes;
+        this.oldestChangeAgeNanos = oldestChangeAgeNanos;
+        this.writesPerSecond = writesPerSecond;
+    }
+
+    /**
+     * @return The number of distinct keys with a pending change.
+     */
+    public int getPendingRecords() {
+        return pendingRecords;
+    }
+
+    /**
+     * @return The number of bytes the pending changes will write to the table.
+     */
+    public long getPendingBytes() {
+        return pendingBytes;
+    }
+
+    /**
+     * @return How long ago the oldest pending change was buffered, in nanoseconds, or 0 if nothing is pending.
+     */
+    public long getOldestChangeAgeNanos() {
+        return oldestChangeAgeNanos;
+    }
+
+    /**
+     * @return The recently observed write rate, smoothed over the last few seconds.
+     */
+    public double getWritesPerSecond() {
+        return writesPerSecond;
+    }
+
+    @Override
+    public String toString() {
+        return "ChangeBufferStats{" +
+                "pendingRecords=" + pendingRecords +
+                ", pendingBytes=" + pendingBytes +
+                ", oldestChangeAgeNanos=" + oldestChangeAgeNanos +
+                ", writesPerSecond=" + writesPerSecond +
+                '}';
+    }
+}
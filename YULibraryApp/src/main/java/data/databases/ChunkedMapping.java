@@ -0,0 +1,100 @@
+package data.databases;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A file of fixed-size records mapped as several {@link MappedByteBuffer} regions, so one table can grow past the
+ * 2 GB a single mapping can address. Each region holds a whole number of records, so a record never straddles two
+ * regions and every access stays a single absolute get or put on one buffer.
+ * <p>Records are addressed by slot; the byte offset of a slot is computed as a {@code long}. Like the buffers it wraps,
+ * it does no locking of its own.</p>
+ */
+final class ChunkedMapping {
+
+    private final MappedByteBuffer[] regions;
+    private final int recordSize;
+    private final int slotsPerRegion;
+
+    /**
+     * Maps {@code slots} records of {@code channel}, growing the file if it is shorter.
+     *
+     * @param channel     The open table file. The mapping stays valid after the channel is closed.
+     * @param slots       The number of records to map.
+     * @param recordSize  The size of one record in bytes.
+     * @param regionBytes The largest region to map; rounded down to a whole number of records.
+     * @throws IOException If a region cannot be mapped.
+     */
+    ChunkedMapping(FileChannel channel, int slots, int recordSize, int regionBytes) throws IOException {
+        this(channel, 0, slots, recordSize, regionBytes);
+    }
+
+    /**
+     * Maps {@code slots} records of {@code channel} that start {@code baseOffset} bytes into the file, after a header.
+     *
+     * @see #ChunkedMapping(FileChannel, int, int, int)
+     */
+    ChunkedMapping(FileChannel channel, long baseOffset, int slots, int recordSize, int regionBytes) throws IOException {
+        if (regionBytes < recordSize) {
+            throw new IllegalArgumentException("A region of " + regionBytes + " bytes cannot hold a " + recordSize + " byte record");
+        }
+        this.recordSize = recordSize;
+        this.slotsPerRegion = regionBytes / recordSize;
+        this.regions = new MappedByteBuffer[Math.max(1, (slots + slotsPerRegion - 1) / slotsPerRegion)];
+        for (int i = 0; i < regions.length; i++) {
+            long firstSlot = (long) i * slotsPerRegion;
+            long regionSlots = Math.min(slotsPerRegion, slots - firstSlot);
+            regions[i] = channel.map(FileChannel.MapMode.READ_WRITE, baseOffset + firstSlot * recordSize,
+                    regionSlots * recordSize);
+        }
+    }
+
+    /**
+     * Copies the record in {@code slot} into {@code dst}.
+     */
+    void get(int slot, byte[] dst) {
+        regions[slot / slotsPerRegion].get(offsetInRegion(slot), dst);
+    }
+
+    /**
+     * Overwrites the record in {@code slot} with {@code src}.
+     */
+    void put(int slot, byte[] src) {
+        regions[slot / slotsPerRegion].put(offsetInRegion(slot), src);
+    }
+
+    /**
+     * @return The byte at {@code offset} within the record in {@code slot}.
+     */
+    byte getByte(int slot, int offset) {
+        return regions[slot / slotsPerRegion].get(offsetInRegion(slot) + offset);
+    }
+
+    /**
+     * @return The big-endian int at {@code offset} within the record in {@code slot}.
+     */
+    int getInt(int slot, int offset) {
+        return regions[slot / slotsPerRegion].getInt(offsetInRegion(slot) + offset);
+    }
+
+    /**
+     * Forces every region to the storage device.
+     */
+    void force() {
+        for (MappedByteBuffer region : regions) {
+            region.force();
+        }
+    }
+
+    /**
+     * @return The number of regions the file is mapped as.
+     */
+    int regionCount() {
+        return regions.length;
+    }
+
+    private int offsetInRegion(int slot) {
+        return (slot % slotsPerRegion) * recordSize; // below regionBytes, so it fits an int
+    }
+}
@@ -0,0 +1,180 @@
+package data.databases;
+
+/**
+ * A point-in-time view of how a {@link HashBasedDatabase} has behaved since it was opened: how far inserts probed,
+ * how full the table is, how much is waiting to be flushed, how long flushes took and how long reads took.
+ * <p>Counters are read one after another, not atomically, so a snapshot taken under load may be off by the
+ * operations that finished while it was taken.</p>
+ */
+public final class DatabaseMetrics {
+    private final int capacity;
+    private final double loadFactor;
+    private final int tombstones;
+    private final int pendingRecords;
+    private final long[] probeLengths;
+    private final long[] readLatency;
+    private final long[] flushLatency;
+    private final long flushCount;
+    private final long flushedRecords;
+    private final long lastFlushNanos;
+    private final int lastFlushRecords;
+
+    DatabaseMetrics(int capacity, double loadFactor, int tombstones, int pendingRecords, long[] probeLengths,
+                    long[] readLatency, long[] flushLatency, long flushCount, long flushedRecords,
+                    long lastFlushNanos, int lastFlushRecords) {
+        this.capacity = capacity;
+        this.loadFactor = loadFactor;
+        this.tombstones = tombstones;
+        this.pendingRecords = pendingRecords;
+        this.probeLengths = probeLengths;
+        this.readLatency = readLatency;
+        this.flushLatency = flushLatency;
+        this.flushCount = flushCount;
+        this.flushedRecords = flushedRecords;
+        this.lastFlushNanos = lastFlushNanos;
+        this.lastFlushRecords = lastFlushRecords;
+    }
+
+    /**
+     * @return The number of slots in the table.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return The share of slots holding a live record, as last observed by a flush.
+     */
+    public double getLoadFactor() {
+        return loadFactor;
+    }
+
+    /**
+     * @return The number of slots holding a tombstone, as last observed by a flush.
+     */
+    public int getTombstoneCount() {
+        return tombstones;
+    }
+
+    /**
+     * @return The number of distinct keys with a change waiting to be flushed.
+     */
+    public int getPendingRecords() {
+        return pendingRecords;
+    }
+
+    /**
+     * @return How many inserts stepped each number of slots past their home slot before finding a free one, indexed
+     * by that number. The last element counts the inserts that found no slot and made the table grow.
+     */
+    public long[] getProbeLengthHistogram() {
+        return probeLengths.clone();
+    }
+
+    /**
+     * @return The mean number of slots an insert stepped past its home slot, failed inserts included.
+     */
+    public double getMeanProbeLength() {
+        long count = 0;
+        long sum = 0;
+        for (int length = 0; length < probeLengths.length; length++) {
+            count += probeLengths[length];
+            sum += length * probeLengths[length];
+        }
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * @return The longest probe of any insert so far.
+     */
+    public int getMaxProbeLength() {
+        for (int length = probeLengths.length - 1; length > 0; length--) {
+            if (probeLengths[length] != 0) {
+                return length;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return The number of single-key reads.
+     */
+    public long getReadCount() {
+        long count = 0;
+        for (long bucket : readLatency) {
+            count += bucket;
+        }
+        return count;
+    }
+
+    /**
+     * @param quantile The quantile, in [0, 1]; 0.99 for the 99th percentile.
+     * @return The read latency at that quantile, in nanoseconds, within 12.5%; 0 if nothing was read.
+     */
+    public long getReadLatencyNanos(double quantile) {
+        return LatencyHistogram.valueAt(readLatency, quantile);
+    }
+
+    /**
+     * @param quantile The quantile, in [0, 1]; 0.99 for the 99th percentile.
+     * @return The flush duration at that quantile, in nanoseconds, within 12.5%; 0 if nothing was flushed.
+     */
+    public long getFlushLatencyNanos(double quantile) {
+        return LatencyHistogram.valueAt(flushLatency, quantile);
+    }
+
+    /**
+     * @return The number of flushes that wrote something.
+     */
+    public long getFlushCount() {
+        return flushCount;
+    }
+
+    /**
+     * @return The number of changes those flushes took from the buffer, deferred ones included.
+     */
+    public long getFlushedRecords() {
+        return flushedRecords;
+    }
+
+    /**
+     * @return How long the last flush took, in nanoseconds.
+     */
+    public long getLastFlushNanos() {
+        return lastFlushNanos;
+    }
+
+    /**
+     * @return The number of changes the last flush took from the buffer.
+     */
+    public int getLastFlushRecords() {
+        return lastFlushRecords;
+    }
+
+    /**
+     * @return The snapshot as one line of space-separated {@code name=value} pairs, durations in microseconds.
+     */
+    @Override
+    public String toString() {
+        return "capacity=" + capacity +
+                " loadFactor=" + String.format("%.4f", loadFactor) +
+                " tombstones=" + tombstones +
+                " pendingRecords=" + pendingRecords +
+                " meanProbeLength=" + String.format("%.3f", getMeanProbeLength()) +
+                " maxProbeLength=" + getMaxProbeLength() +
+                " failedProbes=" + probeLengths[probeLengths.length - 1] +
+                " reads=" + getReadCount() +
+                " readP50Us=" + micros(getReadLatencyNanos(0.5)) +
+                " readP99Us=" + micros(getReadLatencyNanos(0.99)) +
+                " readP999Us=" + micros(getReadLatencyNanos(0.999)) +
+                " flushes=" + flushCount +
+                " flushedRecords=" + flushedRecords +
+                " lastFlushUs=" + micros(lastFlushNanos) +
+                " lastFlushRecords=" + lastFlushRecords +
+                " flushP99Us=" + micros(getFlushLatencyNanos(0.99));
+    }
+
+    private static long micros(long nanos) {
+        return nanos / 1000;
+    }
+}
@@ -0,0 +1,63 @@
+package data.databases;
+
+import java.time.Duration;
+
+/**
+ * Decides when the background flusher writes a database's pending changes to its table.
+ * Policies are evaluated by writers after every change (to wake the flusher early) and by the flusher on every tick,
+ * so they must be cheap and side-effect free.
+ */
+@FunctionalInterface
+public interface FlushPolicy {
+
+    /**
+     * @param stats The current state of the change buffer.
+     * @return {@code true} if the pending changes should be flushed now.
+     */
+    boolean shouldFlush(ChangeBufferStats stats);
+
+    /**
+     * @return A policy that flushes when either this policy or {@code other} would.
+     */
+    default FlushPolicy or(FlushPolicy other) {
+        return stats -> shouldFlush(stats) || other.shouldFlush(stats);
+    }
+
+    /**
+     * Flushes once {@code records} distinct keys have pending changes.
+     */
+    static FlushPolicy byCount(int records) {
+        return stats -> stats.getPendingRecords() >= records;
+    }
+
+    /**
+     * Flushes once the pending changes would write at least {@code bytes} bytes.
+     */
+    static FlushPolicy byBytes(long bytes) {
+        return stats -> stats.getPendingRecords() > 0 && stats.getPendingBytes() >= bytes;
+    }
+
+    /**
+     * Flushes once the oldest pending change has waited for {@code maxAge}.
+     */
+    static FlushPolicy byAge(Duration maxAge) {
+        long maxAgeNanos = maxAge.toNanos();
+        return stats -> stats.getPendingRecords() > 0 && stats.getOldestChangeAgeNanos() >= maxAgeNanos;
+    }
+
+    /**
+     * Sizes batches to the observed write rate: flushes once the buffer holds about {@code maxAge} worth of writes,
+     * clamped to [{@code minBatch}, {@code maxBatch}] records, or once the oldest change has waited {@code maxAge}.
+     * Quiet tables flush small batches promptly; busy tables flush large batches without letting the buffer grow
+     * without bound.
+     */
+    static FlushPolicy adaptive(Duration maxAge, int minBatch, int maxBatch) {
+        double maxAgeSeconds = maxAge.toNanos() / 1e9;
+        FlushPolicy ageLimit = byAge(maxAge);
+        return stats -> {
+            double expectedBatch = stats.getWritesPerSecond() * maxAgeSeconds;
+            int threshold = (int) Math.max(minBatch, Math.min(maxBatch, expectedBatch));
+            return stats.getPendingRecords() >= threshold || ageLimit.shouldFlush(stats);
+        };
+    }
+}
@@ -4,41 +4,102 @@ package data.databases;
 import data.Record;
 import data.binary.datums.Datum;
 import data.parsers.binary.BinaryParser;
+import data.util.Tracer;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.MappedByteBuffer;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
 import static java.nio.file.StandardOpenOption.*;
 
 // T is the object we are storing in *binary* form
-public class HashBasedDatabase<T extends Datum> implements IDatabase<T> {
+public class HashBasedDatabase<T extends Datum> implements IIndexedDatabase<T> {
 
     private static final int ENTRY_FLAG_SIZE = Byte.BYTES;
 
     private static final Logger LOGGER = Logger.getLogger(HashBasedDatabase.class.getName());
 
-    private static final int MAX_HASH_FAILS = 100;
+    private static final Tracer TRACER = Tracer.forClass(HashBasedDatabase.class); // per-operation traces, FINE
+
+    static final int MAX_HASH_FAILS = 100;
 
     private static final int MAX_RETRIES = 30;
 
-    private static final int CHANGE_THRESHOLD = 100;
+    private static final long WRITE_RATE_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(5); // smoothing window of the observed write rate
+
+    private static final int REHASH_CHUNK_SLOTS = 1024; // slots copied per monitor acquisition while rehashing
+
+    private static final int SCAN_CHUNK_KEYS = 1024; // index positions resolved and read together by a stream
+
+    static final byte TOMBSTONE = 2; // flag byte of a deleted slot; 0 is a slot never written, 1 a live record
+
+    // Reads a big-endian int key out of a copied record without wrapping it in a ByteBuffer
+    private static final VarHandle INT_VIEW = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
     private final String path;
-    private final ConcurrentHashMap<String, Record<T>> changes = new ConcurrentHashMap<>();
     private final AtomicInteger entryNum = new AtomicInteger(0);
-    private final int maxRecords; //should be prime for hash-collision reasons
+    private final AtomicInteger occupiedSlots = new AtomicInteger(0);
+    private final HashDatabaseOptions options;
+    private final WriteAheadLog wal; // null unless HashDatabaseOptions.writeAheadLog is set
+    private final Map<String, SecondaryIndex<T>> secondaryIndexes; // fixed at construction
+    // Held shared while a change is buffered (and logged), exclusively while flush swaps the buffers and seals the log
+    private final ReentrantReadWriteLock bufferLock = new ReentrantReadWriteLock();
+    private final AtomicLong oldestChangeNanos = new AtomicLong(); // when the oldest change in `changes` arrived, 0 if none
+    private final BackgroundFlusher flusher;
+    private final StorageMetrics metrics = new StorageMetrics(MAX_HASH_FAILS);
+    private final MetricsFileReporter metricsReporter; // null unless HashDatabaseOptions.metricsFile is set
+    private final ExecutorService rehashExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "hash-db-rehash");
+        thread.setDaemon(true);
+        return thread;
+    });
     BinaryParser<T> binaryParser;
-    private MappedByteBuffer mappedByteBuffer;
+    // Where the parser keeps the key and flag; when both are known, probes compare them in place instead of decoding
+    private final int keyOffset;
+    private final int flagOffset;
+    private final boolean keyOnlyProbing;
+    private volatile Table table; // swapped as a whole so lock-free readers never mix two generations
+    private volatile boolean rehashing = false;
+    private List<Record<T>> rehashBacklog; // records flushed to the old table while a rehash is copying it
+    // Double-buffered change set: producers only ever put into `changes`; flush swaps in a fresh map and writes the old one
+    private volatile ConcurrentHashMap<String, Record<T>> changes = new ConcurrentHashMap<>();
+    private volatile ConcurrentHashMap<String, Record<T>> flushing = new ConcurrentHashMap<>();
+    private volatile double writesPerSecond;
+    private long lastRateSampleNanos = System.nanoTime(); // flusher thread only
+    private int lastRateSampleWrites; // flusher thread only
 
 
     /**
@@ -48,74 +109,411 @@ public class HashBasedDatabase<T extends Datum> implements IDatabase<T> {
      */
 
     public HashBasedDatabase(String path, int maxRecords, BinaryParser<T> binaryParser) {
+        this(path, maxRecords, binaryParser, new HashDatabaseOptions());
+    }
+
+    /**
+     * Constructs a database with explicit tuning options. The table grows on its own once the share of occupied
+     * slots goes over {@link HashDatabaseOptions#getMaxLoadFactor()}. With the write-ahead log enabled, changes left in
+     * the log by an earlier run are buffered again before the constructor returns. Changes are written to the table
+     * by a background thread whenever {@link HashDatabaseOptions#getFlushPolicy()} says so.
+     *
+     * @param path         The file system path where the database file is located.
+     * @param maxRecords   The initial number of slots. An existing, larger file keeps its size.
+     * @param binaryParser The parser used to convert records to and from their fixed-width binary form.
+     * @param options      The tuning options.
+     * @throws UncheckedIOException If the write-ahead log cannot be opened or replayed.
+     */
+    public HashBasedDatabase(String path, int maxRecords, BinaryParser<T> binaryParser, HashDatabaseOptions options) {
+        this(path, maxRecords, binaryParser, options, List.of());
+    }
+
+    /**
+     * Constructs a database that also maintains the given secondary indexes, each in its own mapped file named
+     * {@code <path>.<name>.idx}. Index files closed cleanly by an earlier run are reused; the others are rebuilt
+     * with one scan of the table. Index files of indexes no longer declared are deleted, so they cannot go stale.
+     *
+     * @param path         The file system path where the database file is located.
+     * @param maxRecords   The initial number of slots. An existing, larger file keeps its size.
+     * @param binaryParser The parser used to convert records to and from their fixed-width binary form.
+     * @param options      The tuning options.
+     * @param indexes      The secondary indexes to maintain; see {@link #findBy(String, String)}.
+     * @throws UncheckedIOException If the write-ahead log or an index file cannot be opened.
+     */
+    public HashBasedDatabase(String path, int maxRecords, BinaryParser<T> binaryParser, HashDatabaseOptions options,
+                             List<IndexDefinition<T>> indexes) {
         this.path = path;
-        this.maxRecords = maxRecords;
         this.binaryParser = binaryParser;
-        initializeDatabaseFile();
+        this.options = options;
+        this.keyOffset = binaryParser.getKeyOffset();
+        this.flagOffset = binaryParser.getFlagOffset();
+        this.keyOnlyProbing = keyOffset >= 0 && flagOffset >= 0 && binaryParser.getKeyWidth() == Integer.BYTES;
+        initializeDatabaseFile(maxRecords);
+        this.secondaryIndexes = openSecondaryIndexes(indexes);
+        this.wal = options.isWriteAheadLog() ? openWriteAheadLog() : null;
+        this.flusher = new BackgroundFlusher("hash-db-flush-" + Paths.get(path).getFileName(),
+                options.getFlushPollInterval().toNanos(), TimeUnit.NANOSECONDS, this::flushDue, this::flush);
+        this.metricsReporter = options.getMetricsFile() == null ? null
+                : new MetricsFileReporter(this::getMetrics, options.getMetricsFile(), options.getMetricsInterval());
     }
 
     /**
      * Initializes the database file, mapping it into memory for read/write operations.
      * The file is created if it does not exist, and is opened with read and write capabilities.
+     * The slots follow a {@link TableHeader}; a file that was grown by an earlier rehash is mapped at the capacity
+     * its header records, since every record sits where that capacity put it. If {@code maxRecords} asks for more
+     * slots, the table is grown by a rehash once it is open.
+     * <p>If the header says the last run closed cleanly, the slot index and Bloom filter it saved are loaded as they
+     * are and the counts are taken from the header, so opening does not read the slots at all. Otherwise, or if
+     * either file is missing or does not match, the slot index and Bloom filter are rebuilt with one scan of the table. The header is
+     * then marked unclean until the next {@link #close()}.</p>
+     * <p>A file written before tables had headers is scanned as before, then rewritten with a header by a same-size
+     * rehash.</p>
+     *
+     * @param maxRecords The number of slots to map if the file is new or smaller. Should be prime for hash-collision reasons.
+     * @throws IllegalArgumentException If the header records another record size, or a newer format.
      */
-    private void initializeDatabaseFile() {
+    private void initializeDatabaseFile(int maxRecords) {
+        boolean legacy = false;
         try (FileChannel channel = FileChannel.open(Paths.get(path),
                 READ, WRITE, CREATE)) {
-            //  If needed, we can map multiple files later on (perhaps based on the first two hash letters)
-            this.mappedByteBuffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) maxRecords * binaryParser.getSize());
+            int recordSize = binaryParser.getSize();
+            TableHeader header = TableHeader.read(channel);
+            legacy = header == null && channel.size() > 0;
+            int capacity;
+            if (header != null) {
+                header.check(path, recordSize);
+                capacity = header.capacity;
+            } else {
+                capacity = (int) Math.max(maxRecords, channel.size() / recordSize);
+            }
+            BloomFilter savedBloom = loadBloomFilter(capacity);
+            SlotIndex savedIndex = loadSlotIndex(capacity);
+            // The saved files are used together or not at all: a scan rebuilds the filter along with the index
+            boolean restore = header != null && header.cleanShutdown && savedBloom != null
+                    && savedIndex != null && savedIndex.size() == header.liveRecords;
+            this.table = new Table(map(channel, capacity, legacy ? 0 : TableHeader.SIZE), capacity,
+                    restore ? savedBloom : new BloomFilter(capacity), !legacy);
+            if (restore) {
+                table.index.replaceWith(savedIndex);
+                table.tombstones.set(header.tombstones);
+                occupiedSlots.set(header.liveRecords);
+            } else {
+                if (header != null && !header.cleanShutdown) {
+                    LOGGER.warning(path + " WAS NOT CLOSED CLEANLY, SCANNING " + capacity + " SLOTS");
+                }
+                occupiedSlots.set(rebuildIndex(table, true));
+            }
+            if (!legacy) {
+                new TableHeader(recordSize, capacity, occupiedSlots.get(), table.tombstones.get(), false).write(channel);
+            }
         } catch (IOException e) {
             LOGGER.log(Level.SEVERE, "Failed to initialize database file", e);
         }
+        if (legacy && table != null) {
+            LOGGER.info("ADDING HEADER TO " + path);
+            beginRehash();
+            rehash(table.capacity);
+        } else if (table != null && table.capacity < maxRecords) {
+            LOGGER.info("GROWING " + path + " FROM " + table.capacity + " TO " + maxRecords + " SLOTS");
+            beginRehash();
+            rehash(maxRecords);
+        }
+    }
+
+    /**
+     * Maps {@code capacity} slots of a table file as regions of at most {@link HashDatabaseOptions#getMappingRegionSize()}
+     * bytes, so the file can be larger than one mapping allows.
+     *
+     * @param base The offset of the first slot: {@link TableHeader#SIZE}, or 0 in a file without a header.
+     */
+    private ChunkedMapping map(FileChannel channel, int capacity, long base) throws IOException {
+        return new ChunkedMapping(channel, base, capacity, binaryParser.getSize(), options.getMappingRegionSize());
+    }
+
+    private BloomFilter loadBloomFilter(int capacity) {
+        try {
+            return BloomFilter.load(Paths.get(path + ".bloom"), capacity);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to load Bloom filter, rebuilding it", e);
+            return null;
+        }
+    }
+
+    private SlotIndex loadSlotIndex(int capacity) {
+        try {
+            return SlotIndex.load(Paths.get(path + ".slots"), capacity);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to load slot index, rebuilding it", e);
+            return null;
+        }
+    }
+
+    private Map<String, SecondaryIndex<T>> openSecondaryIndexes(List<IndexDefinition<T>> definitions) {
+        Map<String, SecondaryIndex<T>> opened = new LinkedHashMap<>();
+        Path file = Paths.get(path).toAbsolutePath();
+        String prefix = file.getFileName() + ".";
+        try {
+            Set<String> declared = new HashSet<>();
+            for (IndexDefinition<T> definition : definitions) {
+                declared.add(prefix + definition.getName() + ".idx");
+            }
+            try (var siblings = Files.newDirectoryStream(file.getParent(), prefix + "*.idx")) {
+                for (Path sibling : siblings) {
+                    String name = sibling.getFileName().toString();
+                    String indexName = name.substring(prefix.length(), name.length() - ".idx".length());
+                    if (indexName.matches("[A-Za-z0-9_-]+") && !declared.contains(name)) {
+                        Files.delete(sibling);
+                    }
+                }
+            }
+            for (IndexDefinition<T> definition : definitions) {
+                if (opened.containsKey(definition.getName())) {
+                    throw new IllegalArgumentException("Index declared twice: " + definition.getName());
+                }
+                SecondaryIndex<T> index = new SecondaryIndex<>(definition,
+                        Paths.get(path + "." + definition.getName() + ".idx"), options.getMappingRegionSize());
+                if (!index.load()) {
+                    LOGGER.info("BUILDING INDEX " + definition.getName());
+                    index.create(occupiedSlots.get());
+                    fillSecondaryIndex(index, table);
+                }
+                opened.put(definition.getName(), index);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open secondary indexes for " + path, e);
+        }
+        return opened;
     }
 
     /**
-     * Adds a new record to the database. If the cache has reached the CHANGE_THRESHOLD, triggers a flush to disk.
+     * Adds every live record of {@code source} to an empty index. Must be called while holding the monitor, or before
+     * the database is shared.
+     */
+    private void fillSecondaryIndex(SecondaryIndex<T> index, Table source) throws IOException {
+        byte[] entryBytes = new byte[binaryParser.getSize()];
+        for (int slot = 0; slot < source.capacity; slot++) {
+            readSlot(source, slot, entryBytes);
+            if (isOccupied(entryBytes)) {
+                Record<T> record = binaryParser.parseData(entryBytes);
+                index.update(Integer.parseInt(record.getKey()), null, record.getEntry());
+            }
+        }
+    }
+
+    private WriteAheadLog openWriteAheadLog() {
+        try {
+            WriteAheadLog log = new WriteAheadLog(path);
+            int replayed = log.replay((key, payload) ->
+                    changes.put(key, payload == null ? new Record<>(key, null) : binaryParser.parseData(payload)));
+            if (replayed > 0) {
+                oldestChangeNanos.set(System.nanoTime());
+                LOGGER.info("REPLAYED " + replayed + " WAL ENTRIES");
+            }
+            return log;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open write-ahead log for " + path, e);
+        }
+    }
+
+    /**
+     * Adds a new record to the database. The record is only buffered; the background flusher writes it to disk.
      *
      * @param record The record to add.
      */
 
     @Override
     public void add(Record<T> record) {
-        LOGGER.info("ADD RECORD: " + record.getKey());
-        changes.compute(record.getKey(), (key, existingRecord) -> record);
-        flushIfRequired();
+        TRACER.trace("ADD RECORD: {0}", record.getKey());
+        bufferChanges(List.of(record));
+    }
+
+    /**
+     * Adds several records. They are buffered under one acquisition of the buffer lock, and with the write-ahead log
+     * enabled they share a single fsync.
+     *
+     * @param records The records to add.
+     */
+    @Override
+    public void addAll(Collection<Record<T>> records) {
+        TRACER.trace("ADD {0,number,#} RECORDS", records.size());
+        bufferChanges(records);
     }
 
 
     /*
      * Reads a record from the database based on the provided key. If no record exists for the given key, null is returned.
      * If the record is not found in the cache, it is then read from the disk-based storage.
+     * <p>The cache is checked first: the pending buffer, then the one being flushed. A buffered delete answers
+     * {@code null} straight away. Reads never flush; that is left to the background flusher.</p>
      * <p>The read operation involves calculating the hash-based position of the record in the file, followed by linear probing in case of hash collisions. This process is repeated until the record is found or the maximum number of hash fails is reached.</p>
+     * <p>Reads do not take the database monitor. Every slot is copied with absolute gets and validated against its
+     * version stamp, so any number of readers can probe while a flush is writing.</p>
+     * <p>The slot is looked up in the table's {@link SlotIndex}, so a hit costs one index probe and one record
+     * decode. Keys the table's {@link BloomFilter} has never seen are turned away before the index. If the record found there no longer carries the key, a flush moved it and the index is asked again.
+     * After {@code MAX_RETRIES} such misses the index is taken to be wrong about the key, and the read probes from
+     * the key's home slot instead.</p>
+     * <p>Every read is timed into {@link #getMetrics()}.</p>
      *
      * @param keyStr The key of the record to read.
      * @return The record associated with the given key, or `null` if no such record exists.
      *
      */
-    public synchronized Record<T> read(String keyStr) {
-        LOGGER.info("START READ , KEY:" + keyStr);
-        flush();
-        MappedByteBuffer mbb = this.mappedByteBuffer;
+    public Record<T> read(String keyStr) {
+        long started = System.nanoTime();
+        try {
+            return lookup(keyStr);
+        } finally {
+            metrics.recordRead(System.nanoTime() - started);
+        }
+    }
 
-        // Parse the key to an integer as before.
-        int positionInFile = linearProbe(mbb, keyStr, true, false);
+    private Record<T> lookup(String keyStr) {
+        TRACER.trace("START READ , KEY:{0}", keyStr);
+        // Newest first: a change moves from `changes` to `flushing` to the table, never backwards
+        Record<T> buffered = changes.get(keyStr);
+        if (buffered == null) {
+            buffered = flushing.get(keyStr);
+        }
+        if (buffered != null) {
+            return buffered.getEntry() == null ? null : buffered; // a null entry is a buffered delete
+        }
 
-        if (positionInFile >= 0) {
-            // Found the key, proceed to read the record.
-            mbb.position(positionInFile);
-            byte[] entryBytes = new byte[binaryParser.getSize()];
-            mbb.get(entryBytes); // Read the entry into a byte array
+        int key = Integer.parseInt(keyStr);
+        byte[] entryBytes = new byte[binaryParser.getSize()];
+        int misses = 0;
+        while (true) {
+            Table current = table;
+            int slot = current.bloom.mightContain(key) ? current.index.get(key) : -1;
+            boolean found = false;
+            if (slot >= 0) {
+                readSlot(current, slot, entryBytes);
+                found = isOccupied(entryBytes) && keyOf(entryBytes) == key;
+                if (!found && ++misses <= MAX_RETRIES) {
+                    // A flush moved or removed the record after the index was read; the index already knows where
+                    continue;
+                }
+                if (!found) {
+                    // No flush moves a record this often: the entry is stale, so stop trusting it for this read
+                    found = probeForKey(current, key, entryBytes) >= 0;
+                    LOGGER.warning("SLOT INDEX ENTRY FOR KEY " + key + " DOES NOT MATCH THE TABLE, "
+                            + (found ? "FOUND BY PROBING" : "KEY NOT IN TABLE"));
+                }
+            }
+            if (current != table) {
+                continue; // a rehash swapped the table mid-probe, start over on the new one
+            }
+            return found ? binaryParser.parseData(entryBytes) : null;
+        }
+    }
 
-            Record<T> fileEntry = binaryParser.parseData(entryBytes);
-            return fileEntry;
-        } else {
-            // Key not found or EOF reached.
-            return null;
+    /**
+     * Reads several records at once. Keys still in the change buffer are answered from it; the rest are looked up in
+     * the index and read in file-offset order, so the batch walks the mapping front to back instead of jumping around.
+     * <p>Reads take no lock, so instead of holding the monitor the whole batch is served from one table generation:
+     * if a rehash swaps the table mid-batch, the table lookups start over on the new one.</p>
+     *
+     * @param keys The keys of the records to read.
+     * @return The records found, keyed by key in the order of {@code keys}.
+     */
+    @Override
+    public Map<String, Record<T>> readMany(Collection<String> keys) {
+        Map<String, Record<T>> found = new HashMap<>();
+        List<String> tableKeys = new ArrayList<>();
+        for (String keyStr : keys) {
+            Record<T> buffered = changes.get(keyStr);
+            if (buffered == null) {
+                buffered = flushing.get(keyStr);
+            }
+            if (buffered == null) {
+                tableKeys.add(keyStr);
+            } else if (buffered.getEntry() != null) {
+                found.put(keyStr, buffered);
+            }
+        }
+
+        byte[] entryBytes = new byte[binaryParser.getSize()];
+        Map<String, Record<T>> fromTable = new HashMap<>();
+        Table current;
+        do {
+            current = table;
+            fromTable.clear();
+            // Slot in the high half, position in tableKeys in the low half, so sorting orders the reads by offset
+            long[] lookups = new long[tableKeys.size()];
+            int lookupCount = 0;
+            for (int i = 0; i < tableKeys.size(); i++) {
+                int key = Integer.parseInt(tableKeys.get(i));
+                int slot = current.bloom.mightContain(key) ? current.index.get(key) : -1;
+                if (slot >= 0) {
+                    lookups[lookupCount++] = ((long) slot << 32) | i;
+                }
+            }
+            Arrays.sort(lookups, 0, lookupCount);
+            for (int i = 0; i < lookupCount; i++) {
+                String keyStr = tableKeys.get((int) lookups[i]);
+                readSlot(current, (int) (lookups[i] >>> 32), entryBytes);
+                if (isOccupied(entryBytes) && keyOf(entryBytes) == Integer.parseInt(keyStr)) {
+                    fromTable.put(keyStr, binaryParser.parseData(entryBytes));
+                } else {
+                    Record<T> moved = read(keyStr); // a flush moved it after the index was read
+                    if (moved != null) {
+                        fromTable.put(keyStr, moved);
+                    }
+                }
+            }
+        } while (current != table);
+        found.putAll(fromTable);
+
+        Map<String, Record<T>> ordered = new LinkedHashMap<>();
+        for (String keyStr : keys) {
+            Record<T> record = found.get(keyStr);
+            if (record != null) {
+                ordered.put(keyStr, record);
+            }
         }
+        return ordered;
     }
 
 
     /**
-     * Updates an existing record in the database. If the cache has reached the CHANGE_THRESHOLD, triggers a flush to disk.
+     * Finds records through a secondary index declared at construction. The index yields candidate keys, which are
+     * read back with {@link #readMany(Collection)} and kept only if their current entry still carries the value;
+     * buffered changes are checked directly, so a record added or updated moments ago is found before it is flushed.
+     *
+     * @param indexName The name of the index to look in.
+     * @param value     The value to look up.
+     * @return The matching records; empty if there are none.
+     * @throws IllegalArgumentException If no index of that name was declared.
+     */
+    @Override
+    public List<Record<T>> findBy(String indexName, String value) {
+        SecondaryIndex<T> index = secondaryIndexes.get(indexName);
+        if (index == null) {
+            throw new IllegalArgumentException("No index named " + indexName + " on " + path);
+        }
+        Set<String> keys = new LinkedHashSet<>();
+        // Buffers before the index: a change leaves `flushing` only after the index has it
+        for (Map<String, Record<T>> buffer : List.of(changes, flushing)) {
+            for (Record<T> buffered : buffer.values()) {
+                if (buffered.getEntry() != null && value.equals(index.getDefinition().valueOf(buffered.getEntry()))) {
+                    keys.add(buffered.getKey());
+                }
+            }
+        }
+        for (int key : index.candidates(value)) {
+            keys.add(String.valueOf(key));
+        }
+        List<Record<T>> matches = new ArrayList<>();
+        for (Record<T> record : readMany(keys).values()) {
+            if (value.equals(index.getDefinition().valueOf(record.getEntry()))) {
+                matches.add(record);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Updates an existing record in the database. The record is only buffered; the background flusher writes it to disk.
      *
      * @param key    The key of the record to update.
      * @param record The new record to replace the existing one.
@@ -126,178 +524,923 @@ public class HashBasedDatabase<T extends Datum> implements IDatabase<T> {
     }
 
     /**
-     * Deletes a record from the database by marking it for deletion in the cache. If the cache has reached the CHANGE_THRESHOLD,
-     * triggers a flush to disk.
+     * Deletes a record from the database by marking it for deletion in the cache. The background flusher removes it
+     * from disk.
      *
      * @param key The key of the record to delete.
      */
     @Override
     public void delete(String key) {
-        changes.compute(key, (k, existingRecord) -> new Record<>(key, null));
-        flushIfRequired();
+        bufferChanges(List.of(new Record<>(key, null)));
     }
 
 
     /**
-     * Reads all records from the database. This method iterates over the entire memory-mapped file, deserializing and returning all valid records.
-     * It is important to note that this operation might be resource-intensive and should be used with caution on large databases.
+     * Reads all records from the database by collecting {@link #stream()}.
+     * It is important to note that this operation might be resource-intensive and should be used with caution on large databases;
+     * jobs that only need to look at each record once should consume the stream instead.
      *
      * @return A list of all records in the database.
-     * @throws IllegalStateException If the file does not contain the expected number of valid entries.
      */
     @Override
-    public synchronized List<Record<T>> readAll() throws IllegalStateException {
-        flush();
-        ArrayList<Record<T>> retList = new ArrayList<>();
-        int counter = entryNum.get();
-        mappedByteBuffer.position(0);
+    public List<Record<T>> readAll() {
+        return stream().collect(Collectors.toCollection(ArrayList::new));
+    }
 
-        byte[] entryBytes = new byte[binaryParser.getSize()];
-        while (counter > 0 && mappedByteBuffer.remaining() >= binaryParser.getSize()) {
-            mappedByteBuffer.get(entryBytes);
-            Record<T> record = binaryParser.parseData(entryBytes);
-            if (record.getEntry().getFlag()) {
-                counter--;
-                retList.add(record);
+    /**
+     * Streams every record in the database. The table is read lazily, a chunk of {@value #SCAN_CHUNK_KEYS} keys at a
+     * time, and the stream splits into chunks for {@link Stream#parallel()} so a scan can run across the ForkJoin pool.
+     * <p>The scan takes no lock. It walks a snapshot of the slot index rather than the slots themselves, so a record
+     * moved by Robin Hood placement is still reported exactly once; each chunk reads its slots in file-offset order.
+     * Buffered changes at the time of the call are laid over the table. Changes made after the call may or may not
+     * be reflected.</p>
+     *
+     * @return A stream of every live record.
+     */
+    public Stream<Record<T>> stream() {
+        // Take the buffers before the table: a flush that finishes in between replaces them but does not empty them
+        Map<String, Record<T>> pending = changes;
+        Map<String, Record<T>> inFlight = flushing;
+        Map<String, Record<T>> buffered = new HashMap<>(inFlight);
+        buffered.putAll(pending);
+        Table current = table;
+
+        Set<Integer> bufferedKeys = new HashSet<>();
+        List<Record<T>> bufferedRecords = new ArrayList<>();
+        buffered.forEach((key, record) -> {
+            bufferedKeys.add(Integer.parseInt(key));
+            if (record.getEntry() != null) {
+                bufferedRecords.add(record);
+            }
+        });
+        SlotIndex.Snapshot keys = current.index.snapshot();
+        Stream<Record<T>> fromTable = StreamSupport.stream(
+                new TableSpliterator(current, keys, bufferedKeys, 0, keys.length()), false);
+        return Stream.concat(fromTable, bufferedRecords.stream());
+    }
+
+    /**
+     * Splits a scan over positions of an index snapshot. Each chunk of positions is resolved to slots through the
+     * live index, sorted by slot and then read, so consumers see records in file order within a chunk.
+     */
+    private final class TableSpliterator implements Spliterator<Record<T>> {
+        private final Table source;
+        private final SlotIndex.Snapshot keys;
+        private final Set<Integer> skippedKeys; // answered from the change buffer instead
+        private final ArrayDeque<Record<T>> chunk = new ArrayDeque<>();
+        private int position;
+        private final int end;
+
+        TableSpliterator(Table source, SlotIndex.Snapshot keys, Set<Integer> skippedKeys, int position, int end) {
+            this.source = source;
+            this.keys = keys;
+            this.skippedKeys = skippedKeys;
+            this.position = position;
+            this.end = end;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Record<T>> action) {
+            while (chunk.isEmpty()) {
+                if (position >= end) {
+                    return false;
+                }
+                readChunk();
+            }
+            action.accept(chunk.poll());
+            return true;
+        }
+
+        private void readChunk() {
+            int chunkEnd = Math.min(end, position + SCAN_CHUNK_KEYS);
+            long[] lookups = new long[chunkEnd - position];
+            int lookupCount = 0;
+            for (; position < chunkEnd; position++) {
+                if (!keys.isLive(position)) {
+                    continue;
+                }
+                int key = keys.keyAt(position);
+                int slot = source.index.get(key);
+                if (slot >= 0 && !skippedKeys.contains(key)) {
+                    lookups[lookupCount++] = ((long) slot << 32) | (key & 0xFFFFFFFFL);
+                }
+            }
+            Arrays.sort(lookups, 0, lookupCount);
+            byte[] entryBytes = new byte[binaryParser.getSize()];
+            for (int i = 0; i < lookupCount; i++) {
+                int key = (int) lookups[i];
+                readSlot(source, (int) (lookups[i] >>> 32), entryBytes);
+                if (isOccupied(entryBytes) && keyOf(entryBytes) == key) {
+                    chunk.add(binaryParser.parseData(entryBytes));
+                } else {
+                    // Moved or deleted by a flush since the index was read; the index knows where it is now
+                    int slot = source.index.get(key);
+                    if (slot >= 0) {
+                        readSlot(source, slot, entryBytes);
+                        if (isOccupied(entryBytes) && keyOf(entryBytes) == key) {
+                            chunk.add(binaryParser.parseData(entryBytes));
+                        }
+                    }
+                }
+            }
+        }
+
+        @Override
+        public Spliterator<Record<T>> trySplit() {
+            int remaining = end - position;
+            if (!chunk.isEmpty() || remaining < 2 * SCAN_CHUNK_KEYS) {
+                return null;
             }
+            int mid = position + remaining / 2;
+            TableSpliterator prefix = new TableSpliterator(source, keys, skippedKeys, position, mid);
+            position = mid;
+            return prefix;
+        }
 
+        @Override
+        public long estimateSize() {
+            return end - position + chunk.size();
         }
 
-        return retList;
+        @Override
+        public int characteristics() {
+            return NONNULL | DISTINCT;
+        }
     }
 
+    /**
+     * Stops the background threads, flushes whatever is still buffered and releases the mapping. The slot index and
+     * Bloom filter are saved next to the table and the header is marked clean, so the next open can skip the scan.
+     */
     public void close() {
-        mappedByteBuffer.force();
-        mappedByteBuffer = null;
+        if (metricsReporter != null) {
+            metricsReporter.close();
+        }
+        flusher.stop();
+        rehashExecutor.shutdown();
+        try {
+            rehashExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            flush();
+            table.storage.force();
+            try {
+                table.bloom.save(Paths.get(path + ".bloom"), table.capacity);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to save Bloom filter", e); // rebuilt on the next open
+            }
+            if (table.hasHeader) {
+                try {
+                    table.index.save(Paths.get(path + ".slots"), table.capacity);
+                    try (FileChannel channel = FileChannel.open(Paths.get(path), WRITE)) {
+                        new TableHeader(binaryParser.getSize(), table.capacity, table.index.size(),
+                                table.tombstones.get(), true).write(channel);
+                    }
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Failed to save slot index", e); // the next open scans the table
+                }
+            }
+            if (metricsReporter != null) {
+                try {
+                    metricsReporter.reportNow(); // the final numbers, flush on close included
+                } catch (UncheckedIOException e) {
+                    LOGGER.log(Level.WARNING, "Failed to write final metrics", e);
+                }
+            }
+            for (SecondaryIndex<T> index : secondaryIndexes.values()) {
+                index.close();
+            }
+            table = null;
+            if (wal != null) {
+                try {
+                    wal.close();
+                } catch (IOException e) {
+                    LOGGER.log(Level.SEVERE, "Failed to close write-ahead log", e);
+                }
+            }
+        }
 
     }
 
-    private void flushIfRequired() {
-        // Only try to acquire write lock if CHANGE_THRESHOLD is reached, but do it outside readLock block
-        if (entryNum.getAndIncrement() % CHANGE_THRESHOLD == 0) {
-            flush(mappedByteBuffer);
+    /**
+     * Checks the table file while the database stays open, with the checks {@link TableVerifier} runs on a closed
+     * one, against the live slot index and tombstone count. Buffered changes are flushed first. Reads keep running
+     * during the scan and producers keep buffering, but nothing is flushed until it is done.
+     *
+     * @return What was found.
+     * @throws UncheckedIOException If the file cannot be read.
+     */
+    public synchronized VerificationReport verify() {
+        flush();
+        Table current = table;
+        current.storage.force();
+        try {
+            return TableVerifier.verifyOpen(Paths.get(path), current.hasHeader, current.capacity, binaryParser,
+                    current.index, keyOnlyProbing ? current.tombstones.get() : -1);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to verify " + path, e);
         }
     }
 
     /**
-     * Flushes the in-memory cache to the disk. This method is called automatically when the number of changes since the last flush reaches the configured threshold.
-     * It can also be called explicitly to force a flush of the cache to disk. The flush operation involves serializing the records to a binary format and writing them to the correct positions in the file.
+     * @return The current number of slots in the table.
+     */
+    public int getCapacity() {
+        return table.capacity;
+    }
+
+    /**
+     * @return The share of slots holding a live record, as last observed by a flush.
+     */
+    public double getLoadFactor() {
+        return (double) occupiedSlots.get() / table.capacity;
+    }
+
+    /**
+     * @return The number of slots holding a tombstone, as last observed by a flush.
+     */
+    public int getTombstoneCount() {
+        return table.tombstones.get();
+    }
+
+    /**
+     * Takes a snapshot of this database's metrics: the probe lengths of inserts, the load factor, the size of the
+     * change buffer, flush durations and sizes, and read latency percentiles. Cheap enough to poll.
      *
-     * <p>This operation is synchronized to prevent concurrent modifications to the cache or the memory-mapped file during the flushing process. It includes error handling to log failures and prevent partial updates from corrupting the database file.</p>
+     * @return The metrics since the database was opened.
      */
+    public DatabaseMetrics getMetrics() {
+        Table current = table;
+        return metrics.snapshot(current.capacity, (double) occupiedSlots.get() / current.capacity,
+                current.tombstones.get(), changes.size());
+    }
 
-    //default version
-    public synchronized void flush() {
-        flush(mappedByteBuffer);
+    /**
+     * Puts changes in the buffer; a record with a {@code null} entry is a delete. With the write-ahead log enabled
+     * each change is appended to the log inside the buffer's per-key compute, so log order matches buffer order for
+     * each key, and all of them are durable before this returns.
+     * Producers never touch the table; they only wake the flusher when the flush policy is met.
+     */
+    private void bufferChanges(Collection<Record<T>> records) {
+        long[] lsn = new long[1];
+        bufferLock.readLock().lock();
+        try {
+            for (Record<T> record : records) {
+                changes.compute(record.getKey(), (k, existingRecord) -> {
+                    if (wal != null) {
+                        lsn[0] = appendToLog(k, record);
+                    }
+                    return record;
+                });
+            }
+            oldestChangeNanos.compareAndSet(0, System.nanoTime());
+        } finally {
+            bufferLock.readLock().unlock();
+        }
+        entryNum.addAndGet(records.size());
+        if (wal != null) {
+            try {
+                binaryParser.sync(); // the codes these records hold must outlive them
+                wal.sync(lsn[0]);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to sync write-ahead log", e);
+            }
+        }
+        if (options.getFlushPolicy().shouldFlush(pendingStats())) {
+            flusher.nudge();
+        }
     }
 
-    public synchronized void flush(MappedByteBuffer mbb) {
-        LOGGER.info("START FLUSH");
+    private long appendToLog(String key, Record<T> record) {
+        try {
+            if (record.getEntry() == null) {
+                return wal.append(WriteAheadLog.DELETE, key, null);
+            }
+            record.getEntry().setFlag(true);
+            return wal.append(WriteAheadLog.PUT, key, binaryParser.getData(record));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append to write-ahead log", e);
+        }
+    }
+
+    /**
+     * @return The current state of the change buffer, as seen by the flush policy.
+     */
+    public ChangeBufferStats pendingStats() {
+        int pending = changes.size();
+        long oldest = oldestChangeNanos.get();
+        return new ChangeBufferStats(pending, (long) pending * binaryParser.getSize(),
+                oldest == 0 ? 0 : System.nanoTime() - oldest, writesPerSecond);
+    }
+
+    /**
+     * Called by the flusher on every tick: folds the writes since the previous tick into the smoothed write rate,
+     * then asks the flush policy whether to flush.
+     */
+    private boolean flushDue() {
+        long now = System.nanoTime();
+        int writes = entryNum.get();
+        long elapsed = Math.max(1, now - lastRateSampleNanos);
+        double instantRate = (writes - lastRateSampleWrites) * 1e9 / elapsed;
+        double weight = 1 - Math.exp(-(double) elapsed / WRITE_RATE_WINDOW_NANOS);
+        writesPerSecond += weight * (instantRate - writesPerSecond);
+        lastRateSampleNanos = now;
+        lastRateSampleWrites = writes;
+        return options.getFlushPolicy().shouldFlush(pendingStats());
+    }
+
+    /**
+     * Flushes the in-memory cache to the disk. This method is called by the background flusher whenever the flush policy is met.
+     * It can also be called explicitly to force a flush of the cache to disk. The flush operation involves serializing the records to a binary format and writing them to the correct positions in the file.
+     *
+     * <p>This operation is synchronized to prevent concurrent modifications to the cache or the memory-mapped file during the flushing process. It includes error handling to log failures and prevent partial updates from corrupting the database file.</p>
+     * <p>Records whose probe chain is full stay in the change buffer and force the table to grow: synchronously if no
+     * rehash is running, otherwise once the running rehash swaps in the larger table.</p>
+     * <p>The change buffer is double-buffered: the pending map is swapped for a fresh one, so producers keep
+     * appending while the old one is written. With the write-ahead log enabled, the log is sealed at the same moment.
+     * Once every swapped-out change is written and the mapping forced, the sealed segments are deleted.</p>
+     */
+    public synchronized void flush() {
+        if (changes.isEmpty()) {
+            return;
+        }
+        TRACER.trace("START FLUSH");
+        Table current = table;
         boolean success = true;
-        HashMap<Integer, Record<T>> backup = new HashMap<>();
-        HashMap<String, Record<T>> copy = new HashMap<>(changes); // allows us to still add changes
-        for (Map.Entry<String, Record<T>> entry : copy.entrySet()) {
-            //Get the correct position of the entry
-            int positionInFile = linearProbe(mappedByteBuffer, entry.getValue().getKey(), false, true);                    //Get Previous
-            mbb.position(positionInFile);
-            byte[] previousBytes = new byte[binaryParser.getSize()];
-            Record<T> previous = binaryParser.parseData(previousBytes);
-            backup.put(positionInFile, previous);
-
-            //Attempt write
+        Map<String, Record<T>> deferred = new HashMap<>();
+        Map<Integer, byte[]> backup = new HashMap<>();
+        ConcurrentHashMap<String, Record<T>> batch;
+        long sealedSegment = -1;
+        bufferLock.writeLock().lock();
+        try {
+            if (wal != null) {
+                sealedSegment = wal.roll();
+            }
+            batch = changes;
+            flushing = batch;
+            changes = new ConcurrentHashMap<>();
+            oldestChangeNanos.set(0);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "COULD NOT SEAL WAL SEGMENT, SKIPPING FLUSH", e);
+            return;
+        } finally {
+            bufferLock.writeLock().unlock();
+        }
+        long started = System.nanoTime();
+        for (Map.Entry<String, Record<T>> entry : batch.entrySet()) {
+            //Attempt write, keeping the previous bytes of every slot it touches
             try {
                 Record<T> record = entry.getValue();
-                writeRecordToDisk(mbb, positionInFile, record);
+                T previous = secondaryIndexes.isEmpty() ? null : entryInTable(current, record.getKey());
+                if (!writeRecordToDisk(current, record, backup)) {
+                    deferred.put(entry.getKey(), record);
+                    continue;
+                }
+                for (SecondaryIndex<T> index : secondaryIndexes.values()) {
+                    index.update(Integer.parseInt(record.getKey()), previous, record.getEntry());
+                }
+                if (rehashing) {
+                    rehashBacklog.add(record);
+                }
             } catch (IOException e) {
                 success = false;
                 break;
             }
         }
+        occupiedSlots.set(current.index.size());
+        binaryParser.sync(); // before the checkpoint or close makes the slots holding new codes durable
 
-        if (success) {
-            changes.clear();
-        } else {
-            for (Map.Entry<Integer, Record<T>> entry : backup.entrySet()) {
-                try {
-                    writeRecordToDisk(mbb, entry.getKey(), entry.getValue());
-                } catch (IOException e) {
-                    LOGGER.severe("COULD NOT FLUSH. FAILED AT DATABASE TO PREVIOUS STATE.");
-                    throw new RuntimeException(e);
-                }
+        if (!success) {
+            for (Map.Entry<Integer, byte[]> entry : backup.entrySet()) {
+                writeSlot(current, entry.getKey(), entry.getValue());
             }
+            occupiedSlots.set(rebuildIndex(current, false)); // restored keys are still in the Bloom filter
+            rebuildSecondaryIndexes(current);
+            requeue(batch);
+            metrics.recordFlush(System.nanoTime() - started, batch.size());
             LOGGER.severe("COULD NOT FLUSH. RESTORED DATABASE TO PREVIOUS STATE.");
+            return;
+        }
+
+        requeue(deferred);
+        if (wal != null && deferred.isEmpty()) {
+            checkpoint(current, sealedSegment);
+        }
+        metrics.recordFlush(System.nanoTime() - started, batch.size());
+
+        if (!deferred.isEmpty()) {
+            LOGGER.warning("PROBE CHAIN FULL FOR " + deferred.size() + " RECORDS, GROWING TABLE");
+            if (!rehashing) {
+                beginRehash();
+                rehash(nextPrime(table.capacity * 2)); // flushes the deferred records once the larger table is in place
+            }
+        } else {
+            scheduleRehashIfRequired();
+        }
+    }
+
+
+    /**
+     * Puts changes that could not be written back in front of the producers, unless a newer change for the same key
+     * has arrived meanwhile. Called with the monitor held, so no buffer swap can race with it. The unwritten changes
+     * also stay visible in {@code flushing}, so a reader that checked {@code changes} just before they were put back
+     * still finds them.
+     */
+    private void requeue(Map<String, Record<T>> unwritten) {
+        unwritten.forEach(changes::putIfAbsent);
+        if (!unwritten.isEmpty()) {
+            oldestChangeNanos.compareAndSet(0, System.nanoTime());
         }
+        flushing = new ConcurrentHashMap<>(unwritten);
     }
 
+    /**
+     * Makes the flushed changes durable in the table file, after which the log segments holding them can go.
+     */
+    private void checkpoint(Table current, long sealedSegment) {
+        current.storage.force();
+        try {
+            wal.discardThrough(sealedSegment);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to discard write-ahead log segments", e); // replaying them again is harmless
+        }
+    }
 
-    private void writeRecordToDisk(MappedByteBuffer mbb, int positionInFile, Record<T> record) throws IOException {
+    /**
+     * Writes a record to {@code target}: over the slot already holding its key, or as a new entry placed by Robin Hood
+     * probing. A delete leaves a tombstone carrying the key, so probe chains running through the slot stay intact.
+     *
+     * @param backup Receives the previous bytes of every slot written, unless already present; may be {@code null}.
+     * @return {@code false} if a new record found no slot within MAX_HASH_FAILS probes.
+     */
+    private boolean writeRecordToDisk(Table target, Record<T> record, Map<Integer, byte[]> backup) throws IOException {
+        int key = Integer.parseInt(record.getKey());
+        int slot = target.index.get(key);
         //Delete Record
         if (record.getEntry() == null) {
-            LOGGER.info("DELETING RECORD : " + record.getKey());
-            byte[] zeros = new byte[binaryParser.getSize()];
-            mbb.position(positionInFile);
-            mbb.put(zeros);
-            return;
+            if (slot >= 0) {
+                TRACER.trace("DELETING RECORD : {0}", record.getKey());
+                backupSlot(target, slot, backup);
+                writeSlot(target, slot, deletedSlot(key));
+                target.index.remove(key);
+                if (keyOnlyProbing) {
+                    target.tombstones.incrementAndGet();
+                }
+            }
+            return true;
         }
         record.getEntry().setFlag(true);
-        ByteBuffer writeBuffer = ByteBuffer.allocate(binaryParser.getSize());
-        writeBuffer.put(binaryParser.getData(record));
+        byte[] data = binaryParser.getData(record);
+        target.bloom.put(key); // before the record can be found any other way
+        if (slot >= 0) {
+            backupSlot(target, slot, backup);
+            writeSlot(target, slot, data);
+        } else if (keyOnlyProbing) {
+            if (!robinHoodInsert(target, key, data, backup)) {
+                return false;
+            }
+        } else {
+            byte[] probeBytes = new byte[binaryParser.getSize()];
+            slot = linearProbe(target, record.getKey(), probeBytes);
+            if (slot < 0) {
+                return false;
+            }
+            backupSlot(target, slot, backup);
+            writeSlot(target, slot, data);
+        }
+        if (slot >= 0) {
+            target.index.put(key, slot); // after the slot, so a reader following the index finds the record there
+        }
+        TRACER.trace("RECORD WRITTEN : {0}", record.getKey());
+        return true;
+    }
+
+    /**
+     * @return The entry stored under {@code keyStr} in {@code source}, ignoring the change buffer, or {@code null}.
+     * Must be called while holding the monitor.
+     */
+    private T entryInTable(Table source, String keyStr) {
+        int key = Integer.parseInt(keyStr);
+        int slot = source.index.get(key);
+        if (slot < 0) {
+            return null;
+        }
+        byte[] entryBytes = new byte[binaryParser.getSize()];
+        readSlot(source, slot, entryBytes);
+        return isOccupied(entryBytes) && keyOf(entryBytes) == key ? binaryParser.parseData(entryBytes).getEntry() : null;
+    }
+
+    /**
+     * Rebuilds every secondary index from {@code source}, e.g. after a failed flush restored slots behind their back.
+     */
+    private void rebuildSecondaryIndexes(Table source) {
+        for (SecondaryIndex<T> index : secondaryIndexes.values()) {
+            try {
+                index.create(source.index.size());
+                fillSecondaryIndex(index, source);
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Failed to rebuild index " + index.getDefinition().getName(), e);
+            }
+        }
+    }
 
-        mbb.position(positionInFile);
-        writeBuffer.flip(); // Prepare the buffer for reading
-        mbb.put(writeBuffer);
-        LOGGER.info("RECORD WRITTEN : " + record.getKey());
+    /**
+     * The bytes a delete leaves behind. Parsers that expose their flag get a tombstone: the key with the flag byte set
+     * to {@link #TOMBSTONE}. For the others the slot can only be zeroed.
+     */
+    private byte[] deletedSlot(int key) {
+        byte[] tombstone = new byte[binaryParser.getSize()];
+        if (keyOnlyProbing) {
+            INT_VIEW.set(tombstone, keyOffset, key);
+            tombstone[flagOffset] = TOMBSTONE;
+        }
+        return tombstone;
+    }
+
+    /**
+     * Inserts a key that is not in the table yet, Robin Hood style: walking from the key's home slot, the record being
+     * placed takes over any slot whose resident is closer to its own home, and the resident moves on in its place.
+     * This keeps every record's distance from home close to the average, so probe chains stay short and even.
+     * <p>The whole displacement path is worked out before anything is written. It is then written back to front, so
+     * each displaced record lands in its new slot, and the index points there, before its old slot is overwritten;
+     * a lock-free reader always finds every record in at least one slot. Keys and flags are read in place.</p>
+     * <p>While a rehash is copying {@code target}, nothing is displaced and the key simply takes the first free slot:
+     * a displaced record could wrap around from a chunk the copy has not reached into one it has already passed,
+     * and would be missing from the new table.</p>
+     *
+     * @return {@code false} if some record on the path would end up MAX_HASH_FAILS or more slots from home.
+     */
+    private boolean robinHoodInsert(Table target, int key, byte[] data, Map<Integer, byte[]> backup) {
+        int size = binaryParser.getSize();
+        List<Integer> pathSlots = new ArrayList<>();
+        List<byte[]> pathData = new ArrayList<>();
+        byte[] carried = data;
+        int slot = homeSlot(key, target.capacity);
+        int distance = 0;
+        boolean displace = !(rehashing && target == table);
+        for (int steps = 0; steps < target.capacity; steps++) {
+            byte flag = target.storage.getByte(slot, flagOffset);
+            if (flag != 1) {
+                // Empty or tombstone: the record being carried ends the path here
+                pathSlots.add(slot);
+                pathData.add(carried);
+                if (flag == TOMBSTONE) {
+                    target.tombstones.decrementAndGet();
+                }
+                for (int i = pathSlots.size() - 1; i >= 0; i--) {
+                    int pathSlot = pathSlots.get(i);
+                    byte[] pathRecord = pathData.get(i);
+                    backupSlot(target, pathSlot, backup);
+                    writeSlot(target, pathSlot, pathRecord);
+                    target.index.put(keyOf(pathRecord), pathSlot);
+                }
+                metrics.recordProbe(steps);
+                return true;
+            }
+            int residentDistance = Math.floorMod(slot - homeSlot(target.storage.getInt(slot, keyOffset), target.capacity), target.capacity);
+            if (displace && residentDistance < distance) {
+                byte[] resident = new byte[size];
+                target.storage.get(slot, resident);
+                pathSlots.add(slot);
+                pathData.add(carried);
+                carried = resident;
+                distance = residentDistance;
+            }
+            distance++;
+            if (distance >= MAX_HASH_FAILS) {
+                metrics.recordProbe(MAX_HASH_FAILS);
+                return false;
+            }
+            slot = (slot + 1) % target.capacity;
+        }
+        metrics.recordProbe(MAX_HASH_FAILS);
+        return false;
+    }
 
+    private void backupSlot(Table target, int slot, Map<Integer, byte[]> backup) {
+        if (backup != null && !backup.containsKey(slot)) {
+            byte[] previous = new byte[binaryParser.getSize()];
+            readSlot(target, slot, previous);
+            backup.put(slot, previous);
+        }
     }
 
-    public synchronized int linearProbe(MappedByteBuffer mbb, String keyStr, boolean searchForKey, boolean allowWrap) {
+    /**
+     * Finds the first free slot for a new key by decoding every record on the way. Used for parsers that do not
+     * expose their key and flag offsets.
+     *
+     * @param target     The table to probe.
+     * @param keyStr     The key to place.
+     * @param entryBytes Scratch space for the decoded slots.
+     * @return The slot index, or -1 if no free slot was found within MAX_HASH_FAILS probes.
+     */
+    private int linearProbe(Table target, String keyStr, byte[] entryBytes) {
         int key = Integer.parseInt(keyStr);
-        int pos = calculateInitialPosition(keyStr);
-        byte[] entryBytes = new byte[binaryParser.getSize()];
+        int slot = calculateInitialSlot(keyStr, target.capacity);
 
         for (int i = 0; i < MAX_HASH_FAILS; i++) {
-            if (pos + binaryParser.getSize() > mbb.limit()) {
-                if (allowWrap) {
-                    pos = 0; // Wrap to the beginning if allowed
-                } else {
-                    return -1; // If not allowed to wrap, fail the operation
+            readSlot(target, slot, entryBytes);
+            Record<T> fileEntry = binaryParser.parseData(entryBytes);
+
+            // Searching for an empty or matching slot
+            if (!fileEntry.getEntry().getFlag() || Integer.parseInt(fileEntry.getKey()) == key) {
+                metrics.recordProbe(i);
+                return slot; // Found a suitable slot, return position
+            }
+
+            slot = (slot + 1) % target.capacity; // Move to the next position, wrapping around
+        }
+
+        metrics.recordProbe(MAX_HASH_FAILS);
+        return -1; // If loop exits, no suitable position was found
+    }
+
+    /**
+     * Looks {@code key} up by probing from its home slot, without the slot index. Lock-free like {@link #read(String)};
+     * used when the index keeps pointing at a slot that does not hold the key.
+     *
+     * @return The slot holding the key, with its bytes left in {@code entryBytes}, or -1 if no live slot holds it.
+     */
+    private int probeForKey(Table source, int key, byte[] entryBytes) {
+        int slot = homeSlot(key, source.capacity);
+        for (int i = 0; i < MAX_HASH_FAILS; i++) {
+            readSlot(source, slot, entryBytes);
+            if (isOccupied(entryBytes) && keyOf(entryBytes) == key) {
+                return slot;
+            }
+            if (keyOnlyProbing && entryBytes[flagOffset] == 0) {
+                return -1; // Robin Hood inserts never leave a gap in a chain; only a slot never written ends one
+            }
+            slot = (slot + 1) % source.capacity;
+        }
+        return -1;
+    }
+
+    /**
+     * Copies one slot into {@code dst} without locking. The slot's version stamp is read before and after the copy;
+     * an odd stamp means a write is in progress and a changed stamp means the copy may be torn, so both retry.
+     */
+    private void readSlot(Table source, int slot, byte[] dst) {
+        while (true) {
+            int before = source.versions.get(slot);
+            if ((before & 1) == 0) {
+                source.storage.get(slot, dst);
+                VarHandle.acquireFence(); // keep the copy above from moving past the second stamp read
+                if (source.versions.get(slot) == before) {
+                    return;
                 }
             }
+            Thread.onSpinWait();
+        }
+    }
 
-            mbb.position(pos);
-            mbb.get(entryBytes);
-            Record<T> fileEntry = binaryParser.parseData(entryBytes);
+    /**
+     * Writes one slot, bumping its version stamp to odd before and back to even after. Callers hold the monitor,
+     * so there is only ever one writer per table.
+     */
+    private void writeSlot(Table target, int slot, byte[] data) {
+        target.versions.incrementAndGet(slot);
+        VarHandle.releaseFence(); // keep the writes below from moving ahead of the odd stamp
+        target.storage.put(slot, data);
+        target.versions.incrementAndGet(slot);
+    }
+
+    /**
+     * Starts a background rehash once the load factor goes over the configured threshold, or a same-size one that
+     * drops the tombstones once they take up more than the configured share of the slots.
+     * Must be called while holding the monitor.
+     */
+    private void scheduleRehashIfRequired() {
+        if (rehashing) {
+            return;
+        }
+        Table current = table;
+        if (occupiedSlots.get() > options.getMaxLoadFactor() * current.capacity) {
+            beginRehash();
+            LOGGER.info("LOAD FACTOR " + getLoadFactor() + " OVER " + options.getMaxLoadFactor() + ", SCHEDULING REHASH");
+            rehashExecutor.submit(() -> rehash(nextPrime(current.capacity * 2)));
+        } else if (current.tombstones.get() > options.getMaxTombstoneRatio() * current.capacity) {
+            beginRehash();
+            LOGGER.info(current.tombstones.get() + " TOMBSTONES IN " + current.capacity + " SLOTS, SCHEDULING CLEANUP");
+            rehashExecutor.submit(() -> rehash(current.capacity));
+        }
+    }
 
-            if (searchForKey) {
-                // Searching for a specific key
-                if (Integer.parseInt(fileEntry.getKey()) == key) {
-                    return pos; // Found the key, return position
+    private void beginRehash() {
+        rehashBacklog = new ArrayList<>();
+        rehashing = true;
+    }
+
+    /**
+     * Rehashes every live record into a new file, then swaps it in place of the current one. Tombstones are not
+     * copied, so a rehash at the current capacity is how they are cleaned up.
+     * <p>The old table is copied a chunk at a time, taking the monitor only for each chunk, so reads and flushes keep
+     * running against the old table. Records flushed during the copy are collected in {@link #rehashBacklog} and
+     * replayed into the new table right before the swap.</p>
+     */
+    private void rehash(int newCapacity) {
+        Path target = Paths.get(path + ".rehash");
+        Table source = table;
+        try {
+            while (true) {
+                Table rehashed;
+                try (FileChannel channel = FileChannel.open(target, READ, WRITE, CREATE, TRUNCATE_EXISTING)) {
+                    rehashed = new Table(map(channel, newCapacity, TableHeader.SIZE), newCapacity);
+                    new TableHeader(binaryParser.getSize(), newCapacity, 0, 0, false).write(channel);
                 }
-            } else {
-                // Searching for an empty or matching slot
-                if (!fileEntry.getEntry().getFlag() || Integer.parseInt(fileEntry.getKey()) == key) {
-                    return pos; // Found a suitable slot, return position
+
+                if (copyLiveRecords(source, rehashed)) {
+                    synchronized (this) {
+                        if (placeAll(rehashBacklog, rehashed)) {
+                            rehashed.storage.force();
+                            Files.move(target, Paths.get(path), REPLACE_EXISTING, ATOMIC_MOVE);
+                            table = rehashed;
+                            occupiedSlots.set(rehashed.index.size());
+                            rehashBacklog = null;
+                            rehashing = false;
+                            LOGGER.info("REHASHED " + source.capacity + " SLOTS INTO " + newCapacity);
+                            if (!changes.isEmpty()) {
+                                flush();
+                            }
+                            return;
+                        }
+                    }
                 }
+                // Clustered keys can still overflow a probe chain after one doubling; keep growing until they fit
+                LOGGER.info("PROBE CHAIN FULL IN " + newCapacity + " SLOT TABLE, GROWING FURTHER");
+                newCapacity = nextPrime(newCapacity * 2);
             }
+        } catch (IOException | RuntimeException e) {
+            synchronized (this) {
+                rehashBacklog = null;
+                rehashing = false;
+            }
+            LOGGER.log(Level.SEVERE, "Failed to rehash database file", e);
+        }
+    }
 
-            pos += binaryParser.getSize(); // Move to the next position
-            if (pos >= mbb.limit() && allowWrap) pos = 0; // Optionally wrap around
+    /**
+     * Copies every live record of {@code source} into {@code rehashed}, a chunk of slots per monitor acquisition.
+     *
+     * @return {@code false} if some record found no slot within MAX_HASH_FAILS probes.
+     */
+    private boolean copyLiveRecords(Table source, Table rehashed) throws IOException {
+        byte[] entryBytes = new byte[binaryParser.getSize()];
+        List<Record<T>> chunk = new ArrayList<>();
+        for (int slot = 0; slot < source.capacity; slot += REHASH_CHUNK_SLOTS) {
+            synchronized (this) {
+                chunk.clear();
+                int end = Math.min(source.capacity, slot + REHASH_CHUNK_SLOTS);
+                for (int i = slot; i < end; i++) {
+                    readSlot(source, i, entryBytes);
+                    if (isOccupied(entryBytes)) {
+                        chunk.add(binaryParser.parseData(entryBytes));
+                    }
+                }
+                if (!placeAll(chunk, rehashed)) {
+                    return false;
+                }
+            }
         }
+        return true;
+    }
 
-        return -1; // If loop exits, no suitable position was found
+    /**
+     * Writes records into a table that is not yet visible to readers.
+     *
+     * @return {@code false} if some record found no slot within MAX_HASH_FAILS probes.
+     */
+    private boolean placeAll(List<Record<T>> records, Table target) throws IOException {
+        for (Record<T> record : records) {
+            if (!writeRecordToDisk(target, record, null)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isOccupied(byte[] entryBytes) {
+        if (keyOnlyProbing) {
+            return entryBytes[flagOffset] == 1;
+        }
+        Record<T> record = binaryParser.parseData(entryBytes);
+        return record.getEntry() != null && record.getEntry().getFlag();
     }
 
+    private int keyOf(byte[] entryBytes) {
+        if (keyOnlyProbing) {
+            return (int) INT_VIEW.get(entryBytes, keyOffset);
+        }
+        return Integer.parseInt(binaryParser.parseData(entryBytes).getKey());
+    }
 
     /**
-     * Calculates the initial file position for a given key. This is based on the hash code of the key modulo the maximum number of records. This position serves as the starting point for reading or writing a record.
+     * Rebuilds the slot index and tombstone count of {@code source} with one sequential scan of the file. Must be called while holding
+     * the monitor, or before the table is shared.
      *
-     * @param key The key for which to calculate the file position.
-     * @return The calculated position in the file.
+     * @param fillBloomFilter Whether to add every live key to the table's Bloom filter as well.
+     * @return The number of live records found.
      */
-    private int calculateInitialPosition(String key) {
-        int hashCode = Math.abs(key.hashCode());
-        int index = hashCode % maxRecords;
-        return index * binaryParser.getSize();
+    private int rebuildIndex(Table source, boolean fillBloomFilter) {
+        byte[] entryBytes = new byte[binaryParser.getSize()];
+        SlotIndex rebuilt = new SlotIndex(source.index.size());
+        int tombstones = 0;
+        for (int slot = 0; slot < source.capacity; slot++) {
+            readSlot(source, slot, entryBytes);
+            if (isOccupied(entryBytes)) {
+                int key = keyOf(entryBytes);
+                if (fillBloomFilter) {
+                    source.bloom.put(key);
+                }
+                rebuilt.put(key, slot);
+            } else if (keyOnlyProbing && entryBytes[flagOffset] == TOMBSTONE) {
+                tombstones++;
+            }
+        }
+        source.index.replaceWith(rebuilt);
+        source.tombstones.set(tombstones);
+        return rebuilt.size();
+    }
+
+    static int nextPrime(int n) {
+        int candidate = Math.max(2, n);
+        while (!isPrime(candidate)) {
+            candidate++;
+        }
+        return candidate;
+    }
+
+    private static boolean isPrime(int n) {
+        if (n < 4) return n > 1;
+        if (n % 2 == 0) return false;
+        for (int i = 3; (long) i * i <= n; i += 2) {
+            if (n % i == 0) return false;
+        }
+        return true;
+    }
+
+
+    /**
+     * Calculates the initial slot for a given key. This is based on the hash code of the key modulo the number of slots. This slot serves as the starting point for reading or writing a record.
+     *
+     * @param key   The key for which to calculate the slot.
+     * @param slots The number of slots in the table being probed.
+     * @return The calculated slot index.
+     */
+    private int calculateInitialSlot(String key, int slots) {
+        return Math.abs(key.hashCode() % slots);
+    }
+
+    /**
+     * Same as {@link #calculateInitialSlot(String, int)} for the decimal form of {@code key}, without building the
+     * string: the hash is accumulated digit by digit the way {@link String#hashCode()} does.
+     */
+    static int homeSlot(int key, int slots) {
+        long value = key;
+        int hash = 0;
+        if (value < 0) {
+            hash = '-';
+            value = -value;
+        }
+        long place = 1;
+        while (place * 10 <= value) {
+            place *= 10;
+        }
+        for (; place > 0; place /= 10) {
+            hash = 31 * hash + (char) ('0' + value / place % 10);
+        }
+        return Math.abs(hash % slots);
+    }
+
+    /**
+     * One generation of the table: the mapping, its slot count, a version stamp per slot, the key-to-slot index, the
+     * Bloom filter in front of it and the number of tombstones left by deletes. Only a table read from a file written
+     * before tables had headers has none; it never gets one written over its first slot.
+     * Readers take a snapshot of the reference and never see a mapping paired with another generation's capacity.
+     */
+    private static final class Table {
+        final ChunkedMapping storage;
+        final int capacity;
+        final AtomicIntegerArray versions;
+        final SlotIndex index;
+        final BloomFilter bloom;
+        final AtomicInteger tombstones = new AtomicInteger();
+        final boolean hasHeader;
+
+        Table(ChunkedMapping storage, int capacity) {
+            this(storage, capacity, new BloomFilter(capacity), true);
+        }
+
+        Table(ChunkedMapping storage, int capacity, BloomFilter bloom, boolean hasHeader) {
+            this.storage = storage;
+            this.capacity = capacity;
+            this.versions = new AtomicIntegerArray(capacity);
+            this.index = new SlotIndex(capacity / 2);
+            this.bloom = bloom;
+            this.hasHeader = hasHeader;
+        }
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,162 @@
+package data.databases;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Tuning knobs for a {@link HashBasedDatabase}. Every setter returns {@code this} so options can be chained;
+ * a fresh instance holds the defaults the three-argument constructor uses.
+ */
+public class HashDatabaseOptions {
+
+    public static final double DEFAULT_MAX_LOAD_FACTOR = 0.75;
+
+    public static final double DEFAULT_MAX_TOMBSTONE_RATIO = 0.2;
+
+    public static final FlushPolicy DEFAULT_FLUSH_POLICY =
+            FlushPolicy.byCount(100).or(FlushPolicy.byAge(Duration.ofSeconds(1)));
+
+    public static final Duration DEFAULT_FLUSH_POLL_INTERVAL = Duration.ofMillis(50);
+
+    public static final int DEFAULT_MAPPING_REGION_SIZE = 1 << 30; // 1 GB
+
+    public static final Duration DEFAULT_METRICS_INTERVAL = Duration.ofMinutes(1);
+
+    private double maxLoadFactor = DEFAULT_MAX_LOAD_FACTOR;
+    private double maxTombstoneRatio = DEFAULT_MAX_TOMBSTONE_RATIO;
+    private boolean writeAheadLog = false;
+    private FlushPolicy flushPolicy = DEFAULT_FLUSH_POLICY;
+    private Duration flushPollInterval = DEFAULT_FLUSH_POLL_INTERVAL;
+    private int mappingRegionSize = DEFAULT_MAPPING_REGION_SIZE;
+    private Path metricsFile = null;
+    private Duration metricsInterval = DEFAULT_METRICS_INTERVAL;
+
+    /**
+     * @param maxLoadFactor The load factor (occupied slots / total slots) that triggers a background rehash.
+     * @return These options.
+     * @throws IllegalArgumentException If the load factor is not in (0, 1].
+     */
+    public HashDatabaseOptions maxLoadFactor(double maxLoadFactor) {
+        if (maxLoadFactor <= 0 || maxLoadFactor > 1) {
+            throw new IllegalArgumentException("maxLoadFactor must be in (0, 1]: " + maxLoadFactor);
+        }
+        this.maxLoadFactor = maxLoadFactor;
+        return this;
+    }
+
+    /**
+     * @param maxTombstoneRatio The share of slots holding tombstones that triggers a background cleanup, which
+     *                          rewrites the table at its current size without them.
+     * @return These options.
+     * @throws IllegalArgumentException If the ratio is not in (0, 1].
+     */
+    public HashDatabaseOptions maxTombstoneRatio(double maxTombstoneRatio) {
+        if (maxTombstoneRatio <= 0 || maxTombstoneRatio > 1) {
+            throw new IllegalArgumentException("maxTombstoneRatio must be in (0, 1]: " + maxTombstoneRatio);
+        }
+        this.maxTombstoneRatio = maxTombstoneRatio;
+        return this;
+    }
+
+    /**
+     * @param writeAheadLog Whether every add and delete is logged and fsynced (in group-commit batches) before it
+     *                      returns, and replayed into the table on startup.
+     * @return These options.
+     */
+    public HashDatabaseOptions writeAheadLog(boolean writeAheadLog) {
+        this.writeAheadLog = writeAheadLog;
+        return this;
+    }
+
+    /**
+     * @param flushPolicy When the background flusher writes the pending changes to the table.
+     * @return These options.
+     */
+    public HashDatabaseOptions flushPolicy(FlushPolicy flushPolicy) {
+        this.flushPolicy = Objects.requireNonNull(flushPolicy, "flushPolicy cannot be null");
+        return this;
+    }
+
+    /**
+     * @param flushPollInterval How often the background flusher re-checks its policy when no writer wakes it.
+     *                          Bounds how late an age-based policy can fire.
+     * @return These options.
+     */
+    public HashDatabaseOptions flushPollInterval(Duration flushPollInterval) {
+        if (flushPollInterval.isNegative() || flushPollInterval.isZero()) {
+            throw new IllegalArgumentException("flushPollInterval must be positive: " + flushPollInterval);
+        }
+        this.flushPollInterval = flushPollInterval;
+        return this;
+    }
+
+    /**
+     * @param mappingRegionSize The largest single mapping of the table file, in bytes. Larger files are mapped as
+     *                          several regions; each holds a whole number of records.
+     * @return These options.
+     * @throws IllegalArgumentException If the size is not positive.
+     */
+    public HashDatabaseOptions mappingRegionSize(int mappingRegionSize) {
+        if (mappingRegionSize <= 0) {
+            throw new IllegalArgumentException("mappingRegionSize must be positive: " + mappingRegionSize);
+        }
+        this.mappingRegionSize = mappingRegionSize;
+        return this;
+    }
+
+    /**
+     * @param metricsFile A file to append a {@link DatabaseMetrics} line to every {@link #metricsInterval(Duration)},
+     *                    and once more on close, or {@code null} for none. Metrics can always be pulled with
+     *                    {@link HashBasedDatabase#getMetrics()}.
+     * @return These options.
+     */
+    public HashDatabaseOptions metricsFile(Path metricsFile) {
+        this.metricsFile = metricsFile;
+        return this;
+    }
+
+    /**
+     * @param metricsInterval How often metrics are appended to the {@link #metricsFile(Path)}.
+     * @return These options.
+     */
+    public HashDatabaseOptions metricsInterval(Duration metricsInterval) {
+        if (metricsInterval.isNegative() || metricsInterval.isZero()) {
+            throw new IllegalArgumentException("metricsInterval must be positive: " + metricsInterval);
+        }
+        this.metricsInterval = metricsInterval;
+        return this;
+    }
+
+    public double getMaxLoadFactor() {
+        return maxLoadFactor;
+    }
+
+    public double getMaxTombstoneRatio() {
+        return maxTombstoneRatio;
+    }
+
+    public boolean isWriteAheadLog() {
+        return writeAheadLog;
+    }
+
+    public FlushPolicy getFlushPolicy() {
+        return flushPolicy;
+    }
+
+    public Duration getFlushPollInterval() {
+        return flushPollInterval;
+    }
+
+    public int getMappingRegionSize() {
+        return mappingRegionSize;
+    }
+
+    public Path getMetricsFile() {
+        return metricsFile;
+    }
+
+    public Duration getMetricsInterval() {
+        return metricsInterval;
+    }
+}
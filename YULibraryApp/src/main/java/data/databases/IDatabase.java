@@ -2,7 +2,9 @@ package data.databases;
 
 import data.Record;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Represents a generic interface for a database that can store, read, update, and delete records of a specific type.
@@ -46,4 +48,19 @@ public interface IDatabase<T> {
      * @return A list of all records.
      */
     List<Record<T>> readAll();
+
+    /**
+     * Reads several records by key in one call, letting the database batch the lookups.
+     *
+     * @param keys The keys of the records to read.
+     * @return The records found, keyed by key in the order of {@code keys}; keys with no record are left out.
+     */
+    Map<String, Record<T>> readMany(Collection<String> keys);
+
+    /**
+     * Adds several records in one call, letting the database batch the writes.
+     *
+     * @param records The records to add.
+     */
+    void addAll(Collection<Record<T>> records);
 }
@@ -0,0 +1,22 @@
+package data.databases;
+
+import data.Record;
+
+import java.util.List;
+
+/**
+ * A database that can also find records through secondary indexes declared with {@link IndexDefinition}.
+ *
+ * @param <T> The type of the records managed by the database.
+ */
+public interface IIndexedDatabase<T> extends IDatabase<T> {
+    /**
+     * Finds the records whose indexed field has the given value, including changes that are not flushed yet.
+     *
+     * @param indexName The name of the index to look in.
+     * @param value     The value to look up.
+     * @return The matching records; empty if there are none.
+     * @throws IllegalArgumentException If the database has no index of that name.
+     */
+    List<Record<T>> findBy(String indexName, String value);
+}
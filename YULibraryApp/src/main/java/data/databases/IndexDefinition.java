@@ -0,0 +1,50 @@
+package data.databases;
+
+import data.binary.datums.Datum;
+
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Declares a secondary index of a {@link HashBasedDatabase}: a name and the field it maps back to primary keys,
+ * e.g. {@code IndexDefinition.of("email", user -> user.email)} or, for a one-to-many mapping,
+ * {@code IndexDefinition.of("userId", contract -> contract.userId)}.
+ * <p>The index is stored in {@code <path>.<name>.idx} next to the table. Its file records only the name, so an index
+ * whose extractor changes should be given a new name; the old file is then deleted on the next open.</p>
+ *
+ * @param <T> The Datum type of the indexed database.
+ */
+public final class IndexDefinition<T extends Datum> {
+
+    private final String name;
+    private final Function<? super T, String> extractor;
+
+    private IndexDefinition(String name, Function<? super T, String> extractor) {
+        this.name = name;
+        this.extractor = extractor;
+    }
+
+    /**
+     * @param name      The index name, used in lookups and in the index file name.
+     * @param extractor Returns the indexed value of an entry, or {@code null} to leave the entry out of the index.
+     * @return The definition.
+     * @throws IllegalArgumentException If the name is not made of letters, digits, '-' and '_'.
+     */
+    public static <T extends Datum> IndexDefinition<T> of(String name, Function<? super T, String> extractor) {
+        if (name == null || !name.matches("[A-Za-z0-9_-]+")) {
+            throw new IllegalArgumentException("Index names may only use letters, digits, '-' and '_': " + name);
+        }
+        return new IndexDefinition<>(name, Objects.requireNonNull(extractor, "extractor cannot be null"));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return The indexed value of {@code entry}, or {@code null} if it is not indexed.
+     */
+    public String valueOf(T entry) {
+        return extractor.apply(entry);
+    }
+}
@@ -0,0 +1,536 @@
+package data.databases;
+
+import data.Record;
+import data.binary.datums.ItemDatum;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * A read-only, column-oriented copy of the item catalog for reporting. Every {@link ItemDatum} field is stored in its
+ * own file as a primitive array indexed by row, so a query that filters on {@code lost} and sums
+ * {@code copiesAvailable} reads those two arrays and nothing else. Columns are loaded on first use and kept on the
+ * heap.
+ * <p>An open snapshot holds every file of its generation open, so it can still load a column after later exports have
+ * deleted the generation. {@link #close()} releases the files; columns loaded by then stay usable.</p>
+ * <p>{@code location} repeats heavily, so it is dictionary-encoded: the column holds an int code per row, and the
+ * distinct strings are stored once. Filters on it compare codes, and grouping by it indexes an array by code.</p>
+ * <p>Filters return a {@link RowSelection} bitmap. Their loops are branch-free over plain arrays so the JIT can
+ * vectorize them.</p>
+ * <p>Snapshots are written by {@link #write} into a new generation directory under the snapshot directory, and only
+ * become visible when the {@code CURRENT} file naming that generation is moved into place. The previous generation is
+ * kept so a snapshot being opened during an export still finds its files; older ones are deleted. A generation that
+ * cannot be deleted yet, e.g. because a platform refuses to delete open files, is retried by the next export.</p>
+ */
+public final class ItemColumnSnapshot implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(ItemColumnSnapshot.class.getName());
+
+    /**
+     * The columns of a snapshot, one file each.
+     */
+    public enum Column {
+        KEY("key.i32"),
+        ITEM_ID("item_id.i64"),
+        TITLE("title.str"),
+        AUTHOR("author.str"),
+        ENABLED("enabled.i8"),
+        COPIES_AVAILABLE("copies_available.i32"),
+        LOST("lost.i8"),
+        LOCATION("location.i32");
+
+        private final String fileName;
+
+        Column(String fileName) {
+            this.fileName = fileName;
+        }
+    }
+
+    private static final int MAGIC = 0x49434F4C; // "ICOL"
+    private static final String CURRENT = "CURRENT";
+    private static final String META = "meta";
+    private static final String LOCATION_DICTIONARY = "location.dict";
+    private static final String GENERATION_PREFIX = "gen-";
+    private static final int NO_LOCATION = -1;
+
+    private final Path generation;
+    private final int rowCount;
+    private final Map<Column, FileChannel> files;
+    private final FileChannel dictionaryFile;
+    private final Map<Column, Object> loaded = new EnumMap<>(Column.class); // guarded by this
+    private String[] locationDictionary; // guarded by this
+
+    private ItemColumnSnapshot(Path generation, int rowCount, Map<Column, FileChannel> files, FileChannel dictionaryFile) {
+        this.generation = generation;
+        this.rowCount = rowCount;
+        this.files = files;
+        this.dictionaryFile = dictionaryFile;
+    }
+
+    /**
+     * Writes the records as a new snapshot generation and makes it the current one.
+     *
+     * @param directory The snapshot directory; created if missing.
+     * @param records   The items to export.
+     * @return The directory of the new generation.
+     * @throws UncheckedIOException If a column cannot be written.
+     */
+    public static Path write(Path directory, Collection<Record<ItemDatum>> records) {
+        try {
+            Files.createDirectories(directory);
+            long number = currentGeneration(directory) + 1;
+            Path generation = directory.resolve(GENERATION_PREFIX + number);
+            Files.createDirectories(generation);
+
+            int rows = records.size();
+            int[] keys = new int[rows];
+            long[] itemIds = new long[rows];
+            String[] titles = new String[rows];
+            String[] authors = new String[rows];
+            byte[] enabled = new byte[rows];
+            int[] copies = new int[rows];
+            byte[] lost = new byte[rows];
+            int[] locations = new int[rows];
+            Map<String, Integer> codes = new LinkedHashMap<>();
+            int row = 0;
+            for (Record<ItemDatum> record : records) {
+                ItemDatum item = record.getEntry();
+                keys[row] = Integer.parseInt(record.getKey());
+                itemIds[row] = item.itemId;
+                titles[row] = item.title;
+                authors[row] = item.author;
+                enabled[row] = (byte) (item.enabled ? 1 : 0);
+                copies[row] = item.getCopiesAvailable();
+                lost[row] = (byte) (item.isLost() ? 1 : 0);
+                locations[row] = item.getLocation() == null ? NO_LOCATION
+                        : codes.computeIfAbsent(item.getLocation(), location -> codes.size());
+                row++;
+            }
+
+            writeFile(generation.resolve(Column.KEY.fileName), intBytes(keys));
+            ByteBuffer ids = ByteBuffer.allocate(rows * Long.BYTES);
+            ids.asLongBuffer().put(itemIds);
+            writeFile(generation.resolve(Column.ITEM_ID.fileName), ids);
+            writeFile(generation.resolve(Column.TITLE.fileName), stringBytes(titles));
+            writeFile(generation.resolve(Column.AUTHOR.fileName), stringBytes(authors));
+            writeFile(generation.resolve(Column.ENABLED.fileName), ByteBuffer.wrap(enabled));
+            writeFile(generation.resolve(Column.COPIES_AVAILABLE.fileName), intBytes(copies));
+            writeFile(generation.resolve(Column.LOST.fileName), ByteBuffer.wrap(lost));
+            writeFile(generation.resolve(Column.LOCATION.fileName), intBytes(locations));
+            writeFile(generation.resolve(LOCATION_DICTIONARY), stringBytes(codes.keySet().toArray(new String[0])));
+            ByteBuffer meta = ByteBuffer.allocate(2 * Integer.BYTES);
+            meta.putInt(MAGIC).putInt(rows).flip();
+            writeFile(generation.resolve(META), meta);
+
+            Path pointer = directory.resolve(CURRENT + ".tmp");
+            Files.writeString(pointer, Long.toString(number));
+            Files.move(pointer, directory.resolve(CURRENT), REPLACE_EXISTING, ATOMIC_MOVE);
+            deleteGenerationsBefore(directory, number - 1);
+            return generation;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write item snapshot to " + directory, e);
+        }
+    }
+
+    /**
+     * Opens the current generation of a snapshot directory and holds its files open until {@link #close()}. No column
+     * is read until it is used.
+     *
+     * @throws UncheckedIOException     If the directory holds no snapshot.
+     * @throws IllegalArgumentException If the snapshot's metadata is damaged.
+     */
+    public static ItemColumnSnapshot open(Path directory) {
+        Map<Column, FileChannel> files = new EnumMap<>(Column.class);
+        try {
+            long number = currentGeneration(directory);
+            if (number < 0) {
+                throw new IOException("No snapshot in " + directory);
+            }
+            Path generation = directory.resolve(GENERATION_PREFIX + number);
+            ByteBuffer meta = ByteBuffer.wrap(Files.readAllBytes(generation.resolve(META)));
+            if (meta.remaining() != 2 * Integer.BYTES || meta.getInt() != MAGIC) {
+                throw new IllegalArgumentException(generation + " is not an item snapshot");
+            }
+            for (Column column : Column.values()) {
+                files.put(column, FileChannel.open(generation.resolve(column.fileName), READ));
+            }
+            FileChannel dictionaryFile = FileChannel.open(generation.resolve(LOCATION_DICTIONARY), READ);
+            return new ItemColumnSnapshot(generation, meta.getInt(), files, dictionaryFile);
+        } catch (IOException e) {
+            closeAll(files.values(), e);
+            throw new UncheckedIOException("Failed to open item snapshot in " + directory, e);
+        } catch (RuntimeException e) {
+            closeAll(files.values(), e);
+            throw e;
+        }
+    }
+
+    private static void closeAll(Collection<FileChannel> channels, Exception failure) {
+        for (FileChannel channel : channels) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                failure.addSuppressed(e);
+            }
+        }
+    }
+
+    /**
+     * Releases the snapshot's files. Columns already loaded stay usable; loading another one fails.
+     */
+    @Override
+    public void close() {
+        IOException failure = null;
+        List<FileChannel> channels = new ArrayList<>(files.values());
+        channels.add(dictionaryFile);
+        for (FileChannel channel : channels) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw new UncheckedIOException("Failed to close item snapshot " + generation, failure);
+        }
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return Whether the column has been read from disk by this snapshot.
+     */
+    public synchronized boolean isLoaded(Column column) {
+        return loaded.containsKey(column);
+    }
+
+    /**
+     * @return Every row.
+     */
+    public RowSelection all() {
+        return RowSelection.all(rowCount);
+    }
+
+    /**
+     * @return The rows of items marked lost. Reads only the {@code lost} column.
+     */
+    public RowSelection lost() {
+        return flagged(bytes(Column.LOST));
+    }
+
+    /**
+     * @return The rows of disabled items. Reads only the {@code enabled} column.
+     */
+    public RowSelection disabled() {
+        return flagged(bytes(Column.ENABLED)).not();
+    }
+
+    /**
+     * @return The rows whose {@code copiesAvailable} lies between {@code min} and {@code max}, both inclusive.
+     */
+    public RowSelection copiesAvailableBetween(int min, int max) {
+        int[] copies = ints(Column.COPIES_AVAILABLE);
+        long[] words = new long[RowSelection.wordsFor(rowCount)];
+        for (int base = 0; base < rowCount; base += 64) {
+            int end = Math.min(64, rowCount - base);
+            long word = 0;
+            for (int i = 0; i < end; i++) {
+                int value = copies[base + i];
+                // 1 when min <= value <= max, without a branch: both differences are non-negative
+                long inRange = (((long) value - min) | ((long) max - value)) >>> 63 ^ 1;
+                word |= inRange << i;
+            }
+            words[base >>> 6] = word;
+        }
+        return new RowSelection(words, rowCount);
+    }
+
+    /**
+     * @return The rows whose {@code location} equals {@code location}. Compares dictionary codes, not strings.
+     */
+    public RowSelection locationIs(String location) {
+        int code = locationCode(location);
+        int[] locations = ints(Column.LOCATION);
+        long[] words = new long[RowSelection.wordsFor(rowCount)];
+        if (code == NO_LOCATION) {
+            return new RowSelection(words, rowCount);
+        }
+        for (int base = 0; base < rowCount; base += 64) {
+            int end = Math.min(64, rowCount - base);
+            long word = 0;
+            for (int i = 0; i < end; i++) {
+                long match = (long) (locations[base + i] ^ code);
+                word |= ((match | -match) >>> 63 ^ 1) << i; // 1 when the codes are equal
+            }
+            words[base >>> 6] = word;
+        }
+        return new RowSelection(words, rowCount);
+    }
+
+    /**
+     * Sums {@code copiesAvailable} per location over the selected rows. Reads the {@code location} and
+     * {@code copiesAvailable} columns and the location dictionary.
+     *
+     * @return The sums by location, in dictionary order, leaving out locations with no selected row.
+     */
+    public Map<String, Long> copiesAvailableByLocation(RowSelection rows) {
+        int[] locations = ints(Column.LOCATION);
+        int[] copies = ints(Column.COPIES_AVAILABLE);
+        String[] dictionary = locationDictionary();
+        long[] sums = new long[dictionary.length];
+        boolean[] seen = new boolean[dictionary.length];
+        rows.forEach(row -> {
+            int code = locations[row];
+            if (code != NO_LOCATION) {
+                sums[code] += copies[row];
+                seen[code] = true;
+            }
+        });
+        Map<String, Long> byLocation = new LinkedHashMap<>();
+        for (int code = 0; code < dictionary.length; code++) {
+            if (seen[code]) {
+                byLocation.put(dictionary[code], sums[code]);
+            }
+        }
+        return byLocation;
+    }
+
+    /**
+     * @return The record keys of the selected rows, for reading the full items from the database.
+     */
+    public List<String> keys(RowSelection rows) {
+        int[] keys = ints(Column.KEY);
+        List<String> selected = new ArrayList<>(rows.count());
+        rows.forEach(row -> selected.add(String.valueOf(keys[row])));
+        return selected;
+    }
+
+    /**
+     * @return The column as stored: {@code int[]} for keys, copies and location codes, {@code long[]} for item ids,
+     * {@code byte[]} for the flags and {@code String[]} for titles and authors. Do not modify it.
+     */
+    public synchronized Object column(Column column) {
+        Object values = loaded.get(column);
+        if (values == null) {
+            values = load(column);
+            loaded.put(column, values);
+        }
+        return values;
+    }
+
+    /**
+     * @return The distinct locations, indexed by their code.
+     */
+    public synchronized String[] locationDictionary() {
+        if (locationDictionary == null) {
+            try {
+                locationDictionary = readStrings(readAll(dictionaryFile));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read the location dictionary of " + generation, e);
+            }
+        }
+        return locationDictionary;
+    }
+
+    private int locationCode(String location) {
+        String[] dictionary = locationDictionary();
+        for (int code = 0; code < dictionary.length; code++) {
+            if (dictionary[code].equals(location)) {
+                return code;
+            }
+        }
+        return NO_LOCATION;
+    }
+
+    private RowSelection flagged(byte[] flags) {
+        long[] words = new long[RowSelection.wordsFor(rowCount)];
+        for (int base = 0; base < rowCount; base += 64) {
+            int end = Math.min(64, rowCount - base);
+            long word = 0;
+            for (int i = 0; i < end; i++) {
+                word |= (long) (flags[base + i] & 1) << i;
+            }
+            words[base >>> 6] = word;
+        }
+        return new RowSelection(words, rowCount);
+    }
+
+    private int[] ints(Column column) {
+        return (int[]) column(column);
+    }
+
+    private byte[] bytes(Column column) {
+        return (byte[]) column(column);
+    }
+
+    private Object load(Column column) {
+        try {
+            ByteBuffer buffer = readAll(files.get(column));
+            switch (column) {
+                case TITLE:
+                case AUTHOR: {
+                    String[] values = readStrings(buffer);
+                    return checkRows(column, values.length, values);
+                }
+                case ITEM_ID: {
+                    long[] values = new long[buffer.remaining() / Long.BYTES];
+                    buffer.asLongBuffer().get(values);
+                    return checkRows(column, values.length, values);
+                }
+                case ENABLED:
+                case LOST: {
+                    byte[] values = buffer.array();
+                    return checkRows(column, values.length, values);
+                }
+                default: {
+                    int[] values = new int[buffer.remaining() / Integer.BYTES];
+                    buffer.asIntBuffer().get(values);
+                    return checkRows(column, values.length, values);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read column " + column + " of " + generation, e);
+        }
+    }
+
+    private <V> V checkRows(Column column, int length, V values) {
+        if (length != rowCount) {
+            throw new IllegalArgumentException("Column " + column + " of " + generation + " has " + length
+                    + " rows, the snapshot has " + rowCount);
+        }
+        return values;
+    }
+
+    private static ByteBuffer intBytes(int[] values) {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * Integer.BYTES);
+        buffer.asIntBuffer().put(values);
+        return buffer;
+    }
+
+    /**
+     * Strings as {@code [count]} then {@code [length][UTF-8 bytes]} each; a {@code null} has length -1.
+     */
+    private static ByteBuffer stringBytes(String[] values) {
+        byte[][] encoded = new byte[values.length][];
+        int size = Integer.BYTES;
+        for (int i = 0; i < values.length; i++) {
+            encoded[i] = values[i] == null ? null : values[i].getBytes(StandardCharsets.UTF_8);
+            size += Integer.BYTES + (encoded[i] == null ? 0 : encoded[i].length);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(values.length);
+        for (byte[] value : encoded) {
+            buffer.putInt(value == null ? -1 : value.length);
+            if (value != null) {
+                buffer.put(value);
+            }
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Reads a whole file through a channel opened by {@link #open}, which still works once the file is deleted.
+     */
+    private static ByteBuffer readAll(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Snapshot file of " + size + " bytes is too large");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, buffer.position()) < 0) {
+                throw new EOFException("Snapshot file ended after " + buffer.position() + " of " + size + " bytes");
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static String[] readStrings(ByteBuffer buffer) {
+        String[] values = new String[buffer.getInt()];
+        for (int i = 0; i < values.length; i++) {
+            int length = buffer.getInt();
+            if (length >= 0) {
+                values[i] = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+                buffer.position(buffer.position() + length);
+            }
+        }
+        return values;
+    }
+
+    private static void writeFile(Path file, ByteBuffer data) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, WRITE, CREATE, TRUNCATE_EXISTING)) {
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+            channel.force(false);
+        }
+    }
+
+    /**
+     * @return The generation {@code CURRENT} names, or -1 if there is none.
+     */
+    private static long currentGeneration(Path directory) throws IOException {
+        Path pointer = directory.resolve(CURRENT);
+        if (!Files.exists(pointer)) {
+            return -1;
+        }
+        return Long.parseLong(Files.readString(pointer).trim());
+    }
+
+    private static void deleteGenerationsBefore(Path directory, long oldestKept) throws IOException {
+        List<Path> stale = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, GENERATION_PREFIX + "*")) {
+            for (Path generation : stream) {
+                try {
+                    long number = Long.parseLong(generation.getFileName().toString().substring(GENERATION_PREFIX.length()));
+                    if (number < oldestKept) {
+                        stale.add(generation);
+                    }
+                } catch (NumberFormatException ignored) {
+                    // not one of our generations
+                }
+            }
+        }
+        for (Path generation : stale) {
+            try {
+                try (Stream<Path> files = Files.list(generation)) {
+                    for (Path file : (Iterable<Path>) files::iterator) {
+                        Files.deleteIfExists(file);
+                    }
+                }
+                Files.deleteIfExists(generation);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to delete snapshot generation " + generation + ", retrying on the next export", e);
+            }
+        }
+    }
+}
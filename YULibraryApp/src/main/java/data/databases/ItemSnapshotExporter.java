@@ -0,0 +1,77 @@
+package data.databases;
+
+import data.binary.datums.ItemDatum;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Exports the item database as an {@link ItemColumnSnapshot} on a fixed schedule, from a daemon thread, so reporting
+ * queries never touch the live table.
+ */
+public class ItemSnapshotExporter implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(ItemSnapshotExporter.class.getName());
+
+    private final IDatabase<ItemDatum> source;
+    private final Path directory;
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Exports once every {@code interval}, starting one interval from now; call {@link #exportNow()} for a snapshot
+     * right away.
+     *
+     * @param source    The item database to export.
+     * @param directory The snapshot directory.
+     * @param interval  The time between the start of one export and the next.
+     */
+    public ItemSnapshotExporter(IDatabase<ItemDatum> source, Path directory, Duration interval) {
+        this.source = source;
+        this.directory = directory;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "item-snapshot-exporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::exportQuietly, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes a snapshot now, on the calling thread.
+     *
+     * @return The directory of the new generation.
+     */
+    public synchronized Path exportNow() {
+        long started = System.nanoTime();
+        Path generation = ItemColumnSnapshot.write(directory, source.readAll());
+        LOGGER.info("EXPORTED ITEM SNAPSHOT " + generation.getFileName() + " IN "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) + " MS");
+        return generation;
+    }
+
+    /**
+     * Stops the schedule and waits for an export in progress to finish.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void exportQuietly() {
+        try {
+            exportNow();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Item snapshot export failed", e); // the next run tries again
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package data.databases;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts durations in log-scaled buckets, so recording is one striped increment and a percentile is within 12.5% of
+ * the true value at any scale. Durations under 16 ns get a bucket each; above that, every power of two is split into
+ * eight buckets.
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int LINEAR = 2 * SUB_BUCKETS; // values below this have a bucket each
+    private static final int LINEAR_BITS = 4; // log2(LINEAR)
+    static final int BUCKETS = LINEAR + (63 - LINEAR_BITS) * SUB_BUCKETS;
+
+    private final LongAdder[] counts = new LongAdder[BUCKETS];
+
+    LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    void record(long nanos) {
+        counts[bucketOf(Math.max(0, nanos))].increment();
+    }
+
+    /**
+     * @return The count of every bucket. Not atomic across buckets: durations recorded meanwhile may be partly in it.
+     */
+    long[] snapshot() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts[i].sum();
+        }
+        return copy;
+    }
+
+    static int bucketOf(long value) {
+        if (value < LINEAR) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR + (exponent - LINEAR_BITS) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @return The largest value that falls in {@code bucket}.
+     */
+    static long upperBound(int bucket) {
+        if (bucket < LINEAR) {
+            return bucket;
+        }
+        int exponent = (bucket - LINEAR) / SUB_BUCKETS + LINEAR_BITS;
+        long sub = (bucket - LINEAR) % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BITS);
+        return ((SUB_BUCKETS + sub) << (exponent - SUB_BITS)) + width - 1;
+    }
+
+    /**
+     * @param counts   A {@link #snapshot()}.
+     * @param quantile The quantile, in [0, 1]; 0.99 for the 99th percentile.
+     * @return The upper bound of the bucket holding that quantile, or 0 if nothing was recorded.
+     */
+    static long valueAt(long[] counts, double quantile) {
+        if (quantile < 0 || quantile > 1) {
+            throw new IllegalArgumentException("quantile must be in [0, 1]: " + quantile);
+        }
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(counts.length - 1);
+    }
+}
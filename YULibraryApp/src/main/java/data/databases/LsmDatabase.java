@@ -0,0 +1,637 @@
+package data.databases;
+
+import data.Record;
+import data.binary.datums.Datum;
+import data.parsers.binary.BinaryParser;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * A log-structured merge database for write-heavy tables. Every write is appended to a {@link WriteAheadLog} and put in
+ * an in-memory sorted memtable; nothing is written in place. A full memtable is frozen and written out by a background
+ * thread as an immutable {@link SortedSegment}, and once enough segments pile up the same thread merges them into one.
+ * Writes therefore cost one sequential log append (fsynced in group-commit batches) and the disk only ever sees
+ * sequential segment writes.
+ * <p>A read checks the memtable, then the frozen memtables and the segments, newest first, and stops at the first one
+ * that mentions the key. Each segment keeps its Bloom filter and block keys in memory, so a segment that does not
+ * hold the key costs no I/O, and one that does costs one block read.</p>
+ * <p>Files: {@code <path>} is the manifest, listing the live segments newest first; segments are
+ * {@code <path>.sst.<N>} and the log is {@code <path>.wal.<N>}. A segment only becomes part of the database when a new
+ * manifest naming it has been moved into place, so files left by a crash mid-flush or mid-compaction are deleted on
+ * the next open, and log entries are discarded only after the segment holding them is listed.</p>
+ * <p>Compaction merges every segment into one. Since the merge includes the oldest segment, deleted keys are dropped
+ * there for good.</p>
+ * <p>Writers serialize on the database monitor only long enough to append to the log and the memtable. Readers take no
+ * monitor; they share a lock that compaction takes exclusively just to close the segments it replaced.</p>
+ *
+ * @param <T> The Datum type stored in the database.
+ */
+public class LsmDatabase<T extends Datum> implements IDatabase<T> {
+
+    private static final Logger LOGGER = Logger.getLogger(LsmDatabase.class.getName());
+
+    public static final int DEFAULT_MEMTABLE_RECORDS = 16_384;
+
+    public static final int DEFAULT_COMPACTION_TRIGGER = 4;
+
+    private static final int MANIFEST_MAGIC = 0x4C534D4D; // "LSMM"
+    private static final int MAX_FROZEN_MEMTABLES = 2; // past this, writers flush themselves instead of waiting
+    private static final long MAINTENANCE_POLL_MILLIS = 50;
+
+    private final String path;
+    private final BinaryParser<T> binaryParser;
+    private final int recordSize;
+    private final int memtableRecords;
+    private final int compactionTrigger;
+    private final WriteAheadLog wal;
+    private final ReentrantLock maintenanceLock = new ReentrantLock(); // one flush or compaction at a time
+    private final ReentrantReadWriteLock segmentLock = new ReentrantReadWriteLock(); // readers vs. closing segments
+    private final BackgroundFlusher compactor;
+    private volatile State state;
+    private int memtableWrites; // guarded by this
+    private long nextSegment; // guarded by maintenanceLock
+
+    /**
+     * Opens or creates a database with the default memtable size and compaction trigger.
+     *
+     * @param path         The file system path of the manifest; segments and log segments are named after it.
+     * @param binaryParser The parser used to convert records to and from their binary form.
+     */
+    public LsmDatabase(String path, BinaryParser<T> binaryParser) {
+        this(path, binaryParser, DEFAULT_MEMTABLE_RECORDS, DEFAULT_COMPACTION_TRIGGER);
+    }
+
+    /**
+     * Opens or creates a database. Log entries left by an earlier run are replayed and written to a segment first.
+     *
+     * @param path              The file system path of the manifest; segments and log segments are named after it.
+     * @param binaryParser      The parser used to convert records to and from their binary form.
+     * @param memtableRecords   The number of writes the memtable takes before it is frozen and written out.
+     * @param compactionTrigger The number of segments that starts a compaction.
+     * @throws UncheckedIOException     If the files cannot be opened or read.
+     * @throws IllegalArgumentException If a limit is not positive, or the files hold records of another size.
+     */
+    public LsmDatabase(String path, BinaryParser<T> binaryParser, int memtableRecords, int compactionTrigger) {
+        if (memtableRecords <= 0 || compactionTrigger < 2) {
+            throw new IllegalArgumentException("memtableRecords must be positive and compactionTrigger at least 2: "
+                    + memtableRecords + ", " + compactionTrigger);
+        }
+        this.path = path;
+        this.binaryParser = binaryParser;
+        this.recordSize = binaryParser.getSize();
+        this.memtableRecords = memtableRecords;
+        this.compactionTrigger = compactionTrigger;
+        try {
+            List<SortedSegment> segments = openSegments();
+            state = new State(new ConcurrentSkipListMap<>(), List.of(), segments);
+            wal = new WriteAheadLog(path);
+            int replayed = wal.replay((key, payload) -> state.memtable.put(Integer.parseInt(key),
+                    payload == null ? SortedSegment.TOMBSTONE : payload));
+            if (replayed > 0) {
+                LOGGER.info("REPLAYED " + replayed + " LOG ENTRIES INTO " + path);
+                synchronized (this) {
+                    freeze();
+                }
+                flushFrozen();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open LSM database " + path, e);
+        }
+        this.compactor = new BackgroundFlusher("lsm-compactor-" + Paths.get(path).getFileName(),
+                MAINTENANCE_POLL_MILLIS, TimeUnit.MILLISECONDS, this::maintenanceDue, this::maintain);
+    }
+
+    @Override
+    public void add(Record<T> record) {
+        write(List.of(record), false);
+    }
+
+    /**
+     * Adds several records under one acquisition of the monitor; they share a single fsync of the log.
+     */
+    @Override
+    public void addAll(Collection<Record<T>> records) {
+        write(records, false);
+    }
+
+    @Override
+    public void update(String key, Record<T> record) {
+        add(record);
+    }
+
+    @Override
+    public void delete(String key) {
+        write(List.of(new Record<>(key, null)), true);
+    }
+
+    @Override
+    public Record<T> read(String key) {
+        segmentLock.readLock().lock();
+        try {
+            byte[] value = lookup(state, Integer.parseInt(key));
+            return value == null || value == SortedSegment.TOMBSTONE ? null : binaryParser.parseData(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read from " + path, e);
+        } finally {
+            segmentLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reads several records against one snapshot of the memtables and segments.
+     */
+    @Override
+    public Map<String, Record<T>> readMany(Collection<String> keys) {
+        Map<String, Record<T>> records = new LinkedHashMap<>();
+        segmentLock.readLock().lock();
+        try {
+            State current = state;
+            for (String key : keys) {
+                byte[] value = lookup(current, Integer.parseInt(key));
+                if (value != null && value != SortedSegment.TOMBSTONE) {
+                    records.put(key, binaryParser.parseData(value));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read from " + path, e);
+        } finally {
+            segmentLock.readLock().unlock();
+        }
+        return records;
+    }
+
+    /**
+     * @return Every record, in key order.
+     */
+    @Override
+    public List<Record<T>> readAll() {
+        TreeMap<Integer, byte[]> merged = new TreeMap<>();
+        segmentLock.readLock().lock();
+        try {
+            State current = state;
+            // Oldest first, so newer values overwrite older ones
+            for (int i = current.segments.size() - 1; i >= 0; i--) {
+                SortedSegment.Cursor cursor = current.segments.get(i).cursor();
+                while (cursor.advance()) {
+                    merged.put(cursor.key(), cursor.value());
+                }
+            }
+            for (int i = current.frozen.size() - 1; i >= 0; i--) {
+                merged.putAll(current.frozen.get(i).memtable);
+            }
+            merged.putAll(current.memtable);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read from " + path, e);
+        } finally {
+            segmentLock.readLock().unlock();
+        }
+        List<Record<T>> records = new ArrayList<>(merged.size());
+        for (byte[] value : merged.values()) {
+            if (value != SortedSegment.TOMBSTONE) {
+                records.add(binaryParser.parseData(value));
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Writes the memtable out as a segment, so every change so far is in a segment and the log is empty.
+     */
+    public void flush() {
+        synchronized (this) {
+            if (!state.memtable.isEmpty()) {
+                freeze();
+            }
+        }
+        try {
+            flushFrozen();
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to flush " + path, e);
+        }
+    }
+
+    /**
+     * Merges every segment into one now, whatever the compaction trigger.
+     */
+    public void compact() {
+        try {
+            compactSegments(2);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to compact " + path, e);
+        }
+    }
+
+    /**
+     * Stops the background thread, writes the memtable out and closes every file.
+     */
+    public void close() {
+        compactor.stop();
+        flush();
+        maintenanceLock.lock();
+        segmentLock.writeLock().lock();
+        try {
+            wal.close();
+            for (SortedSegment segment : state.segments) {
+                segment.close();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to close " + path, e);
+        } finally {
+            segmentLock.writeLock().unlock();
+            maintenanceLock.unlock();
+        }
+    }
+
+    /**
+     * @return The number of segment files the database is made of.
+     */
+    public int getSegmentCount() {
+        return state.segments.size();
+    }
+
+    /**
+     * Appends changes to the log and the memtable, freezing the memtable once it is full, then waits for the log to
+     * be durable. A delete is a record with a {@code null} entry.
+     */
+    private void write(Collection<Record<T>> records, boolean delete) {
+        long lsn = 0;
+        boolean backlog;
+        try {
+            synchronized (this) {
+                for (Record<T> record : records) {
+                    byte[] data = delete ? null : binaryParser.getData(record);
+                    lsn = wal.append(delete ? WriteAheadLog.DELETE : WriteAheadLog.PUT, record.getKey(), data);
+                    state.memtable.put(Integer.parseInt(record.getKey()), delete ? SortedSegment.TOMBSTONE : data);
+                    memtableWrites++;
+                }
+                if (memtableWrites >= memtableRecords) {
+                    freeze();
+                }
+                backlog = state.frozen.size() > MAX_FROZEN_MEMTABLES;
+            }
+            binaryParser.sync(); // the codes these records hold must outlive them
+            wal.sync(lsn);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write to " + path, e);
+        }
+        if (backlog) {
+            // The background thread is falling behind; slow this writer down by having it flush too
+            try {
+                flushFrozen();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to flush " + path, e);
+            }
+        }
+    }
+
+    /**
+     * Seals the log segment covering the memtable and swaps in an empty memtable. Must hold the monitor.
+     */
+    private void freeze() {
+        long sealed;
+        try {
+            sealed = wal.roll();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to roll the log of " + path, e);
+        }
+        State current = state;
+        List<Frozen> frozen = new ArrayList<>(current.frozen.size() + 1);
+        frozen.add(new Frozen(current.memtable, sealed));
+        frozen.addAll(current.frozen);
+        state = new State(new ConcurrentSkipListMap<>(), frozen, current.segments);
+        memtableWrites = 0;
+        if (compactor != null) {
+            compactor.nudge();
+        }
+    }
+
+    private boolean maintenanceDue() {
+        State current = state;
+        return !current.frozen.isEmpty() || current.segments.size() >= compactionTrigger;
+    }
+
+    private void maintain() {
+        try {
+            flushFrozen();
+            compactSegments(compactionTrigger);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Background maintenance of " + path + " failed", e);
+        }
+    }
+
+    /**
+     * Writes every frozen memtable to its own segment, oldest first, discarding each one's log segments once the
+     * manifest lists its segment.
+     */
+    private void flushFrozen() throws IOException {
+        maintenanceLock.lock();
+        try {
+            while (true) {
+                List<Frozen> frozen = state.frozen;
+                if (frozen.isEmpty()) {
+                    return;
+                }
+                Frozen oldest = frozen.get(frozen.size() - 1);
+                SortedSegment segment = SortedSegment.write(segmentPath(nextSegment++), recordSize,
+                        oldest.memtable.size(), oldest.memtable.entrySet().iterator());
+                List<SortedSegment> segments = new ArrayList<>(state.segments.size() + 1);
+                segments.add(segment);
+                segments.addAll(state.segments); // segments only change under maintenanceLock
+                writeManifest(segments);
+                synchronized (this) {
+                    State current = state;
+                    state = new State(current.memtable, current.frozen.subList(0, current.frozen.size() - 1), segments);
+                }
+                wal.discardThrough(oldest.sealedLogSegment);
+            }
+        } finally {
+            maintenanceLock.unlock();
+        }
+    }
+
+    /**
+     * Merges every segment into one if there are at least {@code trigger} of them.
+     */
+    private void compactSegments(int trigger) throws IOException {
+        maintenanceLock.lock();
+        try {
+            List<SortedSegment> inputs = state.segments;
+            if (inputs.size() < trigger) {
+                return;
+            }
+            long started = System.nanoTime();
+            int expectedKeys = 0;
+            for (SortedSegment input : inputs) {
+                expectedKeys += input.size();
+            }
+            SortedSegment merged = SortedSegment.write(segmentPath(nextSegment++), recordSize, expectedKeys,
+                    new MergeIterator(inputs));
+            writeManifest(List.of(merged));
+            synchronized (this) {
+                State current = state; // only the memtables can have changed, segments move under maintenanceLock
+                state = new State(current.memtable, current.frozen, List.of(merged));
+            }
+
+            segmentLock.writeLock().lock(); // wait for readers still in the old segments
+            try {
+                for (SortedSegment input : inputs) {
+                    input.close();
+                }
+            } finally {
+                segmentLock.writeLock().unlock();
+            }
+            for (SortedSegment input : inputs) {
+                Files.deleteIfExists(input.getFile());
+            }
+            LOGGER.info("COMPACTED " + inputs.size() + " SEGMENTS INTO " + merged.size() + " RECORDS IN "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) + " MS");
+        } finally {
+            maintenanceLock.unlock();
+        }
+    }
+
+    /**
+     * @return The newest value for {@code key}: record bytes, a tombstone, or {@code null} if nothing mentions it.
+     */
+    private static byte[] lookup(State current, int key) throws IOException {
+        byte[] value = current.memtable.get(key);
+        if (value != null) {
+            return value;
+        }
+        for (Frozen frozen : current.frozen) {
+            value = frozen.memtable.get(key);
+            if (value != null) {
+                return value;
+            }
+        }
+        for (SortedSegment segment : current.segments) {
+            value = segment.get(key);
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads the manifest and opens the segments it lists, deleting any segment file it does not list. A missing
+     * manifest starts an empty database.
+     */
+    private List<SortedSegment> openSegments() throws IOException {
+        Path manifest = Paths.get(path);
+        List<SortedSegment> segments = new ArrayList<>();
+        Set<String> listed = new HashSet<>();
+        if (Files.exists(manifest)) {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(manifest));
+            if (buffer.remaining() < Integer.BYTES + Long.BYTES + Integer.BYTES || buffer.getInt() != MANIFEST_MAGIC) {
+                throw new IllegalArgumentException(path + " is not an LSM manifest");
+            }
+            nextSegment = buffer.getLong();
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                Path file = segmentPath(buffer.getLong());
+                segments.add(SortedSegment.open(file, recordSize));
+                listed.add(file.getFileName().toString());
+            }
+        }
+        Path directory = manifest.toAbsolutePath().getParent();
+        String prefix = manifest.getFileName() + ".sst.";
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, prefix + "*")) {
+            for (Path file : stream) {
+                if (!listed.contains(file.getFileName().toString())) {
+                    LOGGER.warning("DELETING UNLISTED SEGMENT " + file);
+                    Files.delete(file);
+                }
+            }
+        }
+        if (!Files.exists(manifest)) {
+            writeManifest(segments);
+        }
+        return segments;
+    }
+
+    /**
+     * Replaces the manifest with one listing {@code segments}, newest first, and forces it and the directory entries of
+     * the segments it names to disk, so log entries can be discarded as soon as this returns. Must hold the maintenance
+     * lock, or be opening.
+     */
+    private void writeManifest(List<SortedSegment> segments) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + Long.BYTES + Integer.BYTES + segments.size() * Long.BYTES);
+        buffer.putInt(MANIFEST_MAGIC).putLong(nextSegment).putInt(segments.size());
+        for (SortedSegment segment : segments) {
+            String name = segment.getFile().getFileName().toString();
+            buffer.putLong(Long.parseLong(name.substring(name.lastIndexOf('.') + 1)));
+        }
+        Path target = Paths.get(path);
+        Path temporary = Paths.get(path + ".manifest");
+        try (FileChannel channel = FileChannel.open(temporary, WRITE, CREATE, TRUNCATE_EXISTING)) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, target, REPLACE_EXISTING, ATOMIC_MOVE);
+        forceDirectory(target.toAbsolutePath().getParent()); // the rename and any new segment's entry
+    }
+
+    /**
+     * Forces a directory's entries to disk, so files created or renamed in it survive a crash. Some platforms cannot
+     * open a directory as a channel; there the rename is as durable as the file system makes it.
+     */
+    private static void forceDirectory(Path directory) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(directory, READ);
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Cannot open " + directory + " to force it", e);
+            return;
+        }
+        try (channel) {
+            channel.force(true);
+        }
+    }
+
+    private Path segmentPath(long number) {
+        return Paths.get(path + ".sst." + number);
+    }
+
+    /**
+     * What readers see: the live memtable, the frozen ones waiting to be written, and the segments, newest first.
+     * Never changed after it is published; writers publish a new one.
+     */
+    private static final class State {
+        final ConcurrentSkipListMap<Integer, byte[]> memtable;
+        final List<Frozen> frozen;
+        final List<SortedSegment> segments;
+
+        State(ConcurrentSkipListMap<Integer, byte[]> memtable, List<Frozen> frozen, List<SortedSegment> segments) {
+            this.memtable = memtable;
+            this.frozen = Collections.unmodifiableList(frozen);
+            this.segments = Collections.unmodifiableList(segments);
+        }
+    }
+
+    /**
+     * A memtable that takes no more writes, with the last log segment holding its entries.
+     */
+    private static final class Frozen {
+        final ConcurrentSkipListMap<Integer, byte[]> memtable;
+        final long sealedLogSegment;
+
+        Frozen(ConcurrentSkipListMap<Integer, byte[]> memtable, long sealedLogSegment) {
+            this.memtable = memtable;
+            this.sealedLogSegment = sealedLogSegment;
+        }
+    }
+
+    /**
+     * Merges segments given newest first into one ascending stream of live entries: for a key in several segments
+     * the newest value wins, and tombstones are dropped.
+     */
+    private static final class MergeIterator implements Iterator<Map.Entry<Integer, byte[]>> {
+        private final PriorityQueue<Head> heads = new PriorityQueue<>();
+        private Map.Entry<Integer, byte[]> next;
+
+        MergeIterator(List<SortedSegment> newestFirst) throws IOException {
+            for (int age = 0; age < newestFirst.size(); age++) {
+                Head head = new Head(newestFirst.get(age).cursor(), age);
+                if (head.cursor.advance()) {
+                    heads.add(head);
+                }
+            }
+            next = fetch();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<Integer, byte[]> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<Integer, byte[]> current = next;
+            next = fetch();
+            return current;
+        }
+
+        private Map.Entry<Integer, byte[]> fetch() {
+            try {
+                while (!heads.isEmpty()) {
+                    Head newest = heads.poll();
+                    int key = newest.cursor.key();
+                    byte[] value = newest.cursor.value();
+                    advance(newest);
+                    // Older copies of the same key come out right after, since ties are broken by age
+                    while (!heads.isEmpty() && heads.peek().cursor.key() == key) {
+                        advance(heads.poll());
+                    }
+                    if (value != SortedSegment.TOMBSTONE) {
+                        return new AbstractMap.SimpleImmutableEntry<>(key, value);
+                    }
+                }
+                return null;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read segment during compaction", e);
+            }
+        }
+
+        private void advance(Head head) throws IOException {
+            if (head.cursor.advance()) {
+                heads.add(head);
+            }
+        }
+
+        private static final class Head implements Comparable<Head> {
+            final SortedSegment.Cursor cursor;
+            final int age;
+
+            Head(SortedSegment.Cursor cursor, int age) {
+                this.cursor = cursor;
+                this.age = age;
+            }
+
+            @Override
+            public int compareTo(Head other) {
+                int byKey = Integer.compare(cursor.key(), other.cursor.key());
+                return byKey != 0 ? byKey : Integer.compare(age, other.age);
+            }
+        }
+    }
+}
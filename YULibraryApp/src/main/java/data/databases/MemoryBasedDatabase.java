@@ -4,8 +4,11 @@ import data.Record;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -63,6 +66,27 @@ public class MemoryBasedDatabase<T extends Serializable> implements IDatabase<T>
         return new ArrayList<>(records);
     }
 
+    /**
+     * Reads the records whose keys match exactly, looking each one up in the skip list directly.
+     */
+    @Override
+    public Map<String, Record<T>> readMany(Collection<String> keys) {
+        Map<String, Record<T>> found = new LinkedHashMap<>();
+        for (String key : keys) {
+            Record<T> searchRecord = new Record<>(key, null);
+            Record<T> match = records.ceiling(searchRecord);
+            if (match != null && comparator.compare(match, searchRecord) == 0) {
+                found.put(key, match);
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public void addAll(Collection<Record<T>> newRecords) {
+        records.addAll(newRecords);
+    }
+
     public List<Record<T>> search(String key) {
         List<Record<T>> closestMatches = new ArrayList<>();
         Record<T> searchRecord = new Record<>(key, null);
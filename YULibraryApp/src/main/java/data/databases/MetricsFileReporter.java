@@ -0,0 +1,84 @@
+package data.databases;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+
+/**
+ * Appends a {@link DatabaseMetrics} snapshot to a local file on a fixed schedule, from a daemon thread: one line per
+ * snapshot, the time first, so the file can be loaded as a time series when tuning table sizes and flush policies.
+ */
+public class MetricsFileReporter implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(MetricsFileReporter.class.getName());
+
+    private final Supplier<DatabaseMetrics> metrics;
+    private final Path file;
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Reports once every {@code interval}, starting one interval from now.
+     *
+     * @param metrics  Where snapshots come from, e.g. {@code db::getMetrics}.
+     * @param file     The file to append to; created if missing.
+     * @param interval The time between two snapshots.
+     */
+    public MetricsFileReporter(Supplier<DatabaseMetrics> metrics, Path file, Duration interval) {
+        this.metrics = metrics;
+        this.file = file;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-reporter-" + file.getFileName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::reportQuietly, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Appends a snapshot now, on the calling thread.
+     *
+     * @throws UncheckedIOException If the file cannot be written.
+     */
+    public synchronized void reportNow() {
+        String line = Instant.now() + " " + metrics.get() + System.lineSeparator();
+        try {
+            Files.writeString(file, line, StandardCharsets.UTF_8, CREATE, APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Stops the schedule and waits for a report in progress to finish.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void reportQuietly() {
+        try {
+            reportNow();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Failed to write metrics to " + file, e); // the next run tries again
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package data.databases;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * A set of row numbers of an {@link ItemColumnSnapshot}, kept as a bitmap with one bit per row so filters combine
+ * with a word-wise AND and count with a popcount.
+ */
+public final class RowSelection {
+
+    private final long[] words;
+    private final int rowCount;
+
+    RowSelection(long[] words, int rowCount) {
+        this.words = words;
+        this.rowCount = rowCount;
+    }
+
+    static RowSelection all(int rowCount) {
+        long[] words = new long[wordsFor(rowCount)];
+        Arrays.fill(words, -1L);
+        if (rowCount % 64 != 0) {
+            words[words.length - 1] = (1L << rowCount) - 1; // no bits past the last row
+        }
+        return new RowSelection(words, rowCount);
+    }
+
+    static int wordsFor(int rowCount) {
+        return (rowCount + 63) >>> 6;
+    }
+
+    /**
+     * @return The rows in both selections.
+     * @throws IllegalArgumentException If the selections come from snapshots of different sizes.
+     */
+    public RowSelection and(RowSelection other) {
+        if (other.rowCount != rowCount) {
+            throw new IllegalArgumentException("Selections over " + rowCount + " and " + other.rowCount + " rows");
+        }
+        long[] result = new long[words.length];
+        for (int i = 0; i < words.length; i++) {
+            result[i] = words[i] & other.words[i];
+        }
+        return new RowSelection(result, rowCount);
+    }
+
+    /**
+     * @return The rows of the snapshot that are not in this selection.
+     */
+    public RowSelection not() {
+        long[] result = all(rowCount).words;
+        for (int i = 0; i < words.length; i++) {
+            result[i] &= ~words[i];
+        }
+        return new RowSelection(result, rowCount);
+    }
+
+    /**
+     * @return The number of selected rows.
+     */
+    public int count() {
+        int count = 0;
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    public boolean contains(int row) {
+        return (words[row >>> 6] & (1L << row)) != 0;
+    }
+
+    /**
+     * Calls {@code action} with every selected row, in ascending order.
+     */
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < words.length; i++) {
+            long word = words[i];
+            while (word != 0) {
+                action.accept((i << 6) + Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+    }
+
+    /**
+     * @return The selected rows, in ascending order.
+     */
+    public int[] rows() {
+        int[] rows = new int[count()];
+        int[] next = new int[1];
+        forEach(row -> rows[next[0]++] = row);
+        return rows;
+    }
+}
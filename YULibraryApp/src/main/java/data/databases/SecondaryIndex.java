@@ -0,0 +1,295 @@
+package data.databases;
+
+import data.binary.datums.Datum;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Objects;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * A persistent secondary index: an open-addressed multimap from the hash of an indexed value to the primary keys
+ * carrying it, kept in its own memory-mapped file. Entries are {@code [long valueHash][int key][byte state]}, padded
+ * to 16 bytes; slot 0 holds the header.
+ * <p>Only the value hash is stored, so a lookup returns candidate keys that the database checks against the current
+ * records. That also covers the few keys whose entry is mid-update during a flush, because those records are still
+ * in the change buffer the lookup scans as well.</p>
+ * <p>There is one writer at a time (the thread holding the database monitor) and any number of lock-free readers.
+ * A removed entry leaves a tombstone so chains through it stay intact; growing writes a new file and publishes its
+ * mapping with a single volatile write.</p>
+ * <p>The header magic says whether the file was closed cleanly. It is cleared as soon as the index is opened, so a
+ * crash leaves a file that is rebuilt from the table on the next open.</p>
+ *
+ * @param <T> The Datum type of the indexed database.
+ */
+final class SecondaryIndex<T extends Datum> {
+
+    private static final int ENTRY_SIZE = 16;
+    private static final int STATE_OFFSET = 12;
+    private static final byte FREE = 0;
+    private static final byte LIVE = 1;
+    private static final byte REMOVED = 2;
+    private static final int MAGIC_CLEAN = 0x53495831; // "SIX1"
+    private static final int MAGIC_DIRTY = 0x53495830; // "SIX0"
+    private static final int MIN_CAPACITY = 1024;
+    private static final VarHandle INT_VIEW = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle LONG_VIEW = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private final IndexDefinition<T> definition;
+    private final Path file;
+    private final int regionBytes;
+    private volatile Mapping mapping;
+    private int used; // live entries plus tombstones, writer only
+    private int live; // writer only
+
+    /**
+     * @param definition  What the index maps.
+     * @param file        The index file.
+     * @param regionBytes The largest single mapping; see {@link HashDatabaseOptions#getMappingRegionSize()}.
+     */
+    SecondaryIndex(IndexDefinition<T> definition, Path file, int regionBytes) {
+        this.definition = definition;
+        this.file = file;
+        this.regionBytes = Math.max(ENTRY_SIZE, regionBytes - regionBytes % ENTRY_SIZE);
+    }
+
+    /**
+     * Maps the index file if it was closed cleanly, and marks it dirty until the next {@link #close()}.
+     *
+     * @return {@code false} if there is no usable file; the index must then be {@link #create created} and filled.
+     */
+    boolean load() throws IOException {
+        if (!Files.exists(file) || Files.size(file) < ENTRY_SIZE) {
+            return false;
+        }
+        byte[] header = new byte[ENTRY_SIZE];
+        try (FileChannel channel = FileChannel.open(file, READ, WRITE)) {
+            ChunkedMapping headerOnly = new ChunkedMapping(channel, 1, ENTRY_SIZE, ENTRY_SIZE);
+            headerOnly.get(0, header);
+            int capacity = (int) INT_VIEW.get(header, 4);
+            if ((int) INT_VIEW.get(header, 0) != MAGIC_CLEAN || Integer.bitCount(capacity) != 1
+                    || channel.size() != (long) (capacity + 1) * ENTRY_SIZE) {
+                return false;
+            }
+            mapping = new Mapping(new ChunkedMapping(channel, capacity + 1, ENTRY_SIZE, regionBytes), capacity);
+        }
+        used = (int) INT_VIEW.get(header, 8);
+        live = (int) INT_VIEW.get(header, 12);
+        writeHeader(MAGIC_DIRTY);
+        return true;
+    }
+
+    /**
+     * Replaces the index file with an empty one sized for {@code expectedKeys}, marked dirty. Writer only.
+     */
+    void create(int expectedKeys) throws IOException {
+        mapping = createMapping(file, capacityFor(expectedKeys));
+        used = 0;
+        live = 0;
+        writeHeader(MAGIC_DIRTY);
+    }
+
+    /**
+     * Moves {@code key} from the entry for its old value to the entry for its new one. Writer only.
+     *
+     * @param before The entry previously stored under the key, or {@code null}.
+     * @param after  The entry now stored under the key, or {@code null} for a delete.
+     */
+    void update(int key, T before, T after) throws IOException {
+        String oldValue = before == null ? null : definition.valueOf(before);
+        String newValue = after == null ? null : definition.valueOf(after);
+        if (Objects.equals(oldValue, newValue)) {
+            return;
+        }
+        if (oldValue != null) {
+            remove(hash(oldValue), key);
+        }
+        if (newValue != null) {
+            add(hash(newValue), key);
+        }
+    }
+
+    /**
+     * @return The primary keys that may carry {@code value}. The caller checks each against its record.
+     */
+    int[] candidates(String value) {
+        long valueHash = hash(value);
+        Mapping current = mapping;
+        byte[] entry = new byte[ENTRY_SIZE];
+        int[] keys = new int[4];
+        int found = 0;
+        int mask = current.capacity - 1;
+        for (int i = 0, position = home(valueHash, mask); i < current.capacity; i++, position = (position + 1) & mask) {
+            current.storage.get(position + 1, entry);
+            byte state = entry[STATE_OFFSET];
+            if (state == FREE) {
+                break;
+            }
+            if (state == LIVE && (long) LONG_VIEW.get(entry, 0) == valueHash) {
+                if (found == keys.length) {
+                    keys = Arrays.copyOf(keys, found * 2);
+                }
+                keys[found++] = (int) INT_VIEW.get(entry, 8);
+            }
+        }
+        return Arrays.copyOf(keys, found);
+    }
+
+    IndexDefinition<T> getDefinition() {
+        return definition;
+    }
+
+    /**
+     * Forces the entries to disk and marks the file clean. Writer only; the index must not be used afterwards.
+     */
+    void close() {
+        writeHeader(MAGIC_CLEAN);
+    }
+
+    private void add(long valueHash, int key) throws IOException {
+        if (used + 1 > mapping.capacity / 2) {
+            grow();
+        }
+        Mapping current = mapping;
+        byte[] entry = new byte[ENTRY_SIZE];
+        int mask = current.capacity - 1;
+        int reusable = -1;
+        for (int position = home(valueHash, mask); ; position = (position + 1) & mask) {
+            current.storage.get(position + 1, entry);
+            byte state = entry[STATE_OFFSET];
+            if (state == LIVE && (long) LONG_VIEW.get(entry, 0) == valueHash && (int) INT_VIEW.get(entry, 8) == key) {
+                return;
+            }
+            if (state == REMOVED && reusable < 0) {
+                reusable = position;
+            }
+            if (state == FREE) {
+                if (reusable < 0) {
+                    reusable = position;
+                    used++;
+                }
+                current.storage.put(reusable + 1, entry(valueHash, key, LIVE));
+                live++;
+                return;
+            }
+        }
+    }
+
+    private void remove(long valueHash, int key) {
+        Mapping current = mapping;
+        byte[] entry = new byte[ENTRY_SIZE];
+        int mask = current.capacity - 1;
+        for (int position = home(valueHash, mask); ; position = (position + 1) & mask) {
+            current.storage.get(position + 1, entry);
+            byte state = entry[STATE_OFFSET];
+            if (state == FREE) {
+                return;
+            }
+            if (state == LIVE && (long) LONG_VIEW.get(entry, 0) == valueHash && (int) INT_VIEW.get(entry, 8) == key) {
+                current.storage.put(position + 1, entry(valueHash, key, REMOVED));
+                live--;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Copies the live entries into a file sized for twice as many, then swaps it in. Tombstones are not carried over.
+     */
+    private void grow() throws IOException {
+        Mapping old = mapping;
+        Path grown = Paths.get(file + ".grow");
+        Mapping next = createMapping(grown, capacityFor(live + 1));
+        byte[] entry = new byte[ENTRY_SIZE];
+        int mask = next.capacity - 1;
+        for (int slot = 1; slot <= old.capacity; slot++) {
+            old.storage.get(slot, entry);
+            if (entry[STATE_OFFSET] == LIVE) {
+                int position = home((long) LONG_VIEW.get(entry, 0), mask);
+                while (next.storage.getByte(position + 1, STATE_OFFSET) != FREE) {
+                    position = (position + 1) & mask;
+                }
+                next.storage.put(position + 1, entry);
+            }
+        }
+        used = live;
+        mapping = next;
+        writeHeader(MAGIC_DIRTY);
+        Files.move(grown, file, REPLACE_EXISTING, ATOMIC_MOVE);
+    }
+
+    private Mapping createMapping(Path target, int capacity) throws IOException {
+        try (FileChannel channel = FileChannel.open(target, READ, WRITE, CREATE, TRUNCATE_EXISTING)) {
+            return new Mapping(new ChunkedMapping(channel, capacity + 1, ENTRY_SIZE, regionBytes), capacity);
+        }
+    }
+
+    private void writeHeader(int magic) {
+        byte[] header = new byte[ENTRY_SIZE];
+        INT_VIEW.set(header, 0, magic);
+        INT_VIEW.set(header, 4, mapping.capacity);
+        INT_VIEW.set(header, 8, used);
+        INT_VIEW.set(header, 12, live);
+        if (magic == MAGIC_CLEAN) {
+            mapping.storage.force(); // entries first, so a clean header never describes entries still in flight
+        }
+        mapping.storage.put(0, header);
+        mapping.storage.force();
+    }
+
+    private static byte[] entry(long valueHash, int key, byte state) {
+        byte[] entry = new byte[ENTRY_SIZE];
+        LONG_VIEW.set(entry, 0, valueHash);
+        INT_VIEW.set(entry, 8, key);
+        entry[STATE_OFFSET] = state;
+        return entry;
+    }
+
+    private static int capacityFor(int keys) {
+        // Keep at most half the entries in use, so chains stay short even with a few tombstones
+        return Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(1, keys) * 4 - 1));
+    }
+
+    private static int home(long valueHash, int mask) {
+        return (int) (valueHash ^ (valueHash >>> 32)) & mask;
+    }
+
+    /**
+     * 64-bit FNV-1a over the value's UTF-8 bytes, finished with a MurmurHash3 mix so nearby values spread out.
+     */
+    private static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static final class Mapping {
+        final ChunkedMapping storage;
+        final int capacity; // entry slots, excluding the header
+
+        Mapping(ChunkedMapping storage, int capacity) {
+            this.storage = storage;
+            this.capacity = capacity;
+        }
+    }
+}
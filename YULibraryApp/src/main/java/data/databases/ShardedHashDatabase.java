@@ -0,0 +1,251 @@
+package data.databases;
+
+import data.Record;
+import data.binary.datums.Datum;
+import data.parsers.binary.BinaryParser;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * A database that splits its keys across several memory-mapped shard files, each one a {@link HashBasedDatabase}.
+ * Every shard has its own monitor, change buffer and mapping, so writes to different shards run in parallel.
+ * Shard files are named {@code <path>.shard<N>}. The shard count is kept in a small manifest, {@code <path>.shards},
+ * since reopening with another count would send keys to shards that do not hold them.
+ *
+ * @param <T> The Datum type stored in the shards.
+ */
+public class ShardedHashDatabase<T extends Datum> implements IIndexedDatabase<T> {
+
+    private static final int MANIFEST_MAGIC = 0x53484431; // "SHD1"
+
+    private final List<HashBasedDatabase<T>> shards;
+
+    /**
+     * Constructs a sharded database, creating or opening one file per shard.
+     *
+     * @param path         The base path of the shard files.
+     * @param shardCount   The number of shards the keys are split across.
+     * @param maxRecords   The initial number of slots across all shards.
+     * @param binaryParser The parser used to convert records to and from their binary form.
+     * @throws IllegalArgumentException If the shard count is not positive, or the files were written with another.
+     */
+    public ShardedHashDatabase(String path, int shardCount, int maxRecords, BinaryParser<T> binaryParser) {
+        this(path, shardCount, maxRecords, binaryParser, new HashDatabaseOptions());
+    }
+
+    /**
+     * Constructs a sharded database whose shards all use the given tuning options.
+     *
+     * @param path         The base path of the shard files.
+     * @param shardCount   The number of shards the keys are split across.
+     * @param maxRecords   The initial number of slots across all shards.
+     * @param binaryParser The parser used to convert records to and from their binary form.
+     * @param options      The tuning options applied to every shard.
+     * @throws IllegalArgumentException If the shard count is not positive, or the files were written with another.
+     */
+    public ShardedHashDatabase(String path, int shardCount, int maxRecords, BinaryParser<T> binaryParser,
+                               HashDatabaseOptions options) {
+        this(path, shardCount, maxRecords, binaryParser, options, List.of());
+    }
+
+    /**
+     * Constructs a sharded database whose shards each maintain the given secondary indexes over their own keys.
+     *
+     * @param path         The base path of the shard files.
+     * @param shardCount   The number of shards the keys are split across.
+     * @param maxRecords   The initial number of slots across all shards.
+     * @param binaryParser The parser used to convert records to and from their binary form.
+     * @param options      The tuning options applied to every shard.
+     * @param indexes      The secondary indexes every shard maintains.
+     * @throws IllegalArgumentException If the shard count is not positive, or the files were written with another.
+     * @throws UncheckedIOException     If the manifest cannot be read or written.
+     */
+    public ShardedHashDatabase(String path, int shardCount, int maxRecords, BinaryParser<T> binaryParser,
+                               HashDatabaseOptions options, List<IndexDefinition<T>> indexes) {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("shardCount must be positive: " + shardCount);
+        }
+        Path manifest = Path.of(path + ".shards");
+        int writtenCount = readShardCount(path, manifest);
+        if (writtenCount > 0 && writtenCount != shardCount) {
+            throw new IllegalArgumentException(path + " was written with " + writtenCount + " shards, not " + shardCount);
+        }
+        // Prime like every table the shards grow into, so keys do not cluster on a common factor of the slot count
+        int slotsPerShard = HashBasedDatabase.nextPrime((maxRecords + shardCount - 1) / shardCount);
+        List<HashBasedDatabase<T>> opened = new ArrayList<>(shardCount);
+        try {
+            for (int i = 0; i < shardCount; i++) {
+                opened.add(new HashBasedDatabase<>(path + ".shard" + i, slotsPerShard, binaryParser, options, indexes));
+            }
+            if (!Files.exists(manifest)) {
+                writeShardCount(manifest, shardCount);
+            }
+        } catch (RuntimeException e) {
+            for (HashBasedDatabase<T> shard : opened) {
+                try {
+                    shard.close();
+                } catch (RuntimeException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            throw e;
+        }
+        this.shards = List.copyOf(opened);
+    }
+
+    @Override
+    public void add(Record<T> record) {
+        shardFor(record.getKey()).add(record);
+    }
+
+    @Override
+    public Record<T> read(String key) {
+        return shardFor(key).read(key);
+    }
+
+    @Override
+    public void update(String key, Record<T> record) {
+        shardFor(key).update(key, record);
+    }
+
+    @Override
+    public void delete(String key) {
+        shardFor(key).delete(key);
+    }
+
+    @Override
+    public List<Record<T>> readAll() {
+        List<Record<T>> records = new ArrayList<>();
+        for (HashBasedDatabase<T> shard : shards) {
+            records.addAll(shard.readAll());
+        }
+        return records;
+    }
+
+    /**
+     * Streams every record of every shard; see {@link HashBasedDatabase#stream()}.
+     */
+    public Stream<Record<T>> stream() {
+        return shards.stream().flatMap(HashBasedDatabase::stream);
+    }
+
+    /**
+     * Reads several records, handing each shard its own keys as one batch.
+     */
+    @Override
+    public Map<String, Record<T>> readMany(Collection<String> keys) {
+        Map<HashBasedDatabase<T>, List<String>> byShard = new LinkedHashMap<>();
+        for (String key : keys) {
+            byShard.computeIfAbsent(shardFor(key), shard -> new ArrayList<>()).add(key);
+        }
+        Map<String, Record<T>> found = new HashMap<>();
+        byShard.forEach((shard, shardKeys) -> found.putAll(shard.readMany(shardKeys)));
+
+        Map<String, Record<T>> ordered = new LinkedHashMap<>();
+        for (String key : keys) {
+            Record<T> record = found.get(key);
+            if (record != null) {
+                ordered.put(key, record);
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * Adds several records, handing each shard its own records as one batch.
+     */
+    @Override
+    public void addAll(Collection<Record<T>> records) {
+        Map<HashBasedDatabase<T>, List<Record<T>>> byShard = new LinkedHashMap<>();
+        for (Record<T> record : records) {
+            byShard.computeIfAbsent(shardFor(record.getKey()), shard -> new ArrayList<>()).add(record);
+        }
+        byShard.forEach(HashBasedDatabase::addAll);
+    }
+
+    /**
+     * Finds records through a secondary index. An indexed value can belong to keys on any shard, so every shard's
+     * index is asked.
+     */
+    @Override
+    public List<Record<T>> findBy(String indexName, String value) {
+        List<Record<T>> matches = new ArrayList<>();
+        for (HashBasedDatabase<T> shard : shards) {
+            matches.addAll(shard.findBy(indexName, value));
+        }
+        return matches;
+    }
+
+    /**
+     * Flushes every shard's pending changes to its file. The shards are flushed in parallel.
+     */
+    public void flush() {
+        shards.parallelStream().forEach(HashBasedDatabase::flush);
+    }
+
+    public void close() {
+        for (HashBasedDatabase<T> shard : shards) {
+            shard.close();
+        }
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    /**
+     * Picks the shard for a key. The hash is mixed first so that the shard choice does not correlate with the slot
+     * index each shard derives from the raw hash code.
+     *
+     * @param key The record key.
+     * @return The shard owning the key.
+     */
+    HashBasedDatabase<T> shardFor(String key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        h ^= h >>> 16;
+        return shards.get(Math.floorMod(h, shards.size()));
+    }
+
+    /**
+     * @return The shard count the files at {@code path} were written with, or 0 if there are none yet. Sets written
+     * before the manifest existed are counted by their shard files.
+     */
+    private static int readShardCount(String path, Path manifest) {
+        try {
+            if (Files.exists(manifest)) {
+                ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(manifest));
+                if (buffer.remaining() < 2 * Integer.BYTES || buffer.getInt() != MANIFEST_MAGIC) {
+                    throw new IllegalArgumentException(manifest + " is not a shard manifest");
+                }
+                return buffer.getInt();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read shard manifest " + manifest, e);
+        }
+        int existing = 0;
+        while (Files.exists(Path.of(path + ".shard" + existing))) {
+            existing++;
+        }
+        return existing;
+    }
+
+    private static void writeShardCount(Path manifest, int shardCount) {
+        ByteBuffer buffer = ByteBuffer.allocate(2 * Integer.BYTES).putInt(MANIFEST_MAGIC).putInt(shardCount);
+        try {
+            Files.write(manifest, buffer.array());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write shard manifest " + manifest, e);
+        }
+    }
+}
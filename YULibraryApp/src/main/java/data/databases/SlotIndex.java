@@ -0,0 +1,305 @@
+package data.databases;
+
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * An open-addressed map from an int record key to the table slot holding it, kept on the heap in two parallel
+ * {@code int} arrays so a lookup allocates nothing and decodes no record.
+ * <p>There is one writer at a time (the thread holding the database monitor) and any number of lock-free readers.
+ * A removed key leaves a tombstone behind instead of shifting its chain, so a reader walking the chain never skips
+ * a live key; growing or compacting builds new arrays and publishes them with a single volatile write. Readers
+ * still check the record at the returned slot, so an entry seen mid-update costs a retry, not a wrong answer.</p>
+ */
+final class SlotIndex {
+
+    private static final int FREE = 0; // value of a never-used entry; live entries store slot + 1
+    private static final int REMOVED = -1;
+    private static final int MIN_CAPACITY = 16;
+    private static final int FILE_MAGIC = 0x534C5831; // "SLX1"
+    private static final int FILE_HEADER = 5 * Integer.BYTES;
+    private static final int IO_CHUNK_INTS = 16 * 1024;
+
+    private volatile Entries entries;
+    private volatile int size;
+    private int used; // live entries plus tombstones, writer only
+
+    /**
+     * @param expectedKeys The number of keys to size the arrays for.
+     */
+    SlotIndex(int expectedKeys) {
+        this.entries = new Entries(capacityFor(expectedKeys));
+    }
+
+    /**
+     * @param key The record key.
+     * @return The slot holding the key, or -1 if the key is not in the table.
+     */
+    int get(int key) {
+        Entries current = entries;
+        int mask = current.keys.length - 1;
+        for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+            int value = current.values[i];
+            if (value == FREE) {
+                return -1;
+            }
+            VarHandle.acquireFence(); // the key of a published entry is written before its value
+            if (current.keys[i] == key) {
+                return value == REMOVED ? -1 : value - 1;
+            }
+        }
+    }
+
+    /**
+     * Maps a key to a slot, replacing any earlier mapping. Writer only.
+     */
+    void put(int key, int slot) {
+        if (used + 1 > entries.keys.length / 2) {
+            resize(capacityFor(size + 1));
+        }
+        Entries current = entries;
+        int mask = current.keys.length - 1;
+        for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+            int value = current.values[i];
+            if (value == FREE) {
+                current.keys[i] = key;
+                VarHandle.releaseFence(); // publish the key before a reader can see a non-free value
+                current.values[i] = slot + 1;
+                used++;
+                size++;
+                return;
+            }
+            if (current.keys[i] == key) {
+                if (value == REMOVED) {
+                    size++;
+                }
+                current.values[i] = slot + 1;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Drops a key, leaving a tombstone so chains through it stay intact. Writer only.
+     */
+    void remove(int key) {
+        Entries current = entries;
+        int mask = current.keys.length - 1;
+        for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+            int value = current.values[i];
+            if (value == FREE) {
+                return;
+            }
+            if (current.keys[i] == key) {
+                if (value != REMOVED) {
+                    current.values[i] = REMOVED;
+                    size--;
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Writes the arrays to {@code file}, tagged with the table capacity the slots belong to, so the next open can
+     * skip the scan that would rebuild them. Writer only.
+     */
+    void save(Path file, int capacity) throws IOException {
+        Entries current = entries;
+        try (FileChannel channel = FileChannel.open(file, WRITE, CREATE, TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER);
+            header.putInt(FILE_MAGIC).putInt(capacity).putInt(size).putInt(used).putInt(current.keys.length);
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            ByteBuffer chunk = ByteBuffer.allocate(IO_CHUNK_INTS * Integer.BYTES);
+            for (int[] array : new int[][]{current.keys, current.values}) {
+                for (int from = 0; from < array.length; from += IO_CHUNK_INTS) {
+                    int count = Math.min(IO_CHUNK_INTS, array.length - from);
+                    chunk.clear();
+                    chunk.asIntBuffer().put(array, from, count);
+                    chunk.limit(count * Integer.BYTES);
+                    while (chunk.hasRemaining()) {
+                        channel.write(chunk);
+                    }
+                }
+            }
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Loads an index written by {@link #save} and deletes the file, so a crash before the next save cannot leave an
+     * index behind that misses later writes.
+     *
+     * @return The index, or {@code null} if there is none or it was saved for a table of another capacity.
+     */
+    static SlotIndex load(Path file, int capacity) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            return read(file, capacity);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Reads an index written by {@link #save} and leaves the file in place, e.g. to check it against the table.
+     *
+     * @return The index, or {@code null} if it was saved for a table of another capacity or is not an index file.
+     */
+    static SlotIndex read(Path file, int capacity) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER);
+            readFully(channel, header);
+            header.flip();
+            if (header.remaining() < FILE_HEADER || header.getInt() != FILE_MAGIC || header.getInt() != capacity) {
+                return null;
+            }
+            int size = header.getInt();
+            int used = header.getInt();
+            int length = header.getInt();
+            if (Integer.bitCount(length) != 1 || channel.size() != FILE_HEADER + 2L * length * Integer.BYTES) {
+                return null;
+            }
+            Entries loaded = new Entries(length);
+            ByteBuffer chunk = ByteBuffer.allocate(IO_CHUNK_INTS * Integer.BYTES);
+            for (int[] array : new int[][]{loaded.keys, loaded.values}) {
+                for (int from = 0; from < length; from += IO_CHUNK_INTS) {
+                    int count = Math.min(IO_CHUNK_INTS, length - from);
+                    chunk.clear().limit(count * Integer.BYTES);
+                    readFully(channel, chunk);
+                    chunk.flip();
+                    IntBuffer ints = chunk.asIntBuffer();
+                    ints.get(array, from, count);
+                }
+            }
+            SlotIndex index = new SlotIndex(0);
+            index.entries = loaded;
+            index.size = size;
+            index.used = used;
+            return index;
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+            // until the buffer is full or the file ends
+        }
+    }
+
+    /**
+     * Takes over the contents of another index, e.g. one rebuilt from a scan. Writer only.
+     */
+    void replaceWith(SlotIndex rebuilt) {
+        used = rebuilt.used;
+        size = rebuilt.size;
+        entries = rebuilt.entries;
+    }
+
+    /**
+     * Pins the current arrays for a scan. Growth and compaction publish new arrays and leave these ones alone, and a
+     * key never occupies two positions of the same arrays, so walking a snapshot visits each key at most once.
+     */
+    Snapshot snapshot() {
+        return new Snapshot(entries);
+    }
+
+    /**
+     * @return The number of live keys.
+     */
+    int size() {
+        return size;
+    }
+
+    private void resize(int capacity) {
+        Entries old = entries;
+        Entries grown = new Entries(capacity);
+        int mask = capacity - 1;
+        for (int j = 0; j < old.keys.length; j++) {
+            if (old.values[j] > FREE) {
+                int i = mix(old.keys[j]) & mask;
+                while (grown.values[i] != FREE) {
+                    i = (i + 1) & mask;
+                }
+                grown.keys[i] = old.keys[j];
+                grown.values[i] = old.values[j];
+            }
+        }
+        used = size; // tombstones are not carried over
+        entries = grown;
+    }
+
+    private static int capacityFor(int keys) {
+        // Keep at most half the entries in use, so chains stay short even with a few tombstones
+        int capacity = Integer.highestOneBit(Math.max(MIN_CAPACITY, keys) * 4 - 1);
+        return Math.max(MIN_CAPACITY, capacity);
+    }
+
+    /**
+     * Spreads sequential keys (user ids, item ids) across the table; the finalizer of MurmurHash3.
+     */
+    private static int mix(int key) {
+        int h = key;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /**
+     * The arrays of one generation of the index, walked by position.
+     */
+    static final class Snapshot {
+        private final Entries entries;
+
+        private Snapshot(Entries entries) {
+            this.entries = entries;
+        }
+
+        int length() {
+            return entries.keys.length;
+        }
+
+        boolean isLive(int position) {
+            return entries.values[position] > FREE;
+        }
+
+        int keyAt(int position) {
+            VarHandle.acquireFence(); // pairs with the fence in put(), after the value read by isLive
+            return entries.keys[position];
+        }
+
+        /**
+         * @return The slot of the key at a live position.
+         */
+        int slotAt(int position) {
+            return entries.values[position] - 1;
+        }
+    }
+
+    private static final class Entries {
+        final int[] keys;
+        final int[] values;
+
+        Entries(int capacity) {
+            this.keys = new int[capacity];
+            this.values = new int[capacity];
+        }
+    }
+}
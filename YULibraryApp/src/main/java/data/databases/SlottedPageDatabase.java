@@ -0,0 +1,579 @@
+package data.databases;
+
+import data.Record;
+import data.binary.datums.Datum;
+import data.parsers.binary.VariableLengthBinaryParser;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * A disk-backed database for records of varying size, as written by a {@link VariableLengthBinaryParser}. The fixed-size
+ * tables reserve the maximum length of every string in every slot; here each record takes only the bytes it encodes to,
+ * and no string is truncated.
+ * <p>Records live in slotted pages. A page starts with {@code [slot count short][free end short]} and a directory of
+ * {@code [offset short][length short]} slots growing forward, while record bytes are packed from the end of the page
+ * backward. A record keeps its slot number for as long as it stays on its page, so the key index maps each key to a
+ * page and slot; moving bytes around inside a page only rewrites the directory. A deleted record frees its slot and
+ * bytes; the page is compacted when an insert needs the space.</p>
+ * <p>The key index is a {@link SlotIndex} rebuilt by scanning the pages on open, which only reads the key at the front
+ * of each record. Pages are cached in a {@link BufferPool} and written on eviction, {@link #flush()} and
+ * {@link #close()}; as with the {@link BPlusTreeDatabase} there is no log, so changes since the last flush are lost in
+ * a crash.</p>
+ * <p>Any number of readers run in parallel; writers take the lock exclusively.</p>
+ *
+ * @param <T> The Datum type stored in the database.
+ */
+public class SlottedPageDatabase<T extends Datum> implements IDatabase<T> {
+
+    private static final Logger LOGGER = Logger.getLogger(SlottedPageDatabase.class.getName());
+
+    public static final int PAGE_SIZE = 8192;
+
+    public static final int DEFAULT_CACHE_PAGES = 256;
+
+    private static final int MAGIC = 0x53504731; // "SPG1"
+
+    // File header, in page 0
+    private static final int HEADER_PAGE = 0;
+    private static final int H_MAGIC = 0;
+    private static final int H_PAGE_SIZE = 4;
+    private static final int H_PAGE_COUNT = 8;
+
+    // Page layout
+    private static final int SLOT_COUNT_OFFSET = 0;
+    private static final int FREE_END_OFFSET = 2;
+    private static final int PAGE_HEADER = 4;
+    private static final int SLOT_SIZE = 4;
+    private static final int EMPTY = 0; // offset of a free slot; records never start inside the page header
+
+    // A record id is page * MAX_SLOTS + slot, so it fits the int values of a SlotIndex
+    private static final int MAX_SLOTS = 1024;
+    private static final int MAX_RECORD_SIZE = PAGE_SIZE - PAGE_HEADER - SLOT_SIZE;
+    private static final int REUSE_THRESHOLD = PAGE_SIZE / 8; // free bytes that put an older page back in play
+
+    private final String path;
+    private final VariableLengthBinaryParser<T> binaryParser;
+    private final FileChannel channel;
+    private final BufferPool pool;
+    private final SlotIndex index;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ArrayDeque<Integer> reusablePages = new ArrayDeque<>();
+    private int[] freeBytes = new int[16]; // per page, counting holes left by deletes
+    private boolean[] queued = new boolean[16]; // whether the page is in reusablePages
+    private int pageCount;
+    private int fillPage;
+
+    /**
+     * Opens or creates a database file with the default number of cached pages.
+     *
+     * @param path         The file system path of the database file.
+     * @param binaryParser The parser used to convert records to and from their binary form.
+     */
+    public SlottedPageDatabase(String path, VariableLengthBinaryParser<T> binaryParser) {
+        this(path, binaryParser, DEFAULT_CACHE_PAGES);
+    }
+
+    /**
+     * Opens or creates a database file and rebuilds its key index.
+     *
+     * @param path         The file system path of the database file.
+     * @param binaryParser The parser used to convert records to and from their binary form.
+     * @param cachePages   The number of pages the buffer pool keeps in memory.
+     * @throws UncheckedIOException     If the file cannot be opened or read.
+     * @throws IllegalArgumentException If the file is not a slotted-page file.
+     */
+    public SlottedPageDatabase(String path, VariableLengthBinaryParser<T> binaryParser, int cachePages) {
+        this.path = path;
+        this.binaryParser = binaryParser;
+        try {
+            this.channel = FileChannel.open(Paths.get(path), READ, WRITE, CREATE);
+            this.pool = new BufferPool(channel, PAGE_SIZE, cachePages);
+            if (channel.size() == 0) {
+                pageCount = 1;
+                index = new SlotIndex(0);
+                writeHeader();
+            } else {
+                ByteBuffer header = ByteBuffer.allocate(3 * Integer.BYTES);
+                channel.read(header, 0);
+                if (header.getInt(H_MAGIC) != MAGIC || header.getInt(H_PAGE_SIZE) != PAGE_SIZE) {
+                    throw new IllegalArgumentException(path + " is not a slotted-page file");
+                }
+                pageCount = header.getInt(H_PAGE_COUNT);
+                index = new SlotIndex(pageCount * (PAGE_SIZE / 128));
+                scanPages();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open slotted-page file " + path, e);
+        }
+    }
+
+    /**
+     * Adds a record, replacing any record with the same key.
+     *
+     * @throws IllegalArgumentException If the record encodes to more than fits in one page.
+     */
+    @Override
+    public void add(Record<T> record) {
+        byte[] data = encode(record);
+        lock.writeLock().lock();
+        try {
+            put(Integer.parseInt(record.getKey()), data);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write to " + path, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds several records under one acquisition of the lock.
+     */
+    @Override
+    public void addAll(Collection<Record<T>> records) {
+        List<byte[]> encoded = new ArrayList<>(records.size());
+        for (Record<T> record : records) {
+            encoded.add(encode(record));
+        }
+        lock.writeLock().lock();
+        try {
+            int i = 0;
+            for (Record<T> record : records) {
+                put(Integer.parseInt(record.getKey()), encoded.get(i++));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write to " + path, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void update(String key, Record<T> record) {
+        add(record);
+    }
+
+    @Override
+    public void delete(String key) {
+        lock.writeLock().lock();
+        try {
+            int id = index.get(Integer.parseInt(key));
+            if (id >= 0) {
+                BufferPool.Page page = pool.fetch(id / MAX_SLOTS);
+                try {
+                    removeSlot(page, id % MAX_SLOTS);
+                } finally {
+                    pool.unpin(page);
+                }
+                index.remove(Integer.parseInt(key));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write to " + path, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Record<T> read(String key) {
+        lock.readLock().lock();
+        try {
+            int id = index.get(Integer.parseInt(key));
+            return id < 0 ? null : binaryParser.parseData(recordBytes(id));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read from " + path, e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reads several records, visiting the pages in file order so each page is fetched once.
+     */
+    @Override
+    public Map<String, Record<T>> readMany(Collection<String> keys) {
+        List<String> found = new ArrayList<>(keys.size());
+        List<Integer> ids = new ArrayList<>(keys.size());
+        Map<String, Record<T>> records = new LinkedHashMap<>();
+        lock.readLock().lock();
+        try {
+            for (String key : keys) {
+                int id = index.get(Integer.parseInt(key));
+                if (id >= 0) {
+                    found.add(key);
+                    ids.add(id);
+                }
+            }
+            Integer[] order = new Integer[ids.size()];
+            Arrays.setAll(order, i -> i);
+            Arrays.sort(order, (a, b) -> Integer.compare(ids.get(a), ids.get(b)));
+            byte[][] bytes = new byte[ids.size()][];
+            BufferPool.Page page = null;
+            try {
+                for (int i : order) {
+                    int id = ids.get(i);
+                    if (page == null || page.id != id / MAX_SLOTS) {
+                        if (page != null) {
+                            pool.unpin(page);
+                        }
+                        page = pool.fetch(id / MAX_SLOTS);
+                    }
+                    bytes[i] = slotBytes(page, id % MAX_SLOTS);
+                }
+            } finally {
+                if (page != null) {
+                    pool.unpin(page);
+                }
+            }
+            for (int i = 0; i < bytes.length; i++) {
+                records.put(found.get(i), binaryParser.parseData(bytes[i]));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read from " + path, e);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return records;
+    }
+
+    /**
+     * @return Every record, in file order.
+     */
+    @Override
+    public List<Record<T>> readAll() {
+        List<Record<T>> records = new ArrayList<>(index.size());
+        lock.readLock().lock();
+        try {
+            for (int pageId = 1; pageId < pageCount; pageId++) {
+                BufferPool.Page page = pool.fetch(pageId);
+                try {
+                    int slots = slotCount(page);
+                    for (int slot = 0; slot < slots; slot++) {
+                        if (slotOffset(page, slot) != EMPTY) {
+                            records.add(binaryParser.parseData(slotBytes(page, slot)));
+                        }
+                    }
+                } finally {
+                    pool.unpin(page);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read from " + path, e);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return records;
+    }
+
+    /**
+     * Writes every cached change and the file header to disk.
+     */
+    public void flush() {
+        lock.writeLock().lock();
+        try {
+            writeHeader();
+            pool.flush();
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to flush " + path, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Flushes and closes the database file.
+     */
+    public void close() {
+        flush();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to close " + path, e);
+        }
+    }
+
+    /**
+     * @return The number of records in the database.
+     */
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * @return The number of pages in the file, including the header page.
+     */
+    public int getPageCount() {
+        lock.readLock().lock();
+        try {
+            return pageCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private byte[] encode(Record<T> record) {
+        byte[] data = binaryParser.getData(record);
+        if (data.length > MAX_RECORD_SIZE) {
+            throw new IllegalArgumentException("Record " + record.getKey() + " encodes to " + data.length
+                    + " bytes, more than the " + MAX_RECORD_SIZE + " a page holds");
+        }
+        return data;
+    }
+
+    /**
+     * Stores a record, in place if it still fits its page, and points the index at it. Must hold the write lock.
+     */
+    private void put(int key, byte[] data) throws IOException {
+        int id = index.get(key);
+        if (id >= 0) {
+            BufferPool.Page page = pool.fetch(id / MAX_SLOTS);
+            try {
+                int slot = id % MAX_SLOTS;
+                removeSlot(page, slot);
+                if (fits(page, data.length, true)) {
+                    writeSlot(page, slot, data);
+                    return;
+                }
+            } finally {
+                pool.unpin(page);
+            }
+        }
+        BufferPool.Page page = pageWithRoom(data.length);
+        try {
+            int slot = freeSlot(page);
+            writeSlot(page, slot, data);
+            index.put(key, page.id * MAX_SLOTS + slot);
+        } finally {
+            pool.unpin(page);
+        }
+    }
+
+    /**
+     * Finds a page with room for a new record of {@code length} bytes: the page being filled, then pages that deletes
+     * opened up, then a new page.
+     *
+     * @return The page, pinned.
+     */
+    private BufferPool.Page pageWithRoom(int length) throws IOException {
+        if (fillPage != 0) {
+            BufferPool.Page page = pool.fetch(fillPage);
+            if (fits(page, length, false)) {
+                return page;
+            }
+            pool.unpin(page);
+        }
+        while (!reusablePages.isEmpty()) {
+            int candidate = reusablePages.poll();
+            queued[candidate] = false;
+            BufferPool.Page page = pool.fetch(candidate);
+            if (fits(page, length, false)) {
+                fillPage = candidate;
+                return page;
+            }
+            pool.unpin(page);
+        }
+        ensureTracked(pageCount);
+        BufferPool.Page page = pool.allocate(pageCount);
+        page.data.putShort(FREE_END_OFFSET, (short) PAGE_SIZE);
+        freeBytes[pageCount] = PAGE_SIZE - PAGE_HEADER;
+        fillPage = pageCount++;
+        return page;
+    }
+
+    /**
+     * @param reuseSlot Whether the record takes a slot that is already in the directory.
+     * @return Whether the page has room for the record, once compacted if need be.
+     */
+    private boolean fits(BufferPool.Page page, int length, boolean reuseSlot) {
+        boolean newSlot = !reuseSlot && firstEmptySlot(page) < 0;
+        if (newSlot && slotCount(page) >= MAX_SLOTS) {
+            return false;
+        }
+        return freeBytes[page.id] >= length + (newSlot ? SLOT_SIZE : 0);
+    }
+
+    /**
+     * @return An empty slot of the page, adding one to the directory if none is free.
+     */
+    private int freeSlot(BufferPool.Page page) {
+        int slot = firstEmptySlot(page);
+        if (slot >= 0) {
+            return slot;
+        }
+        slot = slotCount(page);
+        if (contiguousFree(page) < SLOT_SIZE) {
+            compact(page);
+        }
+        page.data.putShort(SLOT_COUNT_OFFSET, (short) (slot + 1));
+        page.data.putInt(slotPosition(slot), 0); // empty
+        freeBytes[page.id] -= SLOT_SIZE;
+        page.dirty = true;
+        return slot;
+    }
+
+    /**
+     * Writes record bytes into an empty slot, compacting the page first if the free space is fragmented.
+     */
+    private void writeSlot(BufferPool.Page page, int slot, byte[] data) {
+        if (contiguousFree(page) < data.length) {
+            compact(page);
+        }
+        int offset = freeEnd(page) - data.length;
+        page.data.put(offset, data);
+        page.data.putShort(FREE_END_OFFSET, (short) offset);
+        page.data.putShort(slotPosition(slot), (short) offset);
+        page.data.putShort(slotPosition(slot) + 2, (short) data.length);
+        freeBytes[page.id] -= data.length;
+        page.dirty = true;
+    }
+
+    /**
+     * Empties a slot. Its bytes become a hole until the page is compacted.
+     */
+    private void removeSlot(BufferPool.Page page, int slot) {
+        freeBytes[page.id] += slotLength(page, slot);
+        page.data.putInt(slotPosition(slot), 0);
+        page.dirty = true;
+        if (freeBytes[page.id] >= REUSE_THRESHOLD && !queued[page.id] && page.id != fillPage) {
+            queued[page.id] = true;
+            reusablePages.add(page.id);
+        }
+    }
+
+    /**
+     * Packs the records against the end of the page, closing the holes deletes left. Slot numbers do not change.
+     */
+    private void compact(BufferPool.Page page) {
+        int slots = slotCount(page);
+        Integer[] byOffset = new Integer[slots];
+        Arrays.setAll(byOffset, i -> i);
+        // Highest offset first, so each record only ever moves toward the end of the page
+        Arrays.sort(byOffset, (a, b) -> Integer.compare(slotOffset(page, b), slotOffset(page, a)));
+        byte[] bytes = page.data.array();
+        int end = PAGE_SIZE;
+        for (int slot : byOffset) {
+            int offset = slotOffset(page, slot);
+            if (offset == EMPTY) {
+                break;
+            }
+            int length = slotLength(page, slot);
+            end -= length;
+            System.arraycopy(bytes, offset, bytes, end, length);
+            page.data.putShort(slotPosition(slot), (short) end);
+        }
+        page.data.putShort(FREE_END_OFFSET, (short) end);
+        page.dirty = true;
+    }
+
+    /**
+     * Rebuilds the key index and the free-space bookkeeping from the pages.
+     */
+    private void scanPages() throws IOException {
+        ensureTracked(pageCount - 1);
+        for (int pageId = 1; pageId < pageCount; pageId++) {
+            BufferPool.Page page = pool.fetch(pageId);
+            try {
+                int slots = slotCount(page);
+                int used = PAGE_HEADER + slots * SLOT_SIZE;
+                for (int slot = 0; slot < slots; slot++) {
+                    int offset = slotOffset(page, slot);
+                    if (offset != EMPTY) {
+                        index.put(page.data.getInt(offset), pageId * MAX_SLOTS + slot);
+                        used += slotLength(page, slot);
+                    }
+                }
+                freeBytes[pageId] = PAGE_SIZE - used;
+                if (freeBytes[pageId] >= REUSE_THRESHOLD) {
+                    queued[pageId] = true;
+                    reusablePages.add(pageId);
+                }
+            } finally {
+                pool.unpin(page);
+            }
+        }
+    }
+
+    private byte[] recordBytes(int id) throws IOException {
+        BufferPool.Page page = pool.fetch(id / MAX_SLOTS);
+        try {
+            return slotBytes(page, id % MAX_SLOTS);
+        } finally {
+            pool.unpin(page);
+        }
+    }
+
+    private void writeHeader() throws IOException {
+        BufferPool.Page header = pool.fetch(HEADER_PAGE);
+        try {
+            header.data.putInt(H_MAGIC, MAGIC);
+            header.data.putInt(H_PAGE_SIZE, PAGE_SIZE);
+            header.data.putInt(H_PAGE_COUNT, pageCount);
+            header.dirty = true;
+        } finally {
+            pool.unpin(header);
+        }
+    }
+
+    private void ensureTracked(int pageId) {
+        if (pageId >= freeBytes.length) {
+            int length = Math.max(pageId + 1, freeBytes.length * 2);
+            freeBytes = Arrays.copyOf(freeBytes, length);
+            queued = Arrays.copyOf(queued, length);
+        }
+    }
+
+    private static byte[] slotBytes(BufferPool.Page page, int slot) {
+        byte[] data = new byte[slotLength(page, slot)];
+        page.data.get(slotOffset(page, slot), data);
+        return data;
+    }
+
+    private static int firstEmptySlot(BufferPool.Page page) {
+        int slots = slotCount(page);
+        for (int slot = 0; slot < slots; slot++) {
+            if (slotOffset(page, slot) == EMPTY) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private static int contiguousFree(BufferPool.Page page) {
+        return freeEnd(page) - PAGE_HEADER - slotCount(page) * SLOT_SIZE;
+    }
+
+    private static int slotPosition(int slot) {
+        return PAGE_HEADER + slot * SLOT_SIZE;
+    }
+
+    private static int slotCount(BufferPool.Page page) {
+        return page.data.getShort(SLOT_COUNT_OFFSET) & 0xffff;
+    }
+
+    private static int freeEnd(BufferPool.Page page) {
+        return page.data.getShort(FREE_END_OFFSET) & 0xffff;
+    }
+
+    private static int slotOffset(BufferPool.Page page, int slot) {
+        return page.data.getShort(slotPosition(slot)) & 0xffff;
+    }
+
+    private static int slotLength(BufferPool.Page page, int slot) {
+        return page.data.getShort(slotPosition(slot) + 2) & 0xffff;
+    }
+}
@@ -0,0 +1,316 @@
+package data.databases;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * An immutable file of records sorted by key, as written by an {@link LsmDatabase} flush or compaction.
+ * <p>Layout: a header {@code [magic][record size][entry count][fence count]}, then fixed-size entries
+ * {@code [int key][byte state][record bytes]} in ascending key order, then the {@link BloomFilter} of the keys, then
+ * the first key of every block of {@link #BLOCK_ENTRIES} entries. The filter and the block keys are loaded on open,
+ * so a lookup reads at most one block from the file, and a key the filter rules out reads nothing.</p>
+ * <p>A deleted key is kept as a tombstone entry so it hides older segments' copies until a compaction that includes
+ * the oldest segment drops it.</p>
+ */
+final class SortedSegment {
+
+    /**
+     * Stands for a deleted key in lookups and cursors. Compare by identity.
+     */
+    static final byte[] TOMBSTONE = new byte[0];
+
+    private static final int MAGIC = 0x4C534D31; // "LSM1"
+    private static final int HEADER_SIZE = 4 * Integer.BYTES;
+    private static final int BLOCK_ENTRIES = 64;
+    private static final byte LIVE = 1;
+    private static final byte DELETED = 2;
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final int recordSize;
+    private final int entrySize;
+    private final int count;
+    private final BloomFilter bloom;
+    private final int[] fenceKeys;
+
+    private SortedSegment(Path file, FileChannel channel, int recordSize, int count, BloomFilter bloom, int[] fenceKeys) {
+        this.file = file;
+        this.channel = channel;
+        this.recordSize = recordSize;
+        this.entrySize = Integer.BYTES + 1 + recordSize;
+        this.count = count;
+        this.bloom = bloom;
+        this.fenceKeys = fenceKeys;
+    }
+
+    /**
+     * Writes a new segment file and forces it to disk.
+     *
+     * @param file         The segment file; it must not exist yet.
+     * @param recordSize   The size of every record, as the parser writes it.
+     * @param expectedKeys An upper bound on the number of entries, to size the Bloom filter.
+     * @param entries      The entries in ascending key order; a {@link #TOMBSTONE} value writes a tombstone.
+     * @return The segment, open for reading.
+     */
+    static SortedSegment write(Path file, int recordSize, int expectedKeys,
+                               Iterator<Map.Entry<Integer, byte[]>> entries) throws IOException {
+        int entrySize = Integer.BYTES + 1 + recordSize;
+        BloomFilter bloom = new BloomFilter(expectedKeys);
+        IntList fences = new IntList();
+        FileChannel channel = FileChannel.open(file, READ, WRITE, CREATE_NEW);
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(Math.max(WRITE_BUFFER_SIZE, entrySize));
+            long position = HEADER_SIZE;
+            int count = 0;
+            int previousKey = 0;
+            while (entries.hasNext()) {
+                Map.Entry<Integer, byte[]> entry = entries.next();
+                int key = entry.getKey();
+                if (count > 0 && key <= previousKey) {
+                    throw new IllegalArgumentException("Segment entries out of order: " + key + " after " + previousKey);
+                }
+                if (count % BLOCK_ENTRIES == 0) {
+                    fences.add(key);
+                }
+                if (buffer.remaining() < entrySize) {
+                    position += drain(channel, buffer, position);
+                }
+                byte[] value = entry.getValue();
+                buffer.putInt(key);
+                if (value == TOMBSTONE) {
+                    buffer.put(DELETED);
+                    buffer.put(new byte[recordSize]);
+                } else {
+                    buffer.put(LIVE);
+                    buffer.put(value, 0, recordSize);
+                }
+                bloom.put(key);
+                previousKey = key;
+                count++;
+            }
+            position += drain(channel, buffer, position);
+
+            ByteBuffer tail = ByteBuffer.allocate(bloom.serializedSize() + fences.size * Integer.BYTES);
+            bloom.writeTo(tail);
+            for (int i = 0; i < fences.size; i++) {
+                tail.putInt(fences.values[i]);
+            }
+            drain(channel, tail, position);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(recordSize).putInt(count).putInt(fences.size);
+            drain(channel, header, 0);
+            channel.force(true);
+            return new SortedSegment(file, channel, recordSize, count, bloom, fences.toArray());
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a segment written by {@link #write}.
+     *
+     * @throws IllegalArgumentException If the file is not a segment, or holds records of another size.
+     */
+    static SortedSegment open(Path file, int recordSize) throws IOException {
+        FileChannel channel = FileChannel.open(file, READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header, 0);
+            if (header.getInt(0) != MAGIC) {
+                throw new IllegalArgumentException(file + " is not a segment file");
+            }
+            if (header.getInt(4) != recordSize) {
+                throw new IllegalArgumentException(file + " holds records of " + header.getInt(4)
+                        + " bytes, the parser writes " + recordSize);
+            }
+            int count = header.getInt(8);
+            int fenceCount = header.getInt(12);
+            long tailStart = HEADER_SIZE + (long) count * (Integer.BYTES + 1 + recordSize);
+            ByteBuffer tail = ByteBuffer.allocate((int) (channel.size() - tailStart));
+            readFully(channel, tail, tailStart);
+            tail.flip();
+            tail.limit(tail.limit() - fenceCount * Integer.BYTES);
+            BloomFilter bloom = BloomFilter.readFrom(tail);
+            if (bloom == null) {
+                throw new IllegalArgumentException(file + " has a damaged Bloom filter");
+            }
+            tail.limit(tail.capacity());
+            tail.position(tail.capacity() - fenceCount * Integer.BYTES);
+            int[] fenceKeys = new int[fenceCount];
+            tail.asIntBuffer().get(fenceKeys);
+            return new SortedSegment(file, channel, recordSize, count, bloom, fenceKeys);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return The record bytes stored under {@code key}, {@link #TOMBSTONE} if the key was deleted, or {@code null}
+     * if this segment does not mention it.
+     */
+    byte[] get(int key) throws IOException {
+        if (count == 0 || !bloom.mightContain(key)) {
+            return null;
+        }
+        int block = blockOf(key);
+        if (block < 0) {
+            return null;
+        }
+        int first = block * BLOCK_ENTRIES;
+        int entries = Math.min(BLOCK_ENTRIES, count - first);
+        ByteBuffer data = ByteBuffer.allocate(entries * entrySize);
+        readFully(channel, data, HEADER_SIZE + (long) first * entrySize);
+        int low = 0;
+        int high = entries - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midKey = data.getInt(mid * entrySize);
+            if (midKey < key) {
+                low = mid + 1;
+            } else if (midKey > key) {
+                high = mid - 1;
+            } else {
+                return valueAt(data, mid);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return A cursor over every entry, tombstones included, in key order. It reads one block at a time.
+     */
+    Cursor cursor() {
+        return new Cursor();
+    }
+
+    int size() {
+        return count;
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * @return The block whose key range covers {@code key}, or -1 if the key is below the first key.
+     */
+    private int blockOf(int key) {
+        int low = 0;
+        int high = fenceKeys.length - 1;
+        int block = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (fenceKeys[mid] <= key) {
+                block = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return block;
+    }
+
+    private byte[] valueAt(ByteBuffer data, int index) {
+        int offset = index * entrySize + Integer.BYTES;
+        if (data.get(offset) == DELETED) {
+            return TOMBSTONE;
+        }
+        byte[] record = new byte[recordSize];
+        data.get(offset + 1, record);
+        return record;
+    }
+
+    /**
+     * Writes what was put in the buffer at {@code position}, then clears the buffer for reuse.
+     *
+     * @return The number of bytes written.
+     */
+    private static int drain(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        buffer.flip();
+        int written = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+        buffer.clear();
+        return written;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of segment file at " + (position + buffer.position()));
+            }
+        }
+    }
+
+    /**
+     * Walks a segment in key order: call {@link #advance()} and, while it returns {@code true}, read {@link #key()}
+     * and {@link #value()}.
+     */
+    final class Cursor {
+        private ByteBuffer block;
+        private int nextIndex;
+        private int key;
+        private byte[] value;
+
+        boolean advance() throws IOException {
+            if (nextIndex >= count) {
+                return false;
+            }
+            int inBlock = nextIndex % BLOCK_ENTRIES;
+            if (inBlock == 0) {
+                int entries = Math.min(BLOCK_ENTRIES, count - nextIndex);
+                block = ByteBuffer.allocate(entries * entrySize);
+                readFully(channel, block, HEADER_SIZE + (long) nextIndex * entrySize);
+            }
+            key = block.getInt(inBlock * entrySize);
+            value = valueAt(block, inBlock);
+            nextIndex++;
+            return true;
+        }
+
+        int key() {
+            return key;
+        }
+
+        byte[] value() {
+            return value;
+        }
+    }
+
+    /**
+     * A growable list of ints, so the block keys are collected without boxing.
+     */
+    private static final class IntList {
+        int[] values = new int[16];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
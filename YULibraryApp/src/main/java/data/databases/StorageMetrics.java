@@ -0,0 +1,54 @@
+package data.databases;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The live counters behind {@link DatabaseMetrics}. Readers record into striped counters; everything else is
+ * recorded by the flushing thread, under the database monitor.
+ */
+final class StorageMetrics {
+
+    private final AtomicLongArray probeLengths;
+    private final LatencyHistogram readLatency = new LatencyHistogram();
+    private final LatencyHistogram flushLatency = new LatencyHistogram();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong flushedRecords = new AtomicLong();
+    private volatile long lastFlushNanos;
+    private volatile int lastFlushRecords;
+
+    /**
+     * @param maxProbeLength The longest probe a table allows; longer ones are counted as failed placements.
+     */
+    StorageMetrics(int maxProbeLength) {
+        this.probeLengths = new AtomicLongArray(maxProbeLength + 1);
+    }
+
+    /**
+     * @param length The number of slots an insert stepped past its home slot, or the maximum for one that found none.
+     */
+    void recordProbe(int length) {
+        probeLengths.incrementAndGet(Math.min(length, probeLengths.length() - 1));
+    }
+
+    void recordRead(long nanos) {
+        readLatency.record(nanos);
+    }
+
+    void recordFlush(long nanos, int records) {
+        flushLatency.record(nanos);
+        flushes.incrementAndGet();
+        flushedRecords.addAndGet(records);
+        lastFlushNanos = nanos;
+        lastFlushRecords = records;
+    }
+
+    DatabaseMetrics snapshot(int capacity, double loadFactor, int tombstones, int pendingRecords) {
+        long[] probes = new long[probeLengths.length()];
+        for (int i = 0; i < probes.length; i++) {
+            probes[i] = probeLengths.get(i);
+        }
+        return new DatabaseMetrics(capacity, loadFactor, tombstones, pendingRecords, probes, readLatency.snapshot(),
+                flushLatency.snapshot(), flushes.get(), flushedRecords.get(), lastFlushNanos, lastFlushRecords);
+    }
+}
@@ -0,0 +1,105 @@
+package data.databases;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The first {@link #SIZE} bytes of a {@link HashBasedDatabase} table file, ahead of the slots:
+ * <pre>
+ * | Magic "HDB1" (4) | Version (4) | Record size (4) | Capacity (4) | Live records (4) | Tombstones (4) |
+ * | Hash function id (4) | Clean shutdown (1) | zero padding up to one page |
+ * </pre>
+ * <p>The counts are only written by a clean close, which sets the flag last; opening the table clears it before
+ * anything else is written. So a set flag means the counts, and the slot index and Bloom filter saved next to the
+ * file, describe the slots exactly, and the table can be opened without reading them.</p>
+ */
+final class TableHeader {
+
+    /**
+     * The bytes reserved for the header: one page, so the slots keep the alignment they had without it.
+     */
+    static final int SIZE = 4096;
+
+    static final int VERSION = 1;
+
+    /**
+     * The home slot of a key is {@code |String.hashCode() % capacity|} of its decimal form.
+     */
+    static final int HASH_DECIMAL_STRING = 1;
+
+    private static final int MAGIC = 0x48444231; // "HDB1"
+    private static final int USED = 29;
+
+    final int version;
+    final int recordSize;
+    final int capacity;
+    final int liveRecords;
+    final int tombstones;
+    final int hashFunction;
+    final boolean cleanShutdown;
+
+    TableHeader(int recordSize, int capacity, int liveRecords, int tombstones, boolean cleanShutdown) {
+        this(VERSION, recordSize, capacity, liveRecords, tombstones, HASH_DECIMAL_STRING, cleanShutdown);
+    }
+
+    private TableHeader(int version, int recordSize, int capacity, int liveRecords, int tombstones, int hashFunction,
+                        boolean cleanShutdown) {
+        this.version = version;
+        this.recordSize = recordSize;
+        this.capacity = capacity;
+        this.liveRecords = liveRecords;
+        this.tombstones = tombstones;
+        this.hashFunction = hashFunction;
+        this.cleanShutdown = cleanShutdown;
+    }
+
+    /**
+     * @return The header of the file, or {@code null} if it does not start with one: a file written before tables
+     * had headers.
+     */
+    static TableHeader read(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(USED);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, buffer.position()) < 0) {
+                return null; // shorter than a header
+            }
+        }
+        buffer.flip();
+        if (buffer.getInt() != MAGIC) {
+            return null;
+        }
+        return new TableHeader(buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt(),
+                buffer.getInt(), buffer.get() == 1);
+    }
+
+    /**
+     * Writes the header at the start of the file and forces it to the device.
+     */
+    void write(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(USED);
+        buffer.putInt(MAGIC).putInt(version).putInt(recordSize).putInt(capacity).putInt(liveRecords).putInt(tombstones)
+                .putInt(hashFunction).put((byte) (cleanShutdown ? 1 : 0));
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, buffer.position());
+        }
+        channel.force(false);
+    }
+
+    /**
+     * @throws IllegalArgumentException If a table with this header cannot be read with records of {@code recordSize}
+     *                                  bytes by this version.
+     */
+    void check(String path, int recordSize) {
+        if (version > VERSION) {
+            throw new IllegalArgumentException(path + " was written by a newer version (header version " + version + ")");
+        }
+        if (this.recordSize != recordSize) {
+            throw new IllegalArgumentException(path + " holds records of " + this.recordSize + " bytes, not " + recordSize);
+        }
+        if (hashFunction != HASH_DECIMAL_STRING) {
+            throw new IllegalArgumentException(path + " uses unknown hash function " + hashFunction);
+        }
+    }
+}
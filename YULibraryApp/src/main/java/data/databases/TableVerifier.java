@@ -0,0 +1,497 @@
+package data.databases;
+
+import data.Record;
+import data.binary.datums.Datum;
+import data.parsers.binary.BinaryParser;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Checks a {@link HashBasedDatabase} table file for the damage a crash or a torn write can leave behind, and copies
+ * what is intact into a fresh table.
+ * <p>The slots are read in chunks of about {@value #CHUNK_BYTES} bytes by one thread per core. The threads claim
+ * chunks in file order, so the device sees a few sequential streams, and each record is checked while the next
+ * chunk is being read by another thread. A record is corrupt if its flag byte is neither empty, live nor a tombstone,
+ * or if it does not decode to the key stored in it. Live records of a parser that carries a checksum, such as
+ * {@link data.parsers.binary.ChecksummedBinaryParser}, are checked against it first, whatever the parser's own
+ * verification setting. Once every chunk is in, the live keys are sorted to find
+ * duplicates, and each live record's probe chain is walked back to its home slot: an insert never puts a record
+ * {@code MAX_HASH_FAILS} or more slots from home, nor behind an empty slot, so either means slots were lost. The
+ * slot index, if there is one to compare with, must lead to exactly the live records.</p>
+ * <p>Probe chains can only be checked for parsers that expose their key and flag offsets: without them, deletes zero
+ * the slot instead of leaving a tombstone, and chains are broken by design.</p>
+ */
+public final class TableVerifier {
+
+    /**
+     * The number of problems described in a report; they are all counted.
+     */
+    static final int SAMPLE_LIMIT = 100;
+
+    private static final int CHUNK_BYTES = 4 << 20;
+
+    private static final VarHandle INT_VIEW = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+    private TableVerifier() {
+    }
+
+    /**
+     * Verifies a table that no database has open. If the header says the table was closed cleanly, the live and
+     * tombstone counts it records, and the slot index saved next to it, are checked as well.
+     *
+     * @param file   The table file.
+     * @param parser The parser the table was written with.
+     * @return What was found.
+     * @throws IllegalArgumentException If the header records another record size, or a newer format.
+     * @throws UncheckedIOException     If the file cannot be read.
+     */
+    public static VerificationReport verify(Path file, BinaryParser<?> parser) {
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            Layout layout = Layout.of(file, channel, parser.getSize());
+            TableHeader header = layout.header;
+            boolean clean = header != null && header.cleanShutdown;
+            Path slots = Paths.get(file + ".slots");
+            SlotIndex index = clean && Files.exists(slots) ? SlotIndex.read(slots, layout.capacity) : null;
+            return scan(channel, layout, parser, index, clean ? header.liveRecords : -1, clean ? header.tombstones : -1)
+                    .report();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to verify " + file, e);
+        }
+    }
+
+    /**
+     * Copies every intact live record of a table no database has open into a new table. Corrupt records are
+     * dropped; of several records with the same key, the one in the earliest slot is kept. Records on broken probe
+     * chains are kept, and placed where lookups expect them.
+     *
+     * @param file   The damaged table file; left as it is.
+     * @param target The file of the new table, with the same capacity; must not exist yet.
+     * @param parser The parser the table was written with.
+     * @return The report on {@code file}, found on the way.
+     * @throws IllegalArgumentException If {@code target} exists, or the header of {@code file} cannot be read.
+     * @throws UncheckedIOException     If either file cannot be read or written.
+     */
+    public static <T extends Datum> VerificationReport rebuild(Path file, Path target, BinaryParser<T> parser) {
+        if (Files.exists(target)) {
+            throw new IllegalArgumentException(target + " already exists");
+        }
+        Scan scan;
+        Layout layout;
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            layout = Layout.of(file, channel, parser.getSize());
+            scan = scan(channel, layout, parser, null, -1, -1);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to verify " + file, e);
+        }
+
+        int[] keep = scan.firstSlotOfEachKey();
+        Arrays.sort(keep); // read in file order
+        HashBasedDatabase<T> rebuilt = new HashBasedDatabase<>(target.toString(), layout.capacity, parser);
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            List<Record<T>> batch = new ArrayList<>();
+            for (int slot : keep) {
+                ByteBuffer record = ByteBuffer.allocate(parser.getSize());
+                readFully(channel, record, layout.base + (long) slot * parser.getSize());
+                batch.add(parser.parseData(record.array()));
+                if (batch.size() == CHUNK_BYTES / parser.getSize()) {
+                    rebuilt.addAll(batch);
+                    rebuilt.flush();
+                    batch.clear();
+                }
+            }
+            rebuilt.addAll(batch);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to rebuild " + file, e);
+        } finally {
+            rebuilt.close();
+        }
+        return scan.report();
+    }
+
+    /**
+     * Verifies the slots of an open table against its slot index and counts. The caller must keep writers out of the
+     * file until this returns.
+     *
+     * @param expectedTombstones The tombstone count the database keeps, or -1 if it keeps none.
+     */
+    static VerificationReport verifyOpen(Path file, boolean hasHeader, int capacity, BinaryParser<?> parser,
+                                         SlotIndex index, int expectedTombstones) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            Layout layout = new Layout(null, hasHeader ? TableHeader.SIZE : 0, capacity, 0);
+            return scan(channel, layout, parser, index, index.size(), expectedTombstones).report();
+        }
+    }
+
+    private static Scan scan(FileChannel channel, Layout layout, BinaryParser<?> parser, SlotIndex index,
+                             int expectedLive, int expectedTombstones) throws IOException {
+        long started = System.nanoTime();
+        int capacity = layout.capacity;
+        int recordSize = parser.getSize();
+        // Whole words of the empty-slot bitmap per chunk, so no two threads ever write the same word
+        int chunkSlots = Math.max(Long.SIZE, CHUNK_BYTES / recordSize / Long.SIZE * Long.SIZE);
+        int chunks = (capacity + chunkSlots - 1) / chunkSlots;
+        long[] empty = new long[(capacity + Long.SIZE - 1) / Long.SIZE];
+        Chunk[] results = new Chunk[chunks];
+        AtomicInteger next = new AtomicInteger();
+        int threads = Math.max(1, Math.min(chunks, Runtime.getRuntime().availableProcessors()));
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "table-verifier");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Callable<Void>> workers = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                workers.add(() -> {
+                    ByteBuffer buffer = ByteBuffer.allocate(chunkSlots * recordSize);
+                    for (int chunk = next.getAndIncrement(); chunk < chunks; chunk = next.getAndIncrement()) {
+                        int first = chunk * chunkSlots;
+                        results[chunk] = scanChunk(channel, layout.base, first, Math.min(chunkSlots, capacity - first),
+                                parser, buffer, empty);
+                    }
+                    return null;
+                });
+            }
+            for (Future<Void> worker : pool.invokeAll(workers)) {
+                worker.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while verifying", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException("Verifier thread failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        return new Scan(layout, parser, results, empty, index, expectedLive, expectedTombstones, started);
+    }
+
+    private static <T extends Datum> Chunk scanChunk(FileChannel channel, long base, int first, int count,
+                                                     BinaryParser<T> parser, ByteBuffer buffer, long[] empty)
+            throws IOException {
+        int recordSize = parser.getSize();
+        buffer.clear().limit(count * recordSize);
+        readFully(channel, buffer, base + (long) first * recordSize);
+        Arrays.fill(buffer.array(), buffer.position(), buffer.limit(), (byte) 0); // slots past the end of the file
+        boolean keyOnly = parser.getKeyOffset() >= 0 && parser.getFlagOffset() >= 0
+                && parser.getKeyWidth() == Integer.BYTES;
+        byte[] record = new byte[recordSize];
+        Chunk chunk = new Chunk();
+        for (int i = 0; i < count; i++) {
+            int slot = first + i;
+            buffer.get(i * recordSize, record);
+            if (!keyOnly) {
+                if (!parser.checksumMatches(record)) {
+                    chunk.checksumFailure(slot);
+                    continue;
+                }
+                try {
+                    Record<T> decoded = parser.parseData(record);
+                    if (decoded.getEntry() != null && decoded.getEntry().getFlag()) {
+                        chunk.addLive(Integer.parseInt(decoded.getKey()), slot);
+                    } else {
+                        markEmpty(empty, slot);
+                        chunk.emptySlots++;
+                    }
+                } catch (RuntimeException e) {
+                    chunk.corrupt(slot, "record does not decode: " + e);
+                }
+                continue;
+            }
+            byte flag = record[parser.getFlagOffset()];
+            if (flag == 0) {
+                markEmpty(empty, slot);
+                chunk.emptySlots++;
+            } else if (flag == HashBasedDatabase.TOMBSTONE) {
+                chunk.tombstones++;
+            } else if (flag != 1) {
+                chunk.corrupt(slot, "flag byte " + flag);
+            } else {
+                int key = (int) INT_VIEW.get(record, parser.getKeyOffset());
+                if (!parser.checksumMatches(record)) {
+                    chunk.checksumFailure(slot);
+                } else if (decodesTo(parser, record, key)) {
+                    chunk.addLive(key, slot);
+                } else {
+                    chunk.corrupt(slot, "record does not decode to its key " + key);
+                }
+            }
+        }
+        return chunk;
+    }
+
+    private static boolean decodesTo(BinaryParser<?> parser, byte[] record, int key) {
+        try {
+            Record<?> decoded = parser.parseData(record);
+            return decoded.getEntry() != null && Integer.parseInt(decoded.getKey()) == key;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                return;
+            }
+        }
+    }
+
+    private static void markEmpty(long[] empty, int slot) {
+        empty[slot / Long.SIZE] |= 1L << slot;
+    }
+
+    private static boolean isEmpty(long[] empty, int slot) {
+        return (empty[slot / Long.SIZE] & 1L << slot) != 0;
+    }
+
+    // Key in the high half, slot in the low half, so sorting groups a key's slots in slot order
+    private static long pack(int key, int slot) {
+        return (long) key << 32 | slot;
+    }
+
+    private static int keyOf(long packed) {
+        return (int) (packed >> 32);
+    }
+
+    private static int slotOf(long packed) {
+        return (int) packed;
+    }
+
+    /**
+     * Where the slots of a table file are: after the header, or from the start of a file written before headers.
+     */
+    private static final class Layout {
+        final TableHeader header;
+        final long base;
+        final int capacity; // slots present in the file
+        final int missingSlots; // slots the header records but the file is too short to hold
+
+        Layout(TableHeader header, long base, int capacity, int missingSlots) {
+            this.header = header;
+            this.base = base;
+            this.capacity = capacity;
+            this.missingSlots = missingSlots;
+        }
+
+        static Layout of(Path file, FileChannel channel, int recordSize) throws IOException {
+            TableHeader header = TableHeader.read(channel);
+            if (header == null) {
+                return new Layout(null, 0, (int) (channel.size() / recordSize), 0);
+            }
+            header.check(file.toString(), recordSize);
+            int present = (int) Math.min(header.capacity, Math.max(0, channel.size() - TableHeader.SIZE) / recordSize);
+            return new Layout(header, TableHeader.SIZE, present, header.capacity - present);
+        }
+    }
+
+    /**
+     * What one thread found in one chunk of slots.
+     */
+    private static final class Chunk {
+        long[] live = new long[64];
+        int liveCount;
+        int tombstones;
+        int emptySlots;
+        int corrupt;
+        int checksumFailures;
+        final List<String> problems = new ArrayList<>();
+
+        void addLive(int key, int slot) {
+            if (liveCount == live.length) {
+                live = Arrays.copyOf(live, liveCount * 2);
+            }
+            live[liveCount++] = pack(key, slot);
+        }
+
+        void checksumFailure(int slot) {
+            checksumFailures++;
+            if (problems.size() < SAMPLE_LIMIT) {
+                problems.add("slot " + slot + ": checksum mismatch");
+            }
+        }
+
+        void corrupt(int slot, String description) {
+            corrupt++;
+            if (problems.size() < SAMPLE_LIMIT) {
+                problems.add("slot " + slot + ": " + description);
+            }
+        }
+    }
+
+    /**
+     * The chunks of one scan put together, and the checks that need all of them.
+     */
+    private static final class Scan {
+        private final Layout layout;
+        private final int recordSize;
+        private final long[] live; // sorted
+        private final int tombstones;
+        private final int emptySlots;
+        private final int corrupt;
+        private final int checksumFailures;
+        private final List<String> problems = new ArrayList<>();
+        private int duplicates;
+        private int brokenChains;
+        private int orphaned;
+        private int unindexed;
+        private final boolean countsMatch;
+        private final long elapsedNanos;
+
+        Scan(Layout layout, BinaryParser<?> parser, Chunk[] chunks, long[] empty, SlotIndex index, int expectedLive,
+             int expectedTombstones, long started) {
+            this.layout = layout;
+            this.recordSize = parser.getSize();
+            int liveCount = 0;
+            int tombstones = 0;
+            int emptySlots = 0;
+            int corrupt = layout.missingSlots;
+            int checksumFailures = 0;
+            if (layout.missingSlots > 0) {
+                problems.add("file ends " + layout.missingSlots + " slots short of the capacity in its header");
+            }
+            for (Chunk chunk : chunks) {
+                liveCount += chunk.liveCount;
+                tombstones += chunk.tombstones;
+                emptySlots += chunk.emptySlots;
+                corrupt += chunk.corrupt;
+                checksumFailures += chunk.checksumFailures;
+                problems.addAll(chunk.problems);
+            }
+            long[] live = new long[liveCount];
+            int filled = 0;
+            for (Chunk chunk : chunks) {
+                System.arraycopy(chunk.live, 0, live, filled, chunk.liveCount);
+                filled += chunk.liveCount;
+            }
+            Arrays.parallelSort(live);
+            this.live = live;
+            this.tombstones = tombstones;
+            this.emptySlots = emptySlots;
+            this.corrupt = corrupt;
+            this.checksumFailures = checksumFailures;
+
+            findDuplicates();
+            if (parser.getKeyOffset() >= 0 && parser.getFlagOffset() >= 0) {
+                checkProbeChains(empty);
+            }
+            if (index != null) {
+                checkIndex(index);
+            }
+            int distinct = live.length - duplicates;
+            this.countsMatch = (expectedLive < 0 || expectedLive == distinct)
+                    && (expectedTombstones < 0 || expectedTombstones == tombstones);
+            if (!countsMatch) {
+                problems.add(distinct + " live records and " + tombstones + " tombstones, expected " + expectedLive
+                        + " and " + expectedTombstones);
+            }
+            this.elapsedNanos = System.nanoTime() - started;
+        }
+
+        private void findDuplicates() {
+            for (int i = 1; i < live.length; i++) {
+                if (keyOf(live[i]) == keyOf(live[i - 1])) {
+                    duplicates++;
+                    problem("slot " + slotOf(live[i]) + ": key " + keyOf(live[i]) + " is also in slot "
+                            + slotOf(live[i - 1]));
+                }
+            }
+        }
+
+        private void checkProbeChains(long[] empty) {
+            int capacity = layout.capacity;
+            int[] broken = IntStream.range(0, live.length).parallel()
+                    .filter(i -> brokenChain(live[i], capacity, empty))
+                    .toArray();
+            brokenChains = broken.length;
+            for (int i : broken) {
+                problem("slot " + slotOf(live[i]) + ": key " + keyOf(live[i]) + " cannot be reached from its home slot "
+                        + HashBasedDatabase.homeSlot(keyOf(live[i]), capacity));
+            }
+        }
+
+        private static boolean brokenChain(long packed, int capacity, long[] empty) {
+            int slot = slotOf(packed);
+            int home = HashBasedDatabase.homeSlot(keyOf(packed), capacity);
+            if (Math.floorMod(slot - home, capacity) >= HashBasedDatabase.MAX_HASH_FAILS) {
+                return true;
+            }
+            for (int s = home; s != slot; s = (s + 1) % capacity) {
+                if (isEmpty(empty, s)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void checkIndex(SlotIndex index) {
+            SlotIndex.Snapshot snapshot = index.snapshot();
+            int matched = 0;
+            for (int position = 0; position < snapshot.length(); position++) {
+                if (!snapshot.isLive(position)) {
+                    continue;
+                }
+                int key = snapshot.keyAt(position);
+                int slot = snapshot.slotAt(position);
+                if (Arrays.binarySearch(live, pack(key, slot)) >= 0) {
+                    matched++;
+                } else {
+                    orphaned++;
+                    problem("slot index maps key " + key + " to slot " + slot + ", which does not hold it");
+                }
+            }
+            unindexed = live.length - duplicates - matched;
+        }
+
+        private void problem(String description) {
+            if (problems.size() < SAMPLE_LIMIT) {
+                problems.add(description);
+            }
+        }
+
+        /**
+         * @return The earliest slot of every live key.
+         */
+        int[] firstSlotOfEachKey() {
+            int[] slots = new int[live.length - duplicates];
+            int count = 0;
+            for (int i = 0; i < live.length; i++) {
+                if (i == 0 || keyOf(live[i]) != keyOf(live[i - 1])) {
+                    slots[count++] = slotOf(live[i]);
+                }
+            }
+            return slots;
+        }
+
+        VerificationReport report() {
+            List<String> sample = problems.size() > SAMPLE_LIMIT ? problems.subList(0, SAMPLE_LIMIT) : problems;
+            return new VerificationReport(layout.capacity + layout.missingSlots, live.length, tombstones, emptySlots,
+                    corrupt, checksumFailures, duplicates, brokenChains, orphaned, unindexed, countsMatch, sample,
+                    (long) layout.capacity * recordSize, elapsedNanos);
+        }
+    }
+}
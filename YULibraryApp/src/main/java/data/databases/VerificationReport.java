@@ -0,0 +1,171 @@
+package data.databases;
+
+import java.util.List;
+
+/**
+ * What {@link TableVerifier} found in one {@link HashBasedDatabase} table: how the slots divide into live records,
+ * tombstones and empty slots, and how many of each kind of damage turned up.
+ * <p>{@link #getProblems()} describes the first {@value TableVerifier#SAMPLE_LIMIT} problems by slot; the counts
+ * cover all of them.</p>
+ */
+public final class VerificationReport {
+    private final int capacity;
+    private final int liveRecords;
+    private final int tombstones;
+    private final int emptySlots;
+    private final int corruptRecords;
+    private final int checksumFailures;
+    private final int duplicateKeys;
+    private final int brokenChains;
+    private final int orphanedIndexEntries;
+    private final int unindexedRecords;
+    private final boolean countsMatch;
+    private final List<String> problems;
+    private final long bytesScanned;
+    private final long elapsedNanos;
+
+    VerificationReport(int capacity, int liveRecords, int tombstones, int emptySlots, int corruptRecords,
+                       int checksumFailures, int duplicateKeys, int brokenChains, int orphanedIndexEntries,
+                       int unindexedRecords, boolean countsMatch, List<String> problems, long bytesScanned, long elapsedNanos) {
+        this.capacity = capacity;
+        this.liveRecords = liveRecords;
+        this.tombstones = tombstones;
+        this.emptySlots = emptySlots;
+        this.corruptRecords = corruptRecords;
+        this.checksumFailures = checksumFailures;
+        this.duplicateKeys = duplicateKeys;
+        this.brokenChains = brokenChains;
+        this.orphanedIndexEntries = orphanedIndexEntries;
+        this.unindexedRecords = unindexedRecords;
+        this.countsMatch = countsMatch;
+        this.problems = List.copyOf(problems);
+        this.bytesScanned = bytesScanned;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return Whether the table shows no damage of any kind.
+     */
+    public boolean isClean() {
+        return corruptRecords == 0 && checksumFailures == 0 && duplicateKeys == 0 && brokenChains == 0 && orphanedIndexEntries == 0
+                && unindexedRecords == 0 && countsMatch;
+    }
+
+    /**
+     * @return The number of slots in the table.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return The number of slots holding a record that decoded cleanly, duplicates included.
+     */
+    public int getLiveRecords() {
+        return liveRecords;
+    }
+
+    /**
+     * @return The number of slots holding a tombstone.
+     */
+    public int getTombstoneCount() {
+        return tombstones;
+    }
+
+    /**
+     * @return The number of slots never written.
+     */
+    public int getEmptySlots() {
+        return emptySlots;
+    }
+
+    /**
+     * @return The number of slots whose flag byte is invalid or whose record does not decode to its own key.
+     */
+    public int getCorruptRecords() {
+        return corruptRecords;
+    }
+
+    /**
+     * @return The number of live records that do not match their checksum; 0 for formats without one.
+     */
+    public int getChecksumFailures() {
+        return checksumFailures;
+    }
+
+    /**
+     * @return The number of live records whose key is also held by a live record in an earlier slot.
+     */
+    public int getDuplicateKeys() {
+        return duplicateKeys;
+    }
+
+    /**
+     * @return The number of live records no insert could have put where they are: too far from their home slot, or
+     * behind an empty slot that would have stopped the probe.
+     */
+    public int getBrokenChains() {
+        return brokenChains;
+    }
+
+    /**
+     * @return The number of slot index entries pointing at a slot that does not hold their key.
+     */
+    public int getOrphanedIndexEntries() {
+        return orphanedIndexEntries;
+    }
+
+    /**
+     * @return The number of live keys the slot index does not lead to; 0 if there was no index to check against.
+     */
+    public int getUnindexedRecords() {
+        return unindexedRecords;
+    }
+
+    /**
+     * @return Whether the live and tombstone counts agree with the ones the table header or the open database keeps.
+     */
+    public boolean isCountsMatch() {
+        return countsMatch;
+    }
+
+    /**
+     * @return A description of each of the first problems found, by slot.
+     */
+    public List<String> getProblems() {
+        return problems;
+    }
+
+    /**
+     * @return The bytes of slots read.
+     */
+    public long getBytesScanned() {
+        return bytesScanned;
+    }
+
+    /**
+     * @return How long the scan and the checks after it took.
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "clean=" + isClean() +
+                " capacity=" + capacity +
+                " liveRecords=" + liveRecords +
+                " tombstones=" + tombstones +
+                " emptySlots=" + emptySlots +
+                " corruptRecords=" + corruptRecords +
+                " checksumFailures=" + checksumFailures +
+                " duplicateKeys=" + duplicateKeys +
+                " brokenChains=" + brokenChains +
+                " orphanedIndexEntries=" + orphanedIndexEntries +
+                " unindexedRecords=" + unindexedRecords +
+                " countsMatch=" + countsMatch +
+                " scannedMB=" + bytesScanned / (1 << 20) +
+                " elapsedMs=" + elapsedNanos / 1_000_000 +
+                " mbPerSecond=" + String.format("%.1f", bytesScanned / (double) (1 << 20) / Math.max(1e-9, elapsedNanos / 1e9));
+    }
+}
@@ -0,0 +1,237 @@
+package data.databases;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * An append-only write-ahead log split into numbered segment files ({@code <base>.wal.<N>}).
+ * <p>Entries are appended sequentially and made durable in group-commit batches: the first thread to call
+ * {@link #sync(long)} after an append forces the segment, and every entry appended before that force is covered,
+ * so concurrent writers share one fsync. {@link #roll()} seals the current segment so that, once its entries are
+ * safely in the table, {@link #discardThrough(long)} can delete it.</p>
+ *
+ * <p>Entry layout: | Length (4 bytes) | CRC32 (4 bytes) | Type (1 byte) | Key length (2 bytes) | Key | Payload |.
+ * A torn entry at the tail of the last segment fails its length or CRC check and ends the replay.</p>
+ */
+public class WriteAheadLog implements Closeable {
+
+    public static final byte PUT = 1;
+    public static final byte DELETE = 2;
+
+    private static final Logger LOGGER = Logger.getLogger(WriteAheadLog.class.getName());
+    private static final int ENTRY_HEADER_SIZE = 2 * Integer.BYTES;
+
+    private final Path directory;
+    private final String prefix;
+    private final Object appendLock = new Object();
+    private final Object syncLock = new Object();
+    private FileChannel channel; // guarded by appendLock
+    private long segment; // guarded by appendLock
+    private long appendedLsn; // guarded by appendLock
+    private volatile long durableLsn;
+
+    /**
+     * Opens the log for a table. Existing segments are left in place for {@link #replay(BiConsumer)}; new entries
+     * go to a fresh segment numbered after them.
+     *
+     * @param basePath The path of the table file the log belongs to.
+     * @throws IOException If the segment cannot be created.
+     */
+    public WriteAheadLog(String basePath) throws IOException {
+        Path base = Path.of(basePath).toAbsolutePath();
+        this.directory = base.getParent();
+        this.prefix = base.getFileName() + ".wal.";
+        List<Long> existing = segments();
+        this.segment = existing.isEmpty() ? 0 : existing.get(existing.size() - 1) + 1;
+        this.channel = openSegment(segment);
+    }
+
+    /**
+     * Appends one entry to the current segment. The entry is not durable until {@link #sync(long)} is called with the
+     * returned sequence number.
+     *
+     * @param type    {@link #PUT} or {@link #DELETE}.
+     * @param key     The record key.
+     * @param payload The serialized record, or {@code null} for a delete.
+     * @return The log sequence number just past the entry.
+     * @throws IOException If the entry cannot be written.
+     */
+    public long append(byte type, String key, byte[] payload) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int payloadSize = payload == null ? 0 : payload.length;
+        int bodySize = Byte.BYTES + Short.BYTES + keyBytes.length + payloadSize;
+
+        ByteBuffer buffer = ByteBuffer.allocate(ENTRY_HEADER_SIZE + bodySize);
+        buffer.putInt(bodySize);
+        buffer.putInt(0); // CRC placeholder
+        buffer.put(type);
+        buffer.putShort((short) keyBytes.length);
+        buffer.put(keyBytes);
+        if (payload != null) {
+            buffer.put(payload);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), ENTRY_HEADER_SIZE, bodySize);
+        buffer.putInt(Integer.BYTES, (int) crc.getValue());
+        buffer.flip();
+
+        synchronized (appendLock) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            appendedLsn += buffer.limit();
+            return appendedLsn;
+        }
+    }
+
+    /**
+     * Blocks until every entry up to {@code lsn} is on disk. Callers that arrive while another thread is forcing the
+     * segment wait for it and usually find their entry already covered.
+     *
+     * @param lsn A sequence number returned by {@link #append(byte, String, byte[])}.
+     * @throws IOException If the segment cannot be forced.
+     */
+    public void sync(long lsn) throws IOException {
+        if (durableLsn >= lsn) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (durableLsn >= lsn) {
+                return; // covered by the batch the previous leader forced
+            }
+            FileChannel target;
+            long batchEnd;
+            synchronized (appendLock) {
+                target = channel;
+                batchEnd = appendedLsn;
+            }
+            target.force(false);
+            durableLsn = batchEnd;
+        }
+    }
+
+    /**
+     * Seals the current segment and starts a new one.
+     *
+     * @return The number of the sealed segment.
+     * @throws IOException If the segments cannot be forced, closed or created. If the new segment cannot be created,
+     *                     the current one stays open and keeps taking appends.
+     */
+    public long roll() throws IOException {
+        synchronized (syncLock) {
+            synchronized (appendLock) {
+                channel.force(false);
+                durableLsn = appendedLsn;
+                // The next segment must exist before the current one is given up, or a failed open leaves no channel
+                FileChannel next = openSegment(segment + 1);
+                FileChannel sealedChannel = channel;
+                long sealed = segment++;
+                channel = next;
+                sealedChannel.close();
+                return sealed;
+            }
+        }
+    }
+
+    /**
+     * Deletes every sealed segment up to and including {@code sealedSegment}.
+     *
+     * @param sealedSegment A segment number returned by {@link #roll()}.
+     * @throws IOException If a segment cannot be deleted.
+     */
+    public void discardThrough(long sealedSegment) throws IOException {
+        for (long candidate : segments()) {
+            if (candidate <= sealedSegment) {
+                Files.deleteIfExists(segmentPath(candidate));
+            }
+        }
+    }
+
+    /**
+     * Replays every entry of the segments that existed before this log was opened, oldest first.
+     *
+     * @param consumer Receives the key and payload of each entry; the payload is {@code null} for deletes.
+     * @return The number of entries replayed.
+     * @throws IOException If a segment cannot be read.
+     */
+    public int replay(BiConsumer<String, byte[]> consumer) throws IOException {
+        int replayed = 0;
+        for (long candidate : segments()) {
+            if (candidate >= segment) {
+                break;
+            }
+            ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(segmentPath(candidate)));
+            while (data.remaining() >= ENTRY_HEADER_SIZE) {
+                int bodySize = data.getInt();
+                int expectedCrc = data.getInt();
+                if (bodySize < Byte.BYTES + Short.BYTES || bodySize > data.remaining()) {
+                    LOGGER.warning("TORN WAL ENTRY IN SEGMENT " + candidate + ", STOPPING REPLAY");
+                    return replayed;
+                }
+                CRC32 crc = new CRC32();
+                crc.update(data.array(), data.position(), bodySize);
+                if ((int) crc.getValue() != expectedCrc) {
+                    LOGGER.warning("CORRUPT WAL ENTRY IN SEGMENT " + candidate + ", STOPPING REPLAY");
+                    return replayed;
+                }
+                byte type = data.get();
+                byte[] keyBytes = new byte[data.getShort()];
+                data.get(keyBytes);
+                byte[] payload = null;
+                if (type == PUT) {
+                    payload = new byte[bodySize - Byte.BYTES - Short.BYTES - keyBytes.length];
+                    data.get(payload);
+                }
+                consumer.accept(new String(keyBytes, StandardCharsets.UTF_8), payload);
+                replayed++;
+            }
+        }
+        return replayed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (syncLock) {
+            synchronized (appendLock) {
+                channel.force(false);
+                channel.close();
+            }
+        }
+    }
+
+    private FileChannel openSegment(long number) throws IOException {
+        return FileChannel.open(segmentPath(number), CREATE, WRITE, APPEND);
+    }
+
+    private Path segmentPath(long number) {
+        return directory.resolve(prefix + number);
+    }
+
+    private List<Long> segments() throws IOException {
+        List<Long> numbers = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, prefix + "*")) {
+            for (Path file : stream) {
+                try {
+                    numbers.add(Long.parseLong(file.getFileName().toString().substring(prefix.length())));
+                } catch (NumberFormatException ignored) {
+                    // not one of our segments
+                }
+            }
+        }
+        numbers.sort(null);
+        return numbers;
+    }
+}
@@ -4,6 +4,8 @@ import data.Record;
 import data.binary.datums.Datum;
 import data.parsers.IDataParser;
 
+import java.util.Arrays;
+
 /**
  * Extends the IDataParser interface for binary data, specialized for converting between byte arrays and records of a specific Datum type.
  *
@@ -17,4 +19,63 @@ public interface BinaryParser<T extends Datum> extends IDataParser<byte[], Recor
      * @return The size of the data.
      */
     int getSize();
-}
\ No newline at end of file
+
+    /**
+     * Decodes a record from the first {@code length} bytes of {@code data}, so a record can be read out of a larger
+     * buffer, e.g. one that also holds a trailer, without copying it first. Fixed-size parsers override this; the
+     * default copies the bytes out.
+     *
+     * @param data   The buffer holding the record at its start.
+     * @param length The length of the record within {@code data}.
+     * @return The decoded record.
+     */
+    default Record<T> parseData(byte[] data, int length) {
+        return parseData(data.length == length ? data : Arrays.copyOf(data, length));
+    }
+
+    /**
+     * Gets the offset of the record key within the binary form, so a table can compare keys in place without decoding
+     * the record. The key is stored as a big-endian int, like {@link java.nio.ByteBuffer#putInt(int)} writes it.
+     *
+     * @return The offset of the key, or -1 if the key cannot be read without decoding the record.
+     */
+    default int getKeyOffset() {
+        return -1;
+    }
+
+    /**
+     * Gets the width of the key stored at {@link #getKeyOffset()}.
+     *
+     * @return The width of the key in bytes.
+     */
+    default int getKeyWidth() {
+        return Integer.BYTES;
+    }
+
+    /**
+     * Gets the offset of the byte backing {@link Datum#getFlag()}: 1 when the flag is set, 0 otherwise.
+     *
+     * @return The offset of the flag byte, or -1 if the flag cannot be read without decoding the record.
+     */
+    default int getFlagOffset() {
+        return -1;
+    }
+
+    /**
+     * Checks a record against the checksum stored in it, for formats that carry one; see {@link ChecksummedBinaryParser}.
+     *
+     * @param data The binary form of a record.
+     * @return Whether the record is intact as far as its checksum can tell; always {@code true} for formats without one.
+     */
+    default boolean checksumMatches(byte[] data) {
+        return true;
+    }
+
+    /**
+     * Forces to disk whatever records refer to outside themselves, such as new {@link StringDictionary} entries. A table
+     * calls it before records it encoded become durable: before syncing its log, and when flushing. Does nothing for
+     * formats that keep everything in the record.
+     */
+    default void sync() {
+    }
+}
\ No newline at end of file
@@ -0,0 +1,21 @@
+package data.parsers.binary;
+
+/**
+ * When a {@link ChecksummedBinaryParser} checks a record against its CRC32C trailer while decoding it. A scan by
+ * {@link data.databases.TableVerifier} checks every record whatever the setting.
+ */
+public enum ChecksumVerification {
+    /**
+     * Every record decoded is checked, so a torn record is never returned.
+     */
+    EVERY_READ,
+    /**
+     * One record in {@link ChecksummedBinaryParser#getSampleEvery()} is checked, picked at random, so damage shows up
+     * in normal use at a fraction of the cost.
+     */
+    SAMPLED,
+    /**
+     * Records are only checked by verifier scans; reads pay for nothing but the trailer's four bytes.
+     */
+    SCANS_ONLY
+}
@@ -0,0 +1,165 @@
+package data.parsers.binary;
+
+import data.Record;
+import data.binary.datums.Datum;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.CRC32C;
+
+/**
+ * Adds a CRC32C trailer to the fixed-size records of another parser, so a record torn by a crash during a flush is
+ * caught instead of decoding into garbage:
+ * <pre>
+ * | Record of the wrapped parser (`parser.getSize()` bytes) | CRC32C of those bytes (4 bytes) |
+ * </pre>
+ * The wrapped layout is unchanged, so its key and flag offsets still hold.
+ * <p>A table written with a trailer holds larger records than one written without, so it must always be opened with
+ * the same wrapping; the table header rejects the other size. A slot that was never written is all zeros, trailer
+ * included, and counts as intact.</p>
+ *
+ * @param <T> The Datum type of the wrapped parser.
+ */
+public class ChecksummedBinaryParser<T extends Datum> implements BinaryParser<T> {
+
+    public static final int CHECKSUM_SIZE = Integer.BYTES;
+
+    /**
+     * With {@link ChecksumVerification#SAMPLED}, the default share of reads checked is one in this many.
+     */
+    public static final int DEFAULT_SAMPLE_EVERY = 64;
+
+    private static final VarHandle INT_VIEW = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+    private static final ThreadLocal<CRC32C> CRC = ThreadLocal.withInitial(CRC32C::new); // reset before each use
+
+    private final BinaryParser<T> parser;
+    private final ChecksumVerification verification;
+    private final int sampleEvery;
+    private final int payloadSize;
+
+    /**
+     * Checks every record read.
+     */
+    public ChecksummedBinaryParser(BinaryParser<T> parser) {
+        this(parser, ChecksumVerification.EVERY_READ, DEFAULT_SAMPLE_EVERY);
+    }
+
+    public ChecksummedBinaryParser(BinaryParser<T> parser, ChecksumVerification verification) {
+        this(parser, verification, DEFAULT_SAMPLE_EVERY);
+    }
+
+    /**
+     * @param parser       The parser of the records to protect.
+     * @param verification When decoding a record checks it.
+     * @param sampleEvery  With {@link ChecksumVerification#SAMPLED}, check one read in this many on average.
+     * @throws IllegalArgumentException If {@code sampleEvery} is not positive.
+     */
+    public ChecksummedBinaryParser(BinaryParser<T> parser, ChecksumVerification verification, int sampleEvery) {
+        if (sampleEvery <= 0) {
+            throw new IllegalArgumentException("sampleEvery must be positive: " + sampleEvery);
+        }
+        this.parser = parser;
+        this.verification = verification;
+        this.sampleEvery = sampleEvery;
+        this.payloadSize = parser.getSize();
+    }
+
+    @Override
+    public byte[] getData(Record<T> obj) {
+        byte[] data = Arrays.copyOf(parser.getData(obj), payloadSize + CHECKSUM_SIZE);
+        INT_VIEW.set(data, payloadSize, checksum(data));
+        return data;
+    }
+
+    /**
+     * Decodes a record, checking it first if the verification setting says so. The wrapped parser reads the payload in
+     * place, trailer and all, so a read costs no copy of the record.
+     *
+     * @throws IllegalArgumentException If the record has the wrong length, or was checked and does not match its
+     *                                  checksum.
+     */
+    @Override
+    public Record<T> parseData(byte[] data) {
+        if (data.length != payloadSize + CHECKSUM_SIZE) {
+            throw new IllegalArgumentException("Invalid data length: " + data.length);
+        }
+        if (shouldVerify() && !checksumMatches(data)) {
+            boolean keyInPlace = getKeyOffset() >= 0 && getKeyWidth() == Integer.BYTES;
+            throw new IllegalArgumentException("Checksum mismatch in record"
+                    + (keyInPlace ? " of key " + (int) INT_VIEW.get(data, getKeyOffset()) : ""));
+        }
+        return parser.parseData(data, payloadSize);
+    }
+
+    /**
+     * @return Whether the trailer matches the record, or the whole record is zeros: a slot never written.
+     */
+    @Override
+    public boolean checksumMatches(byte[] data) {
+        if ((int) INT_VIEW.get(data, payloadSize) == checksum(data)) {
+            return true;
+        }
+        for (byte b : data) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void sync() {
+        parser.sync();
+    }
+
+    private boolean shouldVerify() {
+        switch (verification) {
+            case EVERY_READ:
+                return true;
+            case SAMPLED:
+                return sampleEvery == 1 || ThreadLocalRandom.current().nextInt(sampleEvery) == 0;
+            case SCANS_ONLY:
+            default:
+                return false;
+        }
+    }
+
+    private int checksum(byte[] data) {
+        CRC32C crc = CRC.get();
+        crc.reset();
+        crc.update(data, 0, payloadSize);
+        return (int) crc.getValue();
+    }
+
+    public ChecksumVerification getVerification() {
+        return verification;
+    }
+
+    public int getSampleEvery() {
+        return sampleEvery;
+    }
+
+    @Override
+    public int getSize() {
+        return payloadSize + CHECKSUM_SIZE;
+    }
+
+    @Override
+    public int getKeyOffset() {
+        return parser.getKeyOffset();
+    }
+
+    @Override
+    public int getKeyWidth() {
+        return parser.getKeyWidth();
+    }
+
+    @Override
+    public int getFlagOffset() {
+        return parser.getFlagOffset();
+    }
+}
@@ -58,4 +58,15 @@ public class CourseDatumRecordParser implements BinaryParser<CourseDatum> {
     public int getSize() {
         return RECORD_SIZE;
     }
+
+    // | Flag (1 byte) | Course ID (4 bytes) | ... ; the course id doubles as the record key
+    @Override
+    public int getKeyOffset() {
+        return Byte.BYTES;
+    }
+
+    @Override
+    public int getFlagOffset() {
+        return 0;
+    }
 }
@@ -8,24 +8,59 @@ import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
 public class ItemDatumBinaryParser implements IDataParser<byte[], ItemDatum> {
+    /**
+     * The size of an item when its author and location are {@link StringDictionary} codes.
+     */
+    public static final int DICTIONARY_ITEM_DATUM_SIZE = ItemDatum.ITEM_DATUM_SIZE - ItemDatum.AUTHOR_LENGTH
+            - ItemDatum.LOCATION_LENGTH + 2 * Integer.BYTES;
+
+    private final StringDictionary dictionary;
+
+    public ItemDatumBinaryParser() {
+        this(null);
+    }
+
+    /**
+     * @param dictionary The dictionary holding authors and locations, which the record then stores as 4-byte codes,
+     *                   or {@code null} to store them inline, padded to their full width.
+     */
+    public ItemDatumBinaryParser(StringDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * @return The number of bytes {@link #getData(ItemDatum)} writes.
+     */
+    public int getSize() {
+        return dictionary == null ? ItemDatum.ITEM_DATUM_SIZE : DICTIONARY_ITEM_DATUM_SIZE;
+    }
+
     @Override
     public byte[] getData(ItemDatum obj) {
-        ByteBuffer buffer = ByteBuffer.allocate(ItemDatum.ITEM_DATUM_SIZE);
+        ByteBuffer buffer = ByteBuffer.allocate(getSize());
 
         buffer.putLong(obj.itemId);
         buffer.put(Arrays.copyOf(obj.title.getBytes(StandardCharsets.UTF_8), ItemDatum.TITLE_LENGTH));
-        buffer.put(Arrays.copyOf(obj.author.getBytes(StandardCharsets.UTF_8), ItemDatum.AUTHOR_LENGTH));
+        if (dictionary != null) {
+            buffer.putInt(dictionary.encode(obj.author));
+        } else {
+            buffer.put(Arrays.copyOf(obj.author.getBytes(StandardCharsets.UTF_8), ItemDatum.AUTHOR_LENGTH));
+        }
         buffer.put((byte) (obj.enabled ? 1 : 0));
         buffer.putInt(obj.getCopiesAvailable());
         buffer.put((byte) (obj.isLost() ? 1 : 0));
-        buffer.put(Arrays.copyOf(obj.getLocation().getBytes(StandardCharsets.UTF_8), ItemDatum.LOCATION_LENGTH));
+        if (dictionary != null) {
+            buffer.putInt(dictionary.encode(obj.getLocation()));
+        } else {
+            buffer.put(Arrays.copyOf(obj.getLocation().getBytes(StandardCharsets.UTF_8), ItemDatum.LOCATION_LENGTH));
+        }
 
         return buffer.array();
     }
 
     @Override
     public ItemDatum parseData(byte[] bytes) {
-        if (bytes.length != ItemDatum.ITEM_DATUM_SIZE) {
+        if (bytes.length != getSize()) {
             throw new IllegalArgumentException("Invalid data length: " + bytes.length);
         }
 
@@ -37,17 +72,25 @@ public class ItemDatumBinaryParser implements IDataParser<byte[], ItemDatum> {
         buffer.get(titleBytes);
         obj.title = new String(titleBytes, StandardCharsets.UTF_8).trim();
 
-        byte[] authorBytes = new byte[ItemDatum.AUTHOR_LENGTH];
-        buffer.get(authorBytes);
-        obj.author = new String(authorBytes, StandardCharsets.UTF_8).trim();
+        if (dictionary != null) {
+            obj.author = dictionary.decode(buffer.getInt());
+        } else {
+            byte[] authorBytes = new byte[ItemDatum.AUTHOR_LENGTH];
+            buffer.get(authorBytes);
+            obj.author = new String(authorBytes, StandardCharsets.UTF_8).trim();
+        }
 
         obj.enabled = buffer.get() == 1;
         obj.setCopiesAvailable(buffer.getInt());
         obj.setLost(buffer.get() == 1);
 
-        byte[] locationBytes = new byte[ItemDatum.LOCATION_LENGTH];
-        buffer.get(locationBytes);
-        obj.setLocation(new String(locationBytes, StandardCharsets.UTF_8).trim());
+        if (dictionary != null) {
+            obj.setLocation(dictionary.decode(buffer.getInt()));
+        } else {
+            byte[] locationBytes = new byte[ItemDatum.LOCATION_LENGTH];
+            buffer.get(locationBytes);
+            obj.setLocation(new String(locationBytes, StandardCharsets.UTF_8).trim());
+        }
 
         return obj;
     }
@@ -14,11 +14,27 @@ public class ItemDatumRecordBinaryParser implements BinaryParser<ItemDatum> {
     // Assuming ItemDatum.ITEM_DATUM_SIZE is correctly defined in your ItemDatum class
     public static final int RECORD_SIZE = KEY_SIZE + TIMESTAMP_SIZE + ItemDatum.ITEM_DATUM_SIZE;
 
-    private final ItemDatumBinaryParser itemDatumBinaryParser = new ItemDatumBinaryParser();
+    private final ItemDatumBinaryParser itemDatumBinaryParser;
+    private final StringDictionary dictionary;
+    private final int recordSize;
+
+    public ItemDatumRecordBinaryParser() {
+        this(null);
+    }
+
+    /**
+     * @param dictionary The dictionary to store repeated strings in; see {@link ItemDatumBinaryParser#ItemDatumBinaryParser(StringDictionary)}.
+     *                   A table must be reopened with the same dictionary, or none, as it was written with.
+     */
+    public ItemDatumRecordBinaryParser(StringDictionary dictionary) {
+        this.itemDatumBinaryParser = new ItemDatumBinaryParser(dictionary);
+        this.dictionary = dictionary;
+        this.recordSize = KEY_SIZE + TIMESTAMP_SIZE + itemDatumBinaryParser.getSize();
+    }
 
     @Override
     public byte[] getData(Record<ItemDatum> obj) {
-        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+        ByteBuffer buffer = ByteBuffer.allocate(recordSize);
 
         byte[] itemBytes = itemDatumBinaryParser.getData(obj.getEntry());
         buffer.putInt(Integer.parseInt(obj.getKey()));
@@ -31,11 +47,16 @@ public class ItemDatumRecordBinaryParser implements BinaryParser<ItemDatum> {
 
     @Override
     public Record<ItemDatum> parseData(byte[] data) {
-        if (data.length != RECORD_SIZE) {
-            throw new IllegalArgumentException("Invalid data length: " + data.length);
+        return parseData(data, data.length);
+    }
+
+    @Override
+    public Record<ItemDatum> parseData(byte[] data, int length) {
+        if (length != recordSize || data.length < length) {
+            throw new IllegalArgumentException("Invalid data length: " + length);
         }
 
-        ByteBuffer buffer = ByteBuffer.wrap(data);
+        ByteBuffer buffer = ByteBuffer.wrap(data, 0, length);
 
         // Parse key, timestamp seconds, and nanoseconds from the buffer
         int key = buffer.getInt();
@@ -55,6 +76,13 @@ public class ItemDatumRecordBinaryParser implements BinaryParser<ItemDatum> {
 
     @Override
     public int getSize() {
-        return RECORD_SIZE;
+        return recordSize;
+    }
+
+    @Override
+    public void sync() {
+        if (dictionary != null) {
+            dictionary.sync();
+        }
     }
 }
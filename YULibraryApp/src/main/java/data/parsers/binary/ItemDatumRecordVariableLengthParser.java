@@ -0,0 +1,49 @@
+package data.parsers.binary;
+
+import data.Record;
+import data.binary.datums.ItemDatum;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+
+import static data.parsers.binary.VariableLengthEncoding.*;
+
+// | Key (4 bytes) | Epoch Seconds (varint) | Nanoseconds (varint) | Item ID (varint) | Title | Author | Enabled (1 byte) |
+// | Copies Available (varint) | Lost (1 byte) | Location |
+// Strings are a varint length followed by their UTF-8 bytes, at full length.
+public class ItemDatumRecordVariableLengthParser implements VariableLengthBinaryParser<ItemDatum> {
+
+    @Override
+    public byte[] getData(Record<ItemDatum> obj) {
+        ItemDatum item = obj.getEntry();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        writeKey(out, obj.getKey());
+        writeTimestamp(out, obj.getTimestamp());
+        writeLong(out, item.itemId);
+        writeString(out, item.title);
+        writeString(out, item.author);
+        out.write(item.enabled ? 1 : 0);
+        writeLong(out, item.getCopiesAvailable());
+        out.write(item.isLost() ? 1 : 0);
+        writeString(out, item.getLocation());
+        return out.toByteArray();
+    }
+
+    @Override
+    public Record<ItemDatum> parseData(byte[] data) {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        String key = readKey(buffer);
+        Instant timestamp = readTimestamp(buffer);
+
+        ItemDatum item = new ItemDatum();
+        item.itemId = readLong(buffer);
+        item.title = readString(buffer);
+        item.author = readString(buffer);
+        item.enabled = buffer.get() == 1;
+        item.setCopiesAvailable(readInt(buffer));
+        item.setLost(buffer.get() == 1);
+        item.setLocation(readString(buffer));
+        return new Record<>(key, item, timestamp);
+    }
+}
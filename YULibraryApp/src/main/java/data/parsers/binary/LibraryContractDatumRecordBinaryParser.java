@@ -14,6 +14,9 @@ public class LibraryContractDatumRecordBinaryParser implements BinaryParser<Libr
 
     public static final int RECORD_SIZE = KEY_SIZE + TIMESTAMP_SIZE + LibraryContractDatum.LIBRARY_CONTRACT_DATUM_SIZE;
 
+    // The `enabled` byte is written last, after the id, user id and item id
+    private static final int FLAG_OFFSET = RECORD_SIZE - Byte.BYTES;
+
     @Override
     public byte[] getData(Record<LibraryContractDatum> obj) {
         ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
@@ -34,8 +37,13 @@ public class LibraryContractDatumRecordBinaryParser implements BinaryParser<Libr
 
     @Override
     public Record<LibraryContractDatum> parseData(byte[] data) {
+        return parseData(data, data.length);
+    }
 
-        ByteBuffer buffer = ByteBuffer.wrap(data);
+    @Override
+    public Record<LibraryContractDatum> parseData(byte[] data, int length) {
+
+        ByteBuffer buffer = ByteBuffer.wrap(data, 0, length);
 
         // Directly parse the key, seconds, and nano from the buffer
         int key = buffer.getInt();
@@ -58,4 +66,14 @@ public class LibraryContractDatumRecordBinaryParser implements BinaryParser<Libr
     public int getSize() {
         return RECORD_SIZE;
     }
+
+    @Override
+    public int getKeyOffset() {
+        return 0;
+    }
+
+    @Override
+    public int getFlagOffset() {
+        return FLAG_OFFSET;
+    }
 }
@@ -0,0 +1,230 @@
+package data.parsers.binary;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * A file of distinct strings, each known by a dense int code, so a fixed-size record can store a 4-byte code in place
+ * of a padded string field. Strings that repeat across records, such as authors and shelf locations, are kept once.
+ * <p>Code 0 is the empty string and is never stored, so a zero-filled record decodes to empty strings, the same as a
+ * zero-filled padded field does.</p>
+ * <p>Email addresses are unique but their domains are not, so a string with an {@code @} past its first character is
+ * stored as its local part plus the code of its {@code @domain}, which is an entry of its own.</p>
+ * <p>The file is memory-mapped and only ever appended to: a code, once handed out, decodes to the same string for the
+ * life of the file. Several tables may share one dictionary. Layout:</p>
+ * <pre>
+ * | Magic (4 bytes) | Count (4 bytes) | Used bytes (4 bytes) | Reserved (4 bytes) |
+ * | Suffix code or 0 (4 bytes) | Length (2 bytes) | UTF-8 bytes | ... one entry per code from 1 up, in code order
+ * </pre>
+ * <p>{@link #encode(String)} appends new entries without forcing them; {@link #sync()} forces them to disk and only then
+ * lets the header count them, so a crash never leaves the header counting bytes it does not hold. Tables call it
+ * through {@link BinaryParser#sync()} once per log sync or flush, before the records holding the new codes become
+ * durable, so a durable record never holds a code the dictionary lost.</p>
+ */
+public class StringDictionary implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(StringDictionary.class.getName());
+
+    private static final int MAGIC = 0x53444331; // "SDC1"
+    private static final int HEADER_SIZE = 16;
+    private static final int H_COUNT = 4;
+    private static final int H_USED = 8;
+    private static final int ENTRY_HEADER = Integer.BYTES + Short.BYTES;
+    private static final int MIN_MAPPING = 64 * 1024;
+
+    /**
+     * The longest string, in UTF-8 bytes, an entry can hold.
+     */
+    public static final int MAX_LENGTH = 0xFFFF;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final Map<String, Integer> codes = new ConcurrentHashMap<>();
+
+    // Readers read count first: everything below was written before the count that publishes it
+    private volatile MappedByteBuffer mapping;
+    private volatile int[] offsets; // of the entry with code i + 1
+    private volatile int count;
+    private int used;
+    private int syncedCount; // the entries the header counts, guarded by this
+
+    /**
+     * Opens the dictionary at {@code path}, creating an empty one if the file does not exist.
+     *
+     * @throws IllegalArgumentException If the file is not a dictionary.
+     */
+    public StringDictionary(Path path) {
+        this.path = path;
+        boolean created;
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            created = channel.size() == 0;
+            mapping = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(MIN_MAPPING, channel.size()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (created) {
+            mapping.putInt(0, MAGIC);
+            mapping.putInt(H_USED, HEADER_SIZE);
+            mapping.force();
+        } else if (mapping.getInt(0) != MAGIC) {
+            close();
+            throw new IllegalArgumentException(path + " is not a string dictionary");
+        }
+        load();
+    }
+
+    private void load() {
+        int entries = mapping.getInt(H_COUNT);
+        offsets = new int[Math.max(16, entries)];
+        int offset = HEADER_SIZE;
+        for (int code = 0; code < entries; code++) {
+            offsets[code] = offset;
+            offset += ENTRY_HEADER + Short.toUnsignedInt(mapping.getShort(offset + Integer.BYTES));
+        }
+        // Bytes past the last counted entry are appends a crash caught before they were synced; the next append
+        // overwrites them
+        used = offset;
+        count = entries;
+        syncedCount = entries;
+        codes.put("", 0);
+        for (int code = 1; code <= entries; code++) {
+            codes.put(decode(code), code);
+        }
+        LOGGER.info("OPENED DICTIONARY " + path + " WITH " + entries + " ENTRIES");
+    }
+
+    /**
+     * Gets the code of {@code value}, adding it to the dictionary first if it is new.
+     *
+     * @throws IllegalArgumentException If {@code value} is longer than {@link #MAX_LENGTH} bytes.
+     */
+    public int encode(String value) {
+        Integer code = codes.get(value);
+        if (code != null) {
+            return code;
+        }
+        synchronized (this) {
+            code = codes.get(value);
+            return code != null ? code : append(value);
+        }
+    }
+
+    private int append(String value) {
+        int suffix = 0;
+        String own = value;
+        int at = value.lastIndexOf('@');
+        if (at > 0) {
+            suffix = encode(value.substring(at));
+            own = value.substring(0, at);
+        }
+        byte[] bytes = own.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_LENGTH) {
+            throw new IllegalArgumentException("A " + bytes.length + "-byte string does not fit a dictionary entry");
+        }
+
+        int size = ENTRY_HEADER + bytes.length;
+        if (used + size > mapping.capacity()) {
+            grow(used + size);
+        }
+        if (count == offsets.length) {
+            offsets = Arrays.copyOf(offsets, count * 2);
+        }
+        MappedByteBuffer target = mapping;
+        target.putInt(used, suffix);
+        target.putShort(used + Integer.BYTES, (short) bytes.length);
+        target.put(used + ENTRY_HEADER, bytes);
+
+        int code = count + 1;
+        offsets[count] = used;
+        used += size;
+        count = code;
+        codes.put(value, code);
+        return code;
+    }
+
+    /**
+     * Forces the entries added since the last sync to disk, then the header that counts them. Does nothing if there
+     * are none.
+     */
+    public synchronized void sync() {
+        if (syncedCount == count) {
+            return;
+        }
+        MappedByteBuffer target = mapping;
+        target.force();
+        target.putInt(H_COUNT, count);
+        target.putInt(H_USED, used);
+        target.force();
+        syncedCount = count;
+    }
+
+    private void grow(long needed) {
+        long capacity = Math.max(needed, 2L * mapping.capacity());
+        if (capacity > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Dictionary " + path + " is full");
+        }
+        try {
+            mapping = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Gets the string a code stands for.
+     *
+     * @throws IllegalArgumentException If no string has that code.
+     */
+    public String decode(int code) {
+        if (code == 0) {
+            return "";
+        }
+        if (code < 0 || code > count) {
+            throw new IllegalArgumentException("No string has dictionary code " + code);
+        }
+        MappedByteBuffer source = mapping;
+        int offset = offsets[code - 1];
+        int suffix = source.getInt(offset);
+        byte[] bytes = new byte[Short.toUnsignedInt(source.getShort(offset + Integer.BYTES))];
+        source.get(offset + ENTRY_HEADER, bytes);
+        String own = new String(bytes, StandardCharsets.UTF_8);
+        return suffix == 0 ? own : own + decode(suffix);
+    }
+
+    /**
+     * @return The number of stored entries, counting email domains as entries of their own.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return The bytes of the file the entries take up, header included.
+     */
+    public synchronized int getUsedBytes() {
+        return used;
+    }
+
+    /**
+     * Syncs the entries added since the last sync and closes the file.
+     */
+    @Override
+    public void close() {
+        sync();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -8,16 +8,48 @@ import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 public class UserDatumBinaryParser implements IDataParser<byte[], UserDatum> {
+    /**
+     * The size of a user when its email and username are {@link StringDictionary} codes.
+     */
+    public static final int DICTIONARY_USER_DATUM_SIZE = UserDatum.USER_DATUM_SIZE - UserDatum.EMAIL_SIZE
+            - UserDatum.USERNAME_SIZE + 2 * Integer.BYTES;
+
+    private final StringDictionary dictionary;
+
+    public UserDatumBinaryParser() {
+        this(null);
+    }
+
+    /**
+     * @param dictionary The dictionary holding emails and usernames, which the record then stores as 4-byte codes,
+     *                   or {@code null} to store them inline, padded to their full width.
+     */
+    public UserDatumBinaryParser(StringDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * @return The number of bytes {@link #getData(UserDatum)} writes.
+     */
+    public int getSize() {
+        return dictionary == null ? UserDatum.USER_DATUM_SIZE : DICTIONARY_USER_DATUM_SIZE;
+    }
+
     @Override
     public byte[] getData(UserDatum obj) {
-        ByteBuffer buffer = ByteBuffer.allocate(UserDatum.USER_DATUM_SIZE);
+        ByteBuffer buffer = ByteBuffer.allocate(getSize());
         buffer.put(obj.present);
         buffer.put(obj.enabled);
         // Use the USERTYPE enum to get the byte value
         buffer.put(obj.getUserType().toByte());
         buffer.putInt(obj.userId);
-        buffer.put(Arrays.copyOf(obj.email.getBytes(), UserDatum.EMAIL_SIZE));
-        buffer.put(Arrays.copyOf(obj.username.getBytes(), UserDatum.USERNAME_SIZE));
+        if (dictionary != null) {
+            buffer.putInt(dictionary.encode(obj.email));
+            buffer.putInt(dictionary.encode(obj.username));
+        } else {
+            buffer.put(Arrays.copyOf(obj.email.getBytes(), UserDatum.EMAIL_SIZE));
+            buffer.put(Arrays.copyOf(obj.username.getBytes(), UserDatum.USERNAME_SIZE));
+        }
         buffer.put(Arrays.copyOf(obj.passwordHash.getBytes(), UserDatum.PASSWORD_HASH_SIZE));
         for (long possession : obj.possessions) buffer.putLong(possession);
         buffer.put((byte) (obj.validated ? 1 : 0));
@@ -38,13 +70,18 @@ public class UserDatumBinaryParser implements IDataParser<byte[], UserDatum> {
         byte typeByte = buffer.get();
         obj.setUserType(USERTYPE.fromByte(typeByte)); // Assuming there's a setUserType method in UserDatum
         obj.userId = buffer.getInt();
-        byte[] emailBytes = new byte[UserDatum.EMAIL_SIZE];
-        buffer.get(emailBytes);
-        obj.email = new String(emailBytes).trim();
+        if (dictionary != null) {
+            obj.email = dictionary.decode(buffer.getInt());
+            obj.username = dictionary.decode(buffer.getInt());
+        } else {
+            byte[] emailBytes = new byte[UserDatum.EMAIL_SIZE];
+            buffer.get(emailBytes);
+            obj.email = new String(emailBytes).trim();
 
-        byte[] usernameBytes = new byte[UserDatum.USERNAME_SIZE];
-        buffer.get(usernameBytes);
-        obj.username = new String(usernameBytes).trim();
+            byte[] usernameBytes = new byte[UserDatum.USERNAME_SIZE];
+            buffer.get(usernameBytes);
+            obj.username = new String(usernameBytes).trim();
+        }
 
         byte[] passwordHashBytes = new byte[UserDatum.PASSWORD_HASH_SIZE];
         buffer.get(passwordHashBytes);
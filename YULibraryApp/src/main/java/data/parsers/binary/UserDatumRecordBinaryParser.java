@@ -13,11 +13,30 @@ public class UserDatumRecordBinaryParser implements BinaryParser<UserDatum> {
 
     public static final int RECORD_SIZE = KEY_SIZE + TIMESTAMP_SIZE + UserDatum.USER_DATUM_SIZE;
 
-    private final UserDatumBinaryParser userDatumBinaryParser = new UserDatumBinaryParser();
+    // The flag of a user is its `enabled` byte, right after `present`
+    private static final int FLAG_OFFSET = KEY_SIZE + TIMESTAMP_SIZE + UserDatum.PRESENT_SIZE;
+
+    private final UserDatumBinaryParser userDatumBinaryParser;
+    private final StringDictionary dictionary;
+    private final int recordSize;
+
+    public UserDatumRecordBinaryParser() {
+        this(null);
+    }
+
+    /**
+     * @param dictionary The dictionary to store repeated strings in; see {@link UserDatumBinaryParser#UserDatumBinaryParser(StringDictionary)}.
+     *                   A table must be reopened with the same dictionary, or none, as it was written with.
+     */
+    public UserDatumRecordBinaryParser(StringDictionary dictionary) {
+        this.userDatumBinaryParser = new UserDatumBinaryParser(dictionary);
+        this.dictionary = dictionary;
+        this.recordSize = KEY_SIZE + TIMESTAMP_SIZE + userDatumBinaryParser.getSize();
+    }
 
     @Override
     public byte[] getData(Record<UserDatum> obj) {
-        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+        ByteBuffer buffer = ByteBuffer.allocate(recordSize);
 
         byte[] userBytes = userDatumBinaryParser.getData(obj.getEntry());
         buffer.putInt(Integer.parseInt(obj.getKey()));
@@ -30,12 +49,17 @@ public class UserDatumRecordBinaryParser implements BinaryParser<UserDatum> {
 
     @Override
     public Record<UserDatum> parseData(byte[] data) {
-        // Ensure that the data array has the expected length
-        if (data.length != RECORD_SIZE) {
-            throw new IllegalArgumentException("Invalid data length: " + data.length);
+        return parseData(data, data.length);
+    }
+
+    @Override
+    public Record<UserDatum> parseData(byte[] data, int length) {
+        // Ensure that the record has the expected length
+        if (length != recordSize || data.length < length) {
+            throw new IllegalArgumentException("Invalid data length: " + length);
         }
 
-        ByteBuffer buffer = ByteBuffer.wrap(data);
+        ByteBuffer buffer = ByteBuffer.wrap(data, 0, length);
 
 
         // Directly parse the key, seconds, and nano from the buffer
@@ -55,6 +79,23 @@ public class UserDatumRecordBinaryParser implements BinaryParser<UserDatum> {
 
     @Override
     public int getSize() {
-        return RECORD_SIZE;
+        return recordSize;
+    }
+
+    @Override
+    public void sync() {
+        if (dictionary != null) {
+            dictionary.sync();
+        }
+    }
+
+    @Override
+    public int getKeyOffset() {
+        return 0;
+    }
+
+    @Override
+    public int getFlagOffset() {
+        return FLAG_OFFSET;
     }
 }
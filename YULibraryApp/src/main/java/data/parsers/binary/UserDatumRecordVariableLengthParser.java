@@ -0,0 +1,61 @@
+package data.parsers.binary;
+
+import data.Record;
+import data.USERTYPE;
+import data.binary.datums.UserDatum;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+
+import static data.parsers.binary.VariableLengthEncoding.*;
+
+// | Key (4 bytes) | Epoch Seconds (varint) | Nanoseconds (varint) | Present (1 byte) | Enabled (1 byte) | Type (1 byte) |
+// | User ID (varint) | Email | Username | Password Hash | Possessions (10 varints) | Validated (1 byte) |
+// | Textbooks (5 varints) | Teaching (5 varints) | Previous Books (10 varints) |
+// Strings are a varint length followed by their UTF-8 bytes, at full length. Empty array entries take one byte each.
+public class UserDatumRecordVariableLengthParser implements VariableLengthBinaryParser<UserDatum> {
+
+    @Override
+    public byte[] getData(Record<UserDatum> obj) {
+        UserDatum user = obj.getEntry();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(128);
+        writeKey(out, obj.getKey());
+        writeTimestamp(out, obj.getTimestamp());
+        out.write(user.present);
+        out.write(user.enabled);
+        out.write(user.getUserType().toByte());
+        writeLong(out, user.userId);
+        writeString(out, user.email);
+        writeString(out, user.username);
+        writeString(out, user.passwordHash);
+        for (long possession : user.possessions) writeLong(out, possession);
+        out.write(user.validated ? 1 : 0);
+        for (long textbook : user.textbooks) writeLong(out, textbook);
+        for (int teaching : user.teaching) writeLong(out, teaching);
+        for (long previousBook : user.previousBooks) writeLong(out, previousBook);
+        return out.toByteArray();
+    }
+
+    @Override
+    public Record<UserDatum> parseData(byte[] data) {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        String key = readKey(buffer);
+        Instant timestamp = readTimestamp(buffer);
+
+        UserDatum user = new UserDatum();
+        user.present = buffer.get();
+        user.enabled = buffer.get();
+        user.setUserType(USERTYPE.fromByte(buffer.get()));
+        user.userId = readInt(buffer);
+        user.email = readString(buffer);
+        user.username = readString(buffer);
+        user.passwordHash = readString(buffer);
+        for (int i = 0; i < user.possessions.length; i++) user.possessions[i] = readLong(buffer);
+        user.validated = buffer.get() == 1;
+        for (int i = 0; i < user.textbooks.length; i++) user.textbooks[i] = readLong(buffer);
+        for (int i = 0; i < user.teaching.length; i++) user.teaching[i] = readInt(buffer);
+        for (int i = 0; i < user.previousBooks.length; i++) user.previousBooks[i] = readLong(buffer);
+        return new Record<>(key, user, timestamp);
+    }
+}
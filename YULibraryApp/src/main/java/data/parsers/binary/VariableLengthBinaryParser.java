@@ -0,0 +1,17 @@
+package data.parsers.binary;
+
+import data.Record;
+import data.binary.datums.Datum;
+import data.parsers.IDataParser;
+
+/**
+ * A parser whose binary form has no fixed size: strings take their actual UTF-8 length instead of being padded or
+ * truncated to a maximum, and numbers take as many bytes as their value needs. Records in this form are stored by a
+ * {@link data.databases.SlottedPageDatabase}.
+ * <p>Like the fixed-size record parsers, the binary form starts with the record key as a big-endian int, so a page
+ * can be scanned for keys without decoding the records.</p>
+ *
+ * @param <T> The Datum type this parser handles.
+ */
+public interface VariableLengthBinaryParser<T extends Datum> extends IDataParser<byte[], Record<T>> {
+}
@@ -0,0 +1,92 @@
+package data.parsers.binary;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+/**
+ * The building blocks of the {@link VariableLengthBinaryParser} formats.
+ * <p>Numbers are zigzag-encoded varints: seven bits per byte, low bits first, with the high bit set on every byte but
+ * the last, so small values of either sign take one byte. Strings are their UTF-8 bytes after a varint length; a
+ * {@code null} string is written as length -1.</p>
+ */
+final class VariableLengthEncoding {
+
+    private VariableLengthEncoding() {
+    }
+
+    static void writeKey(ByteArrayOutputStream out, String key) {
+        int value = Integer.parseInt(key);
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    static String readKey(ByteBuffer buffer) {
+        return String.valueOf(buffer.getInt());
+    }
+
+    static void writeTimestamp(ByteArrayOutputStream out, Instant timestamp) {
+        writeLong(out, timestamp.getEpochSecond());
+        writeLong(out, timestamp.getNano());
+    }
+
+    static Instant readTimestamp(ByteBuffer buffer) {
+        long seconds = readLong(buffer);
+        return Instant.ofEpochSecond(seconds, readLong(buffer));
+    }
+
+    static void writeLong(ByteArrayOutputStream out, long value) {
+        long zigzag = (value << 1) ^ (value >> 63);
+        while ((zigzag & ~0x7FL) != 0) {
+            out.write((int) (zigzag & 0x7F) | 0x80);
+            zigzag >>>= 7;
+        }
+        out.write((int) zigzag);
+    }
+
+    static long readLong(ByteBuffer buffer) {
+        long zigzag = 0;
+        for (int shift = 0; ; shift += 7) {
+            if (shift > 63) {
+                throw new IllegalArgumentException("Malformed varint");
+            }
+            byte b = buffer.get();
+            zigzag |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                break;
+            }
+        }
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+
+    static int readInt(ByteBuffer buffer) {
+        long value = readLong(buffer);
+        if (value != (int) value) {
+            throw new IllegalArgumentException("Varint out of int range: " + value);
+        }
+        return (int) value;
+    }
+
+    static void writeString(ByteArrayOutputStream out, String value) {
+        if (value == null) {
+            writeLong(out, -1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeLong(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    static String readString(ByteBuffer buffer) {
+        int length = readInt(buffer);
+        if (length < 0) {
+            return null;
+        }
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+}
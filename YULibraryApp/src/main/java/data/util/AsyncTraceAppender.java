@@ -0,0 +1,145 @@
+package data.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * Hands log records from the threads that create them to one daemon thread that passes them to their loggers, so the
+ * handlers' formatting and I/O never run on the caller's thread.
+ * <p>Records wait in a bounded ring buffer. Producers claim a slot with one CAS and never block: when the buffer is
+ * full the record is dropped and counted, because a trace is never worth stalling a read or a flush for. Each slot
+ * carries a sequence number that says whether it is free for the producer of a given round or full for the
+ * consumer, so no lock is taken on either side.</p>
+ */
+public final class AsyncTraceAppender implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(AsyncTraceAppender.class.getName());
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final LogRecord[] slots;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong(); // next position a producer claims
+    private long head; // next position the drain thread reads; drain thread only
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    /**
+     * Starts the drain thread.
+     *
+     * @param capacity The number of records the buffer holds; rounded up to a power of two.
+     */
+    public AsyncTraceAppender(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        int size = Math.max(2, Integer.highestOneBit(capacity - 1) << 1);
+        this.slots = new LogRecord[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i); // slot i is free for the producer claiming position i
+        }
+        this.mask = size - 1;
+        this.thread = new Thread(this::run, "trace-appender");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Queues a record for its logger, named by {@link LogRecord#getLoggerName()}.
+     *
+     * @return {@code false} if the buffer was full and the record was dropped.
+     */
+    public boolean append(LogRecord record) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long gap = sequences.get(index) - position;
+            if (gap == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    slots[index] = record;
+                    sequences.set(index, position + 1); // publishes the record to the drain thread
+                    return true;
+                }
+                position = tail.get();
+            } else if (gap < 0) {
+                dropped.incrementAndGet(); // the drain thread has not freed this slot from the last round yet
+                return false;
+            } else {
+                position = tail.get(); // another producer claimed it first
+            }
+        }
+    }
+
+    /**
+     * @return The number of records dropped because the buffer was full.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * @return The number of slots in the buffer.
+     */
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    private LogRecord poll() {
+        int index = (int) head & mask;
+        if (sequences.get(index) != head + 1) {
+            return null;
+        }
+        LogRecord record = slots[index];
+        slots[index] = null;
+        sequences.set(index, head + slots.length); // free for the producer one round later
+        head++;
+        return record;
+    }
+
+    private void run() {
+        while (running) {
+            if (!drain()) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+        drain();
+    }
+
+    /**
+     * @return Whether any record was passed on.
+     */
+    private boolean drain() {
+        boolean any = false;
+        for (LogRecord record = poll(); record != null; record = poll()) {
+            any = true;
+            try {
+                Logger.getLogger(record.getLoggerName()).log(record);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Trace handler failed", e); // keep draining
+            }
+        }
+        return any;
+    }
+
+    /**
+     * Stops the drain thread once it has passed on every record queued before this call.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
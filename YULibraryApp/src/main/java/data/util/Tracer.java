@@ -0,0 +1,111 @@
+package data.util;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * Per-operation diagnostics for hot paths, where a synchronous {@code LOGGER.info} with a concatenated message costs
+ * more than the operation it describes.
+ * <p>A trace is a {@link Level#FINE} record of the class's own {@link Logger}, so it is switched on per component
+ * with the usual logging configuration. Call sites pass a {@link java.text.MessageFormat} pattern and its arguments
+ * instead of a built string: while the logger is below FINE, a trace costs one level check and builds nothing.
+ * When enabled, only one operation in {@link #setSampleEvery(int) every N} is recorded, picked at random per thread,
+ * and the record is handed to a shared {@link AsyncTraceAppender}, so message formatting and handler I/O happen on
+ * the appender's thread.</p>
+ */
+public final class Tracer {
+
+    /**
+     * The slots of the shared appender's ring buffer; traces beyond that backlog are dropped.
+     */
+    public static final int APPENDER_CAPACITY = 8192;
+
+    // 1 records every trace; set at startup with -Ddata.trace.sampleEvery=N
+    private static volatile int sampleEvery = Math.max(1, Integer.getInteger("data.trace.sampleEvery", 1));
+
+    private final Logger logger;
+
+    private Tracer(Logger logger) {
+        this.logger = logger;
+    }
+
+    /**
+     * @return The tracer writing to the logger named after {@code owner}, the one its {@code LOGGER} uses.
+     */
+    public static Tracer forClass(Class<?> owner) {
+        return new Tracer(Logger.getLogger(owner.getName()));
+    }
+
+    /**
+     * @param every Record one enabled trace in this many, on average; 1 records them all.
+     * @throws IllegalArgumentException If {@code every} is not positive.
+     */
+    public static void setSampleEvery(int every) {
+        if (every <= 0) {
+            throw new IllegalArgumentException("sampleEvery must be positive: " + every);
+        }
+        sampleEvery = every;
+    }
+
+    /**
+     * @return The number of traces dropped so far because the appender's buffer was full.
+     */
+    public static long getDroppedCount() {
+        return Appender.INSTANCE.getDroppedCount();
+    }
+
+    /**
+     * @return Whether this tracer's logger records FINE messages. Guard any trace whose arguments are costly to compute.
+     */
+    public boolean isEnabled() {
+        return logger.isLoggable(Level.FINE);
+    }
+
+    public void trace(String message) {
+        if (isEnabled() && sampled()) {
+            publish(message, null);
+        }
+    }
+
+    public void trace(String pattern, Object arg) {
+        if (isEnabled() && sampled()) {
+            publish(pattern, new Object[]{arg});
+        }
+    }
+
+    /**
+     * Traces a count or a size without boxing it unless the trace is recorded.
+     */
+    public void trace(String pattern, int arg) {
+        if (isEnabled() && sampled()) {
+            publish(pattern, new Object[]{arg});
+        }
+    }
+
+    public void trace(String pattern, Object arg1, Object arg2) {
+        if (isEnabled() && sampled()) {
+            publish(pattern, new Object[]{arg1, arg2});
+        }
+    }
+
+    private static boolean sampled() {
+        int every = sampleEvery;
+        return every == 1 || ThreadLocalRandom.current().nextInt(every) == 0;
+    }
+
+    private void publish(String pattern, Object[] args) {
+        // Created here, so the record keeps the time and thread of the operation, not of the appender
+        LogRecord record = new LogRecord(Level.FINE, pattern);
+        record.setLoggerName(logger.getName());
+        record.setSourceClassName(logger.getName()); // the caller cannot be inferred from the appender's thread
+        record.setParameters(args);
+        Appender.INSTANCE.append(record);
+    }
+
+    // Started on the first trace that is enabled and sampled, never before
+    private static final class Appender {
+        static final AsyncTraceAppender INSTANCE = new AsyncTraceAppender(APPENDER_CAPACITY);
+    }
+}
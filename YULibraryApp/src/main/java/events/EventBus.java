@@ -1,5 +1,7 @@
 package events;
 
+import data.util.Tracer;
+
 import java.util.concurrent.*;
 
 /**
@@ -8,6 +10,9 @@ import java.util.concurrent.*;
  */
 public class EventBus implements IEventBus {
 
+    // Every event passes through here, so diagnostics go through the sampled, asynchronous tracer
+    private static final Tracer TRACER = Tracer.forClass(EventBus.class);
+
     // Map to hold event types and their respective handlers.
     private final ConcurrentHashMap<Class<? extends IEvent>, ConcurrentLinkedQueue<IEventHandler<?>>> handlers = new ConcurrentHashMap<>();
     // Queue to hold events that are published and waiting to be processed.
@@ -54,6 +59,7 @@ public class EventBus implements IEventBus {
         String eventId = generateUniqueEventId(event);
         futures.put(eventId, future);
         eventQueue.offer(event);
+        TRACER.trace("PUBLISHED {0}", eventId);
         return future;
     }
 
@@ -65,6 +71,7 @@ public class EventBus implements IEventBus {
             while (!Thread.interrupted()) {
                 IEvent event = eventQueue.take();
                 String eventId = generateUniqueEventId(event);
+                TRACER.trace("DISPATCHING {0}", eventId);
                 handlers.getOrDefault(event.getClass(), new ConcurrentLinkedQueue<>())
                         .forEach(handler -> processEventHandler(event, eventId, (IEventHandler<IEvent>) handler));
             }
@@ -8,11 +8,15 @@ import data.ObjectToDatumUtil;
 import data.Record;
 import data.binary.datums.Datum;
 import data.databases.IDatabase;
+import data.databases.IIndexedDatabase;
 import events.IEventHandler;
 import model.assets.Item;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
@@ -65,6 +69,10 @@ public class QueryEventHandler implements IEventHandler<QueryEvent> {
                 return handleDeleteAction(database, parsedQuery.get("key"));
             case "read":
                 return handleReadAction(database, parsedQuery.get("key"));
+            case "readmany":
+                return handleReadManyAction(database, parsedQuery.get("key"));
+            case "findby":
+                return handleFindByAction(database, parsedQuery.get("key"));
             default:
                 return handleSpecificAction(database, parsedQuery.get("action"), parsedQuery.get("key"), datum);
         }
@@ -177,6 +185,40 @@ public class QueryEventHandler implements IEventHandler<QueryEvent> {
         });
     }
 
+    // The key of a readMany query is a comma-separated list of keys; the result lists the entries found, in key order
+    private <D extends Datum> CompletableFuture<Object> handleReadManyAction(IDatabase<D> database, String keys) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                List<D> entries = new ArrayList<>();
+                for (Record<D> record : database.readMany(Arrays.asList(keys.split(","))).values()) {
+                    entries.add(record.getEntry());
+                }
+                return entries;
+            } catch (Exception e) {
+                return "Error reading records"; // Error handling
+            }
+        });
+    }
+
+    // The key of a findBy query is "indexName=value", e.g. "userDB:findBy:email=jane@example.com"
+    private <D extends Datum> CompletableFuture<Object> handleFindByAction(IDatabase<D> database, String key) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                String[] indexAndValue = key.split("=", 2);
+                if (!(database instanceof IIndexedDatabase) || indexAndValue.length < 2) {
+                    return "Error finding records";
+                }
+                List<D> entries = new ArrayList<>();
+                for (Record<D> record : ((IIndexedDatabase<D>) database).findBy(indexAndValue[0], indexAndValue[1])) {
+                    entries.add(record.getEntry());
+                }
+                return entries;
+            } catch (Exception e) {
+                return "Error finding records"; // Error handling
+            }
+        });
+    }
+
     private CompletableFuture<Object> handleSpecificAction(IDatabase<? extends Datum> database, String action, String key, Datum datum) {
         return null;
     }
@@ -44,12 +44,12 @@ public class FacultyBuilder extends UserBuilder implements IUserBuilder{
     }
 
     private CompletableFuture<List<PhysicalItem>> getPreviousBooks(UserDatum datum) {
-        return fetchRelatedEntities(datum.previousBooks, "itemDB:read:", ItemDatum.class, this::mapToItem);
+        return fetchRelatedEntities(datum.previousBooks, "itemDB:readMany:", ItemDatum.class, this::mapToItem);
     }
 
     private CompletableFuture<List<Course>> getTeaching(UserDatum datum) {
         long[] teachingLongs = Arrays.stream(datum.teaching).asLongStream().toArray();
-        return fetchRelatedEntities(teachingLongs, "courseDB:read:", CourseDatum.class, this::mapToCourse);
+        return fetchRelatedEntities(teachingLongs, "courseDB:readMany:", CourseDatum.class, this::mapToCourse);
     }
 
     private Course mapToCourse(CourseDatum courseDatum) {
@@ -37,7 +37,7 @@ public class StudentBuilder extends UserBuilder implements IUserBuilder{
 
 
     private CompletableFuture<List<PhysicalItem>> getTextbooks(UserDatum data) {
-        return fetchRelatedEntities(data.textbooks, "itemDB:read:", ItemDatum.class, this::mapToItem);
+        return fetchRelatedEntities(data.textbooks, "itemDB:readMany:", ItemDatum.class, this::mapToItem);
     }
 
     private PhysicalItem mapToItem(ItemDatum datum){
@@ -7,6 +7,7 @@ import events.IEventBus;
 import events.QueryEvents.QueryEvent;
 import model.contracts.LibraryContract;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
@@ -21,7 +22,7 @@ public  abstract class UserBuilder {
     }
 
     CompletableFuture<List<LibraryContract>> getUserPossessions(UserDatum data) {
-        return fetchRelatedEntities(data.possessions, "contractDB:read:", LibraryContractDatum.class,
+        return fetchRelatedEntities(data.possessions, "contractDB:readMany:", LibraryContractDatum.class,
                 this::mapToLibraryContract);
     }
 
@@ -43,17 +44,22 @@ public  abstract class UserBuilder {
     }
 
 
+    // baseQuery is a readMany query ("destination:readMany:"); every id is fetched by the one event it publishes
     <T, R> CompletableFuture<List<R>> fetchRelatedEntities(long[] ids, String baseQuery, Class<T> datumClass,
                                                            java.util.function.Function<T, R> mapper) {
-        List<CompletableFuture<R>> futures = Arrays.stream(ids)
+        String keys = Arrays.stream(ids)
                 .filter(id -> id != 0)
-                .mapToObj(id -> publishEventAndHandleResult(baseQuery + id, datumClass, datumClass,
-                        "Unexpected data type received")
-                        .thenApply(mapper))
-                .collect(Collectors.toList());
+                .mapToObj(String::valueOf)
+                .collect(Collectors.joining(","));
+        if (keys.isEmpty()) {
+            return CompletableFuture.completedFuture(new ArrayList<>());
+        }
 
-        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
-                .thenApply(v -> futures.stream().map(CompletableFuture::join).collect(Collectors.toList()));
+        return publishEventAndHandleResult(baseQuery + keys, datumClass, List.class, "Unexpected data type received")
+                .thenApply(entries -> ((List<?>) entries).stream()
+                        .map(datumClass::cast)
+                        .map(mapper)
+                        .collect(Collectors.toList()));
     }
 
 }
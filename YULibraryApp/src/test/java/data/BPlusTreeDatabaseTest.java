@@ -0,0 +1,113 @@
+package data;
+
+import data.binary.datums.UserDatum;
+import data.databases.BPlusTreeDatabase;
+import data.parsers.binary.UserDatumRecordBinaryParser;
+import data.util.DataUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BPlusTreeDatabaseTest {
+
+    private BPlusTreeDatabase<UserDatum> db;
+    private Path tempFile;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        tempFile = Files.createTempFile("tree", "db");
+        Files.delete(tempFile); // the tree writes its own header into a new file
+        // A tiny buffer pool, so the tests run through page eviction as well
+        db = new BPlusTreeDatabase<>(tempFile.toString(), new UserDatumRecordBinaryParser(), 8);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        db.close();
+        Files.deleteIfExists(tempFile);
+    }
+
+    private UserDatum addUser(int id) {
+        UserDatum user = DataUtils.generateRandomUserDatum();
+        user.userId = id;
+        db.add(new Record<>(String.valueOf(id), user));
+        return user;
+    }
+
+    @Test
+    public void recordsAreReadBackAcrossManyPagesTest() {
+        UserDatum[] users = new UserDatum[2000];
+        for (int i = 0; i < users.length; i++) {
+            users[i] = addUser(i * 3);
+        }
+
+        for (int i = 0; i < users.length; i++) {
+            Record<UserDatum> retrievedRecord = db.read(String.valueOf(i * 3));
+            assertNotNull(retrievedRecord, "Record " + (i * 3) + " should be found.");
+            assertEquals(users[i], retrievedRecord.getEntry());
+        }
+        assertNull(db.read("1"));
+        assertTrue(db.getHeight() > 1, "Two thousand records should not fit in one leaf.");
+    }
+
+    @Test
+    public void floorCeilingAndRangeFollowKeyOrderTest() {
+        for (int i = 1; i <= 500; i++) {
+            addUser(i * 10);
+        }
+        db.delete("2500");
+
+        assertEquals("2490", db.floor("2500").getKey(), "A deleted key should fall back to the one before it.");
+        assertEquals("2510", db.ceiling("2500").getKey());
+        assertEquals("30", db.floor("39").getKey());
+        assertEquals("40", db.ceiling("31").getKey());
+        assertNull(db.floor("9"));
+        assertNull(db.ceiling("5001"));
+
+        List<String> keys = db.range("95", "150").stream().map(Record::getKey).collect(Collectors.toList());
+        assertEquals(List.of("100", "110", "120", "130", "140", "150"), keys);
+        assertEquals(499, db.readAll().size());
+    }
+
+    @Test
+    public void updatesReplaceAndReadManyKeepsRequestOrderTest() {
+        for (int i = 1; i <= 300; i++) {
+            addUser(i);
+        }
+        UserDatum replacement = DataUtils.generateRandomUserDatum();
+        replacement.userId = 42;
+        db.update("42", new Record<>("42", replacement));
+
+        Map<String, Record<UserDatum>> results = db.readMany(List.of("250", "42", "999", "7"));
+
+        assertEquals(List.of("250", "42", "7"), List.copyOf(results.keySet()));
+        assertEquals(replacement, results.get("42").getEntry());
+        assertEquals(300, db.size(), "An update should not add a record.");
+    }
+
+    @Test
+    public void treeSurvivesReopenTest() {
+        UserDatum[] users = new UserDatum[1000];
+        for (int i = 0; i < users.length; i++) {
+            users[i] = addUser(users.length - i); // descending, so splits happen on the left edge too
+        }
+        db.close();
+
+        db = new BPlusTreeDatabase<>(tempFile.toString(), new UserDatumRecordBinaryParser(), 8);
+        List<Record<UserDatum>> all = db.readAll();
+        assertEquals(users.length, all.size());
+        for (int i = 0; i < all.size(); i++) {
+            assertEquals(String.valueOf(i + 1), all.get(i).getKey(), "readAll should return the records in key order.");
+            assertEquals(users[users.length - 1 - i], all.get(i).getEntry());
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package data;
+
+import data.binary.datums.UserDatum;
+import data.databases.HashBasedDatabase;
+import data.parsers.binary.BinaryParser;
+import data.parsers.binary.ChecksumVerification;
+import data.parsers.binary.ChecksummedBinaryParser;
+import data.parsers.binary.UserDatumRecordBinaryParser;
+import data.util.DataUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Measures what the CRC32C trailer costs on the read path: point reads from a flushed {@link HashBasedDatabase}
+ * with the plain user record format, and with the trailer under each {@link ChecksumVerification} setting. Run it
+ * with {@code java -cp <classes> data.ChecksumReadBenchmark [records] [reads]}; not part of the test suite.
+ */
+public class ChecksumReadBenchmark {
+
+    private static final int ROUNDS = 7; // the best round of each format counts
+
+    public static void main(String[] args) throws IOException {
+        int records = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int reads = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+
+        Map<String, BinaryParser<UserDatum>> formats = new LinkedHashMap<>();
+        formats.put("plain", new UserDatumRecordBinaryParser());
+        for (ChecksumVerification verification : ChecksumVerification.values()) {
+            formats.put("crc32c-" + verification, new ChecksummedBinaryParser<>(new UserDatumRecordBinaryParser(), verification));
+        }
+
+        List<Record<UserDatum>> users = new ArrayList<>();
+        for (int i = 1; i <= records; i++) {
+            UserDatum user = DataUtils.generateRandomUserDatum();
+            user.userId = i;
+            users.add(new Record<>(String.valueOf(i), user));
+        }
+        String[] keys = new String[reads];
+        for (int i = 0; i < reads; i++) {
+            keys[i] = String.valueOf(ThreadLocalRandom.current().nextInt(records) + 1);
+        }
+
+        Map<String, HashBasedDatabase<UserDatum>> databases = new LinkedHashMap<>();
+        Map<String, Path> files = new LinkedHashMap<>();
+        for (Map.Entry<String, BinaryParser<UserDatum>> format : formats.entrySet()) {
+            Path file = Files.createTempFile("checksum-bench", "db");
+            HashBasedDatabase<UserDatum> db = new HashBasedDatabase<>(file.toString(), records * 2 + 1, format.getValue());
+            db.addAll(users);
+            db.flush();
+            databases.put(format.getKey(), db);
+            files.put(format.getKey(), file);
+        }
+
+        // Formats take turns within each round, so JIT warm-up and background noise hit them alike
+        Map<String, Long> best = new LinkedHashMap<>();
+        for (int round = 0; round < ROUNDS; round++) {
+            for (Map.Entry<String, HashBasedDatabase<UserDatum>> entry : databases.entrySet()) {
+                HashBasedDatabase<UserDatum> db = entry.getValue();
+                long started = System.nanoTime();
+                for (String key : keys) {
+                    if (db.read(key) == null) {
+                        throw new IllegalStateException("Missing key " + key);
+                    }
+                }
+                best.merge(entry.getKey(), System.nanoTime() - started, Math::min);
+            }
+        }
+
+        double plain = (double) best.get("plain") / reads;
+        for (Map.Entry<String, Long> entry : best.entrySet()) {
+            double nanos = (double) entry.getValue() / reads;
+            System.out.printf("%-22s record=%d bytes  %5.0f ns/read  %+5.1f%%%n", entry.getKey(),
+                    formats.get(entry.getKey()).getSize(), nanos, 100 * (nanos - plain) / plain);
+        }
+
+        for (Map.Entry<String, HashBasedDatabase<UserDatum>> entry : databases.entrySet()) {
+            entry.getValue().close();
+            for (String suffix : new String[]{"", ".bloom", ".slots"}) {
+                Files.deleteIfExists(Path.of(files.get(entry.getKey()) + suffix));
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package data;
+
+import data.binary.datums.UserDatum;
+import data.databases.HashBasedDatabase;
+import data.databases.TableVerifier;
+import data.databases.VerificationReport;
+import data.parsers.binary.ChecksumVerification;
+import data.parsers.binary.ChecksummedBinaryParser;
+import data.parsers.binary.UserDatumRecordBinaryParser;
+import data.util.DataUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChecksummedBinaryParserTest {
+
+    private static final int HEADER_SIZE = 4096;
+
+    private Path tempFile;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        tempFile = Files.createTempFile("checksummed", "db");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        for (String suffix : new String[]{"", ".bloom", ".slots", ".rebuilt", ".rebuilt.bloom", ".rebuilt.slots"}) {
+            Files.deleteIfExists(Path.of(tempFile + suffix));
+        }
+    }
+
+    private static Record<UserDatum> user(int key) {
+        UserDatum user = DataUtils.generateRandomUserDatum();
+        user.userId = key;
+        return new Record<>(String.valueOf(key), user);
+    }
+
+    @Test
+    public void tornRecordIsCaughtOnReadTest() {
+        UserDatumRecordBinaryParser plain = new UserDatumRecordBinaryParser();
+        ChecksummedBinaryParser<UserDatum> checked = new ChecksummedBinaryParser<>(plain);
+        Record<UserDatum> record = user(42);
+        byte[] data = checked.getData(record);
+
+        assertEquals(plain.getSize() + ChecksummedBinaryParser.CHECKSUM_SIZE, checked.getSize());
+        assertEquals(plain.getFlagOffset(), checked.getFlagOffset());
+        assertEquals(record.getEntry(), checked.parseData(data).getEntry());
+        assertEquals(record.getEntry(), plain.parseData(data, plain.getSize()).getEntry(), "The payload should decode in place.");
+        assertTrue(checked.checksumMatches(new byte[checked.getSize()]), "A slot never written should count as intact.");
+
+        data[plain.getSize() / 2] ^= 0x5A;
+        assertFalse(checked.checksumMatches(data));
+        assertThrows(IllegalArgumentException.class, () -> checked.parseData(data));
+        ChecksummedBinaryParser<UserDatum> scansOnly = new ChecksummedBinaryParser<>(plain, ChecksumVerification.SCANS_ONLY);
+        assertNotNull(scansOnly.parseData(data), "With SCANS_ONLY, reads should not check the trailer.");
+    }
+
+    @Test
+    public void sampledVerificationChecksSomeReadsTest() {
+        ChecksummedBinaryParser<UserDatum> sampled = new ChecksummedBinaryParser<>(new UserDatumRecordBinaryParser(),
+                ChecksumVerification.SAMPLED, 4);
+        byte[] data = sampled.getData(user(7));
+        data[30] ^= 1;
+        int caught = 0;
+        for (int i = 0; i < 4000; i++) {
+            try {
+                sampled.parseData(data);
+            } catch (IllegalArgumentException e) {
+                caught++;
+            }
+        }
+        assertTrue(caught > 700 && caught < 1300, caught + " of 4000 reads checked");
+        assertThrows(IllegalArgumentException.class,
+                () -> new ChecksummedBinaryParser<>(new UserDatumRecordBinaryParser(), ChecksumVerification.SAMPLED, 0));
+    }
+
+    @Test
+    public void verifierFindsRecordsThatDoNotMatchTheirChecksumTest() throws IOException {
+        ChecksummedBinaryParser<UserDatum> parser = new ChecksummedBinaryParser<>(new UserDatumRecordBinaryParser(),
+                ChecksumVerification.SCANS_ONLY);
+        HashBasedDatabase<UserDatum> db = new HashBasedDatabase<>(tempFile.toString(), 1009, parser);
+        for (int key = 1; key <= 300; key++) {
+            db.add(user(key));
+        }
+        db.close();
+        assertTrue(TableVerifier.verify(tempFile, parser).isClean());
+
+        int tornKey;
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            int slot = 0;
+            ByteBuffer record = ByteBuffer.allocate(parser.getSize());
+            do {
+                record.clear();
+                channel.read(record, HEADER_SIZE + (long) slot++ * parser.getSize());
+            } while (record.get(parser.getFlagOffset()) != 1);
+            tornKey = record.getInt(parser.getKeyOffset());
+            long byteInRecord = HEADER_SIZE + (long) (slot - 1) * parser.getSize() + parser.getFlagOffset() + 8;
+            channel.write(ByteBuffer.wrap(new byte[]{(byte) ~record.get(parser.getFlagOffset() + 8)}), byteInRecord);
+        }
+
+        VerificationReport report = TableVerifier.verify(tempFile, parser);
+        assertEquals(1, report.getChecksumFailures(), report.getProblems().toString());
+        assertEquals(0, report.getCorruptRecords());
+        assertFalse(report.isClean());
+
+        HashBasedDatabase<UserDatum> reopened = new HashBasedDatabase<>(tempFile.toString(), 1009,
+                new ChecksummedBinaryParser<>(new UserDatumRecordBinaryParser(), ChecksumVerification.EVERY_READ));
+        assertThrows(IllegalArgumentException.class, () -> reopened.read(String.valueOf(tornKey)));
+        assertNotNull(reopened.read(String.valueOf(tornKey == 1 ? 2 : 1)));
+        reopened.close();
+
+        Path rebuilt = Path.of(tempFile + ".rebuilt");
+        TableVerifier.rebuild(tempFile, rebuilt, parser);
+        VerificationReport afterRebuild = TableVerifier.verify(rebuilt, parser);
+        assertTrue(afterRebuild.isClean(), afterRebuild.toString());
+        assertEquals(299, afterRebuild.getLiveRecords(), "The torn record should be left out.");
+    }
+}
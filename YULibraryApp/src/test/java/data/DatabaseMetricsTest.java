@@ -0,0 +1,110 @@
+package data;
+
+import data.binary.datums.UserDatum;
+import data.databases.DatabaseMetrics;
+import data.databases.FlushPolicy;
+import data.databases.HashBasedDatabase;
+import data.databases.HashDatabaseOptions;
+import data.parsers.binary.UserDatumRecordBinaryParser;
+import data.util.DataUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DatabaseMetricsTest {
+
+    private Path tempFile;
+    private Path metricsFile;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        tempFile = Files.createTempFile("metrics", "db");
+        metricsFile = Files.createTempFile("metrics", "log");
+        Files.delete(metricsFile); // the reporter creates it
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(tempFile);
+        Files.deleteIfExists(tempFile.resolveSibling(tempFile.getFileName() + ".bloom"));
+        Files.deleteIfExists(tempFile.resolveSibling(tempFile.getFileName() + ".slots"));
+        Files.deleteIfExists(metricsFile);
+    }
+
+    private static List<Record<UserDatum>> users(int count) {
+        List<Record<UserDatum>> records = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            UserDatum user = DataUtils.generateRandomUserDatum();
+            user.userId = i;
+            records.add(new Record<>(String.valueOf(i), user));
+        }
+        return records;
+    }
+
+    @Test
+    public void metricsFollowWritesFlushesAndReadsTest() {
+        // Never flushes on its own, so the test decides when the buffer is written
+        HashDatabaseOptions options = new HashDatabaseOptions().flushPolicy(FlushPolicy.byCount(Integer.MAX_VALUE));
+        HashBasedDatabase<UserDatum> db = new HashBasedDatabase<>(tempFile.toString(), 1009, new UserDatumRecordBinaryParser(), options);
+        try {
+            db.addAll(users(500));
+            DatabaseMetrics buffered = db.getMetrics();
+            assertEquals(500, buffered.getPendingRecords());
+            assertEquals(0, buffered.getFlushCount());
+            assertEquals(0.0, buffered.getLoadFactor());
+
+            db.flush();
+            for (int i = 0; i < 200; i++) {
+                assertNotNull(db.read(String.valueOf(i)));
+            }
+            DatabaseMetrics flushed = db.getMetrics();
+
+            assertEquals(0, flushed.getPendingRecords());
+            assertEquals(1, flushed.getFlushCount());
+            assertEquals(500, flushed.getLastFlushRecords());
+            assertTrue(flushed.getLastFlushNanos() > 0);
+            assertEquals(500.0 / 1009, flushed.getLoadFactor(), 1e-9);
+            assertEquals(500, Arrays.stream(flushed.getProbeLengthHistogram()).sum(), "One probe per insert");
+            assertTrue(flushed.getMeanProbeLength() < flushed.getMaxProbeLength());
+
+            assertEquals(200, flushed.getReadCount());
+            long p50 = flushed.getReadLatencyNanos(0.5);
+            long p99 = flushed.getReadLatencyNanos(0.99);
+            assertTrue(p50 > 0 && p50 <= p99 && p99 <= flushed.getReadLatencyNanos(1), p50 + " / " + p99);
+        } finally {
+            db.close();
+        }
+    }
+
+    @Test
+    public void reporterAppendsSnapshotsToTheMetricsFileTest() throws IOException {
+        HashDatabaseOptions options = new HashDatabaseOptions()
+                .metricsFile(metricsFile)
+                .metricsInterval(Duration.ofMillis(50));
+        HashBasedDatabase<UserDatum> db = new HashBasedDatabase<>(tempFile.toString(), 1009, new UserDatumRecordBinaryParser(), options);
+        db.addAll(users(50));
+        db.read("7");
+        try {
+            Thread.sleep(300);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        db.close();
+
+        List<String> lines = Files.readAllLines(metricsFile);
+        assertTrue(lines.size() >= 2, lines.size() + " lines");
+        String last = lines.get(lines.size() - 1);
+        assertTrue(last.contains(" reads=1 "), last);
+        assertTrue(last.contains(" pendingRecords=0 "), "The last line is written after the flush on close: " + last);
+    }
+}
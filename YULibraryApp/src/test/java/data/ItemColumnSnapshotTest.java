@@ -0,0 +1,128 @@
+package data;
+
+import data.binary.datums.ItemDatum;
+import data.databases.ItemColumnSnapshot;
+import data.databases.ItemColumnSnapshot.Column;
+import data.databases.ItemSnapshotExporter;
+import data.databases.MemoryBasedDatabase;
+import data.databases.RowSelection;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ItemColumnSnapshotTest {
+
+    private static final String[] LOCATIONS = {"Scott Library", "Steacie Library", "Frost Library"};
+
+    private Path tempDir;
+    private List<Record<ItemDatum>> items;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("snapshot");
+        items = new ArrayList<>();
+        // 1000 items: every 7th lost, every 10th disabled, copies 0..4, locations round-robin
+        for (int i = 0; i < 1000; i++) {
+            ItemDatum item = new ItemDatum("Title " + i, "Author " + i % 40, 5000 + i, i % 10 != 0, i % 5,
+                    i % 7 == 0, LOCATIONS[i % LOCATIONS.length]);
+            items.add(new Record<>(String.valueOf(i), item));
+        }
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(tempDir)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    @Test
+    public void queriesReadOnlyTheColumnsTheyNeedTest() {
+        ItemColumnSnapshot.write(tempDir, items);
+        try (ItemColumnSnapshot snapshot = ItemColumnSnapshot.open(tempDir)) {
+            RowSelection lost = snapshot.lost();
+
+            assertEquals(143, lost.count()); // 0, 7, ..., 994
+            assertTrue(snapshot.isLoaded(Column.LOST));
+            assertFalse(snapshot.isLoaded(Column.TITLE));
+            assertFalse(snapshot.isLoaded(Column.LOCATION));
+            assertFalse(snapshot.isLoaded(Column.COPIES_AVAILABLE));
+        }
+    }
+
+    @Test
+    public void filtersAndAggregatesMatchTheRowsTest() {
+        ItemColumnSnapshot.write(tempDir, items);
+        try (ItemColumnSnapshot snapshot = ItemColumnSnapshot.open(tempDir)) {
+            RowSelection lostInScott = snapshot.lost().and(snapshot.locationIs("Scott Library"));
+            long expected = items.stream().filter(r -> r.getEntry().isLost() && r.getEntry().getLocation().equals("Scott Library")).count();
+            assertEquals(expected, lostInScott.count());
+            for (String key : snapshot.keys(lostInScott)) {
+                ItemDatum item = items.get(Integer.parseInt(key)).getEntry();
+                assertTrue(item.isLost() && item.getLocation().equals("Scott Library"));
+            }
+
+            assertEquals(100, snapshot.disabled().count());
+            assertEquals(400, snapshot.copiesAvailableBetween(1, 2).count());
+            assertEquals(0, snapshot.locationIs("Nowhere").count());
+
+            Map<String, Long> byLocation = snapshot.copiesAvailableByLocation(snapshot.all());
+            for (String location : LOCATIONS) {
+                long sum = items.stream().filter(r -> r.getEntry().getLocation().equals(location))
+                        .mapToLong(r -> r.getEntry().getCopiesAvailable()).sum();
+                assertEquals(sum, byLocation.get(location).longValue(), location);
+            }
+            assertEquals(LOCATIONS.length, snapshot.locationDictionary().length, "Each location should be stored once.");
+        }
+    }
+
+    @Test
+    public void exporterPublishesNewGenerationsTest() {
+        MemoryBasedDatabase<ItemDatum> itemDB = new MemoryBasedDatabase<>();
+        itemDB.addAll(items.subList(0, 10));
+
+        try (ItemSnapshotExporter exporter = new ItemSnapshotExporter(itemDB, tempDir, Duration.ofHours(1))) {
+            exporter.exportNow();
+            try (ItemColumnSnapshot before = ItemColumnSnapshot.open(tempDir)) {
+                itemDB.addAll(items.subList(10, 30));
+                exporter.exportNow();
+
+                assertEquals(10, before.getRowCount(), "An open snapshot should not change under an export.");
+                assertEquals(10, ((String[]) before.column(Column.TITLE)).length);
+            }
+            try (ItemColumnSnapshot after = ItemColumnSnapshot.open(tempDir)) {
+                assertEquals(30, after.getRowCount());
+            }
+        }
+    }
+
+    @Test
+    public void snapshotOutlivesTheDeletionOfItsGenerationTest() throws IOException {
+        Path generation = ItemColumnSnapshot.write(tempDir, items.subList(0, 100));
+        try (ItemColumnSnapshot snapshot = ItemColumnSnapshot.open(tempDir)) {
+            assertEquals(15, snapshot.lost().count()); // loads one column before the exports
+            ItemColumnSnapshot.write(tempDir, items);
+            ItemColumnSnapshot.write(tempDir, items); // deletes the generation the snapshot was opened on
+            assertFalse(Files.exists(generation));
+
+            assertFalse(snapshot.isLoaded(Column.LOCATION));
+            assertEquals(34, snapshot.locationIs("Scott Library").count(), "Columns should still load from the held files.");
+            assertEquals(100, snapshot.keys(snapshot.all()).size());
+            assertEquals(100, ((String[]) snapshot.column(Column.TITLE)).length);
+        }
+    }
+}
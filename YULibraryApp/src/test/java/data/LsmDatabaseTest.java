@@ -0,0 +1,151 @@
+package data;
+
+import data.binary.datums.LibraryContractDatum;
+import data.databases.LsmDatabase;
+import data.parsers.binary.LibraryContractDatumRecordBinaryParser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LsmDatabaseTest {
+
+    private static final int MEMTABLE_RECORDS = 100;
+    private static final int COMPACTION_TRIGGER = 4;
+
+    private LsmDatabase<LibraryContractDatum> db;
+    private Path tempDir;
+    private String path;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("lsm");
+        path = tempDir.resolve("contracts.db").toString();
+        db = open();
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        db.close();
+        // The manifest, its segments and the log
+        try (Stream<Path> files = Files.list(tempDir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(tempDir);
+    }
+
+    private LsmDatabase<LibraryContractDatum> open() {
+        return new LsmDatabase<>(path, new LibraryContractDatumRecordBinaryParser(), MEMTABLE_RECORDS, COMPACTION_TRIGGER);
+    }
+
+    private static Record<LibraryContractDatum> contract(int id, int userId) {
+        return new Record<>(String.valueOf(id), new LibraryContractDatum(String.valueOf(id), String.valueOf(userId),
+                String.valueOf(1000 + id), true));
+    }
+
+    private static List<Record<LibraryContractDatum>> contracts(int from, int to, int userId) {
+        List<Record<LibraryContractDatum>> records = new ArrayList<>();
+        for (int id = from; id <= to; id++) {
+            records.add(contract(id, userId));
+        }
+        return records;
+    }
+
+    @Test
+    public void readsSeeTheNewestValueAcrossSegmentsTest() {
+        db.addAll(contracts(1, 250, 7));
+        db.flush();
+        db.addAll(contracts(101, 150, 8)); // returned and checked out again by another user
+        for (int id = 1; id <= 20; id++) {
+            db.delete(String.valueOf(id));
+        }
+
+        assertNull(db.read("5"), "A delete in the memtable should hide the segment's copy.");
+        assertEquals("8", db.read("120").getEntry().userId);
+        assertEquals("7", db.read("200").getEntry().userId);
+        assertNull(db.read("999"));
+
+        db.flush();
+        assertNull(db.read("5"), "A delete in a newer segment should hide the older segment's copy.");
+        assertEquals("8", db.read("120").getEntry().userId);
+        assertEquals(230, db.readAll().size());
+    }
+
+    @Test
+    public void compactionMergesSegmentsAndDropsDeletesTest() {
+        for (int batch = 0; batch < 3; batch++) {
+            db.addAll(contracts(1, 90, batch));
+            db.flush();
+        }
+        db.delete("42");
+        db.flush();
+
+        db.compact();
+
+        assertEquals(1, db.getSegmentCount());
+        assertNull(db.read("42"));
+        List<Record<LibraryContractDatum>> all = db.readAll();
+        assertEquals(89, all.size());
+        assertEquals(List.of("1", "2", "3"), all.stream().limit(3).map(Record::getKey).collect(Collectors.toList()),
+                "readAll should return contracts in key order.");
+        assertTrue(all.stream().allMatch(record -> record.getEntry().userId.equals("2")),
+                "Every contract should carry the value of the newest batch.");
+    }
+
+    @Test
+    public void backgroundCompactionKeepsSegmentCountBoundedTest() throws InterruptedException {
+        for (int batch = 0; batch < 10; batch++) {
+            db.addAll(contracts(batch * MEMTABLE_RECORDS + 1, (batch + 1) * MEMTABLE_RECORDS, batch));
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (db.getSegmentCount() >= COMPACTION_TRIGGER && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+
+        assertTrue(db.getSegmentCount() < COMPACTION_TRIGGER, "The compactor should have merged the segments.");
+        assertEquals(10 * MEMTABLE_RECORDS, db.readAll().size());
+        assertEquals("9", db.read(String.valueOf(10 * MEMTABLE_RECORDS)).getEntry().userId);
+    }
+
+    @Test
+    public void unflushedWritesAreReplayedFromTheLogTest() throws IOException {
+        db.addAll(contracts(1, 50, 3));
+        db.delete("10");
+        // Simulate a crash by copying the files while the records only exist in the memtable and the log
+        Path crashDir = Files.createDirectory(tempDir.resolve("crashed"));
+        try (Stream<Path> files = Files.list(tempDir)) {
+            for (Path file : files.filter(Files::isRegularFile).collect(Collectors.toList())) {
+                Files.copy(file, crashDir.resolve(file.getFileName()));
+            }
+        }
+        db.close();
+
+        LsmDatabase<LibraryContractDatum> recovered = new LsmDatabase<>(crashDir.resolve("contracts.db").toString(),
+                new LibraryContractDatumRecordBinaryParser(), MEMTABLE_RECORDS, COMPACTION_TRIGGER);
+        try {
+            assertEquals("3", recovered.read("50").getEntry().userId);
+            assertNull(recovered.read("10"));
+            assertEquals(49, recovered.readAll().size());
+        } finally {
+            recovered.close();
+            try (Stream<Path> files = Files.list(crashDir)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            Files.deleteIfExists(crashDir);
+        }
+        db = open();
+    }
+}
@@ -9,6 +9,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -77,6 +78,19 @@ class MemoryBasedDatabaseTest {
         assertTrue(hasBanana);
     }
 
+    @Test
+    void testAddAllAndReadMany() {
+        database.addAll(List.of(
+                new Record<>("Apple", new ItemDatum("Apple", "Fruit", 10, true)),
+                new Record<>("Banana", new ItemDatum("Banana", "Fruit", 20, false)),
+                new Record<>("Carrot", new ItemDatum("Carrot", "Vegetable", 15, true))));
+
+        Map<String, Record<ItemDatum>> results = database.readMany(List.of("Carrot", "Apple", "Avocado"));
+
+        assertEquals(List.of("Carrot", "Apple"), List.copyOf(results.keySet()), "Only exact matches, in the order asked for.");
+        assertEquals("Vegetable", results.get("Carrot").getEntry().author);
+    }
+
     @Test
     void testFlushAndLoad() throws IOException {
         String key = "TestItem";
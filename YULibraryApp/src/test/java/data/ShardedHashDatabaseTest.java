@@ -0,0 +1,146 @@
+package data;
+
+import data.binary.datums.LibraryContractDatum;
+import data.binary.datums.UserDatum;
+import data.databases.HashBasedDatabase;
+import data.databases.HashDatabaseOptions;
+import data.databases.IndexDefinition;
+import data.databases.ShardedHashDatabase;
+import data.databases.TableVerifier;
+import data.databases.VerificationReport;
+import data.parsers.binary.LibraryContractDatumRecordBinaryParser;
+import data.parsers.binary.UserDatumRecordBinaryParser;
+import data.util.DataUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ShardedHashDatabaseTest {
+
+    private static final int SHARDS = 4;
+
+    private ShardedHashDatabase<UserDatum> db;
+    private Path tempDir;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("sharded");
+        db = new ShardedHashDatabase<>(tempDir.resolve("users.db").toString(), SHARDS, 4001, new UserDatumRecordBinaryParser());
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        db.close();
+        // Shard files plus whatever a clean close leaves next to them
+        try (Stream<Path> files = Files.list(tempDir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(tempDir);
+    }
+
+    @Test
+    public void recordsAreSpreadAcrossShardFiles() {
+        for (int i = 1; i <= 100; i++) {
+            UserDatum user = DataUtils.generateRandomUserDatum();
+            user.userId = i;
+            db.add(new Record<>(String.valueOf(i), user));
+        }
+        db.flush();
+
+        for (int i = 0; i < SHARDS; i++) {
+            assertTrue(Files.exists(tempDir.resolve("users.db.shard" + i)), "Every shard should have its own file.");
+        }
+        assertEquals(100, db.readAll().size());
+    }
+
+    @Test
+    public void shardsGetAPrimeNumberOfSlots() throws IOException {
+        db.close();
+        for (int i = 0; i < SHARDS; i++) {
+            VerificationReport report = TableVerifier.verify(tempDir.resolve("users.db.shard" + i), new UserDatumRecordBinaryParser());
+            assertEquals(1009, report.getCapacity(), "4001 slots over 4 shards is 1001 each, rounded up to a prime.");
+        }
+        db = new ShardedHashDatabase<>(tempDir.resolve("users.db").toString(), SHARDS, 4001, new UserDatumRecordBinaryParser());
+    }
+
+    @Test
+    public void concurrentWritesToDifferentShardsAreAllReadable() throws InterruptedException {
+        ExecutorService service = Executors.newFixedThreadPool(8);
+        UserDatum[] users = new UserDatum[400];
+        for (int i = 0; i < users.length; i++) {
+            users[i] = DataUtils.generateRandomUserDatum();
+            users[i].userId = i + 1;
+            UserDatum user = users[i];
+            service.submit(() -> db.add(new Record<>(String.valueOf(user.userId), user)));
+        }
+        service.shutdown();
+        assertTrue(service.awaitTermination(30, TimeUnit.SECONDS));
+        db.flush();
+
+        for (UserDatum user : users) {
+            Record<UserDatum> retrievedRecord = db.read(String.valueOf(user.userId));
+            assertNotNull(retrievedRecord, "Record " + user.userId + " should be readable from its shard.");
+            assertEquals(user, retrievedRecord.getEntry());
+        }
+    }
+
+    @Test
+    public void contractsAreFoundByUserAcrossShards() {
+        ShardedHashDatabase<LibraryContractDatum> contracts = new ShardedHashDatabase<>(tempDir.resolve("contracts.db").toString(), SHARDS, 401,
+                new LibraryContractDatumRecordBinaryParser(), new HashDatabaseOptions(),
+                List.of(IndexDefinition.of("userId", contract -> contract.userId)));
+        for (int i = 1; i <= 60; i++) {
+            String userId = String.valueOf(i % 3 + 1);
+            contracts.add(new Record<>(String.valueOf(i), new LibraryContractDatum(String.valueOf(i), userId, String.valueOf(1000 + i), true)));
+        }
+        contracts.flush();
+        contracts.delete("3");
+
+        List<String> loans = contracts.findBy("userId", "1").stream().map(Record::getKey).sorted().collect(Collectors.toList());
+
+        assertEquals(19, loans.size(), "Every contract of user 1 but the deleted one should be found, whichever shard holds it.");
+        assertFalse(loans.contains("3"));
+        assertTrue(contracts.findBy("userId", "99").isEmpty());
+        contracts.close();
+    }
+
+    @Test
+    public void reopeningWithAnotherShardCountIsRejected() {
+        String path = tempDir.resolve("users.db").toString();
+        UserDatum user = DataUtils.generateRandomUserDatum();
+        user.userId = 1;
+        db.add(new Record<>("1", user));
+        db.close();
+
+        assertThrows(IllegalArgumentException.class, () -> new ShardedHashDatabase<>(path, SHARDS * 2, 4001, new UserDatumRecordBinaryParser()));
+        db = new ShardedHashDatabase<>(path, SHARDS, 4001, new UserDatumRecordBinaryParser());
+        assertEquals(user, db.read("1").getEntry(), "The original shard count should still open the files.");
+    }
+
+    @Test
+    public void shardsAlreadyOpenedAreClosedWhenOneFails() {
+        String path = tempDir.resolve("broken.db").toString();
+        // A shard file holding another record size, which the table header rejects
+        new HashBasedDatabase<>(path + ".shard2", 11, new LibraryContractDatumRecordBinaryParser()).close();
+
+        assertThrows(RuntimeException.class, () -> new ShardedHashDatabase<>(path, SHARDS, 4001, new UserDatumRecordBinaryParser()));
+        for (int i = 0; i < 2; i++) {
+            assertTrue(Files.exists(Path.of(path + ".shard" + i + ".slots")), "Shard " + i + " should have been closed cleanly.");
+        }
+        assertFalse(Files.exists(Path.of(path + ".shards")), "A set that failed to open should not get a manifest.");
+    }
+}
@@ -0,0 +1,108 @@
+package data;
+
+import data.binary.datums.ItemDatum;
+import data.databases.SlottedPageDatabase;
+import data.parsers.binary.ItemDatumRecordBinaryParser;
+import data.parsers.binary.ItemDatumRecordVariableLengthParser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SlottedPageDatabaseTest {
+
+    private SlottedPageDatabase<ItemDatum> db;
+    private Path tempFile;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        tempFile = Files.createTempFile("slotted", "db");
+        Files.delete(tempFile); // the database writes its own header into a new file
+        // A tiny buffer pool, so the tests run through page eviction as well
+        db = new SlottedPageDatabase<>(tempFile.toString(), new ItemDatumRecordVariableLengthParser(), 4);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        db.close();
+        Files.deleteIfExists(tempFile);
+    }
+
+    private static ItemDatum item(long id, String title) {
+        return new ItemDatum(title, "Knuth", id, true, 2, false, "Scott Library, floor " + id % 5);
+    }
+
+    @Test
+    public void longStringsAreNotTruncatedTest() {
+        String title = "The Art of Computer Programming, Volume 4B: Combinatorial Algorithms, Part 2 ".repeat(5);
+        ItemDatum longTitle = item(1, title);
+        db.add(new Record<>("1", longTitle));
+
+        assertTrue(title.length() > ItemDatum.TITLE_LENGTH, "The fixed-size format would truncate this title.");
+        assertEquals(title, db.read("1").getEntry().title);
+    }
+
+    @Test
+    public void fileIsSeveralTimesSmallerThanFixedSizeRecordsTest() {
+        int count = 5000;
+        List<Record<ItemDatum>> items = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            items.add(new Record<>(String.valueOf(i), item(1000 + i, "Intro to Algorithms " + i)));
+        }
+        db.addAll(items);
+        db.flush();
+
+        long fixedBytes = (long) count * ItemDatumRecordBinaryParser.RECORD_SIZE;
+        long pageBytes = (long) db.getPageCount() * SlottedPageDatabase.PAGE_SIZE;
+        assertTrue(pageBytes * 3 < fixedBytes, pageBytes + " bytes of pages for " + fixedBytes + " bytes of fixed-size records");
+        assertEquals(items.get(4321).getEntry(), db.read("4321").getEntry());
+    }
+
+    @Test
+    public void growingUpdatesAndDeletesKeepEveryRecordReadableTest() {
+        for (int i = 0; i < 2000; i++) {
+            db.add(new Record<>(String.valueOf(i), item(i, "Short")));
+        }
+        for (int i = 0; i < 2000; i += 2) {
+            db.update(String.valueOf(i), new Record<>(String.valueOf(i), item(i, "A much longer title ".repeat(10))));
+        }
+        for (int i = 1; i < 2000; i += 4) {
+            db.delete(String.valueOf(i));
+        }
+
+        assertEquals(1500, db.size());
+        assertNull(db.read("1"));
+        assertEquals("Short", db.read("3").getEntry().title);
+        assertEquals("A much longer title ".repeat(10), db.read("1998").getEntry().title);
+
+        int pages = db.getPageCount();
+        for (int i = 1; i < 2000; i += 4) {
+            db.add(new Record<>(String.valueOf(i), item(i, "Back")));
+        }
+        assertEquals(pages, db.getPageCount(), "Re-added records should fill the space the deletes freed.");
+    }
+
+    @Test
+    public void recordsSurviveReopenTest() {
+        for (int i = 0; i < 1000; i++) {
+            db.add(new Record<>(String.valueOf(i), item(i, "Title " + i)));
+        }
+        db.delete("500");
+        db.close();
+
+        db = new SlottedPageDatabase<>(tempFile.toString(), new ItemDatumRecordVariableLengthParser(), 4);
+
+        assertEquals(999, db.size());
+        assertEquals(999, db.readAll().size());
+        assertNull(db.read("500"));
+        assertEquals("Title 999", db.read("999").getEntry().title);
+        assertEquals(List.of("7", "900"), List.copyOf(db.readMany(List.of("7", "500", "900")).keySet()));
+    }
+}
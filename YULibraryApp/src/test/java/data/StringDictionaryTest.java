@@ -0,0 +1,135 @@
+package data;
+
+import data.binary.datums.ItemDatum;
+import data.binary.datums.UserDatum;
+import data.databases.LsmDatabase;
+import data.parsers.binary.ItemDatumRecordBinaryParser;
+import data.parsers.binary.StringDictionary;
+import data.parsers.binary.UserDatumRecordBinaryParser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StringDictionaryTest {
+
+    private static final String[] LOCATIONS = {"Scott Library", "Steacie Library", "Frost Library"};
+
+    private Path tempDir;
+    private Path dictionaryFile;
+    private StringDictionary dictionary;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("dictionary");
+        dictionaryFile = tempDir.resolve("strings.dict");
+        dictionary = new StringDictionary(dictionaryFile);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        dictionary.close();
+        // The dictionary, and the table with its segments and log
+        try (Stream<Path> files = Files.list(tempDir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(tempDir);
+    }
+
+    private static UserDatum user(int id) {
+        UserDatum user = new UserDatum();
+        user.userId = id;
+        user.email = "student" + id + "@my.yorku.ca";
+        user.username = "student" + id;
+        user.passwordHash = "hash" + id;
+        return user;
+    }
+
+    @Test
+    public void repeatedStringsAreStoredOnceTest() {
+        ItemDatumRecordBinaryParser items = new ItemDatumRecordBinaryParser(dictionary);
+        UserDatumRecordBinaryParser users = new UserDatumRecordBinaryParser(dictionary);
+
+        for (int i = 0; i < 300; i++) {
+            ItemDatum item = new ItemDatum("Title " + i, "Author " + i % 10, i, true, 1, false, LOCATIONS[i % 3]);
+            assertEquals(item, items.parseData(items.getData(new Record<>(String.valueOf(i), item))).getEntry());
+        }
+        assertEquals(13, dictionary.size(), "10 authors and 3 locations");
+
+        UserDatum user = user(42);
+        assertEquals(user, users.parseData(users.getData(new Record<>("42", user))).getEntry());
+        users.getData(new Record<>("43", user(43)));
+        // Two emails, two usernames and the one domain they share
+        assertEquals(13 + 5, dictionary.size());
+
+        assertTrue(items.getSize() * 4 < ItemDatumRecordBinaryParser.RECORD_SIZE, items.getSize() + " byte items");
+        assertEquals(UserDatumRecordBinaryParser.RECORD_SIZE - UserDatum.EMAIL_SIZE - UserDatum.USERNAME_SIZE + 2 * Integer.BYTES,
+                users.getSize());
+    }
+
+    @Test
+    public void codesSurviveReopenTest() {
+        int scott = dictionary.encode("Scott Library");
+        int email = dictionary.encode("reader@my.yorku.ca");
+        dictionary.close();
+
+        dictionary = new StringDictionary(dictionaryFile);
+
+        assertEquals(3, dictionary.size());
+        assertEquals("Scott Library", dictionary.decode(scott));
+        assertEquals("reader@my.yorku.ca", dictionary.decode(email));
+        assertEquals(scott, dictionary.encode("Scott Library"));
+        assertEquals(4, dictionary.encode("Frost Library"), "New strings should get the next code.");
+        assertEquals(0, dictionary.encode(""));
+        assertEquals("", dictionary.decode(0));
+        assertThrows(IllegalArgumentException.class, () -> dictionary.decode(99));
+    }
+
+    @Test
+    public void onlySyncedEntriesSurviveACrashTest() throws IOException {
+        int scott = dictionary.encode("Scott Library");
+        dictionary.sync();
+        dictionary.encode("Frost Library");
+        // Simulate a crash by copying the file before the second entry is synced
+        Path crashed = tempDir.resolve("crashed.dict");
+        Files.copy(dictionaryFile, crashed);
+
+        StringDictionary recovered = new StringDictionary(crashed);
+        try {
+            assertEquals(1, recovered.size(), "An entry that was never synced should not be counted.");
+            assertEquals("Scott Library", recovered.decode(scott));
+            assertEquals(2, recovered.encode("Steacie Library"), "The unsynced entry's code should be handed out again.");
+        } finally {
+            recovered.close();
+        }
+    }
+
+    @Test
+    public void tableReadsItsRecordsThroughTheDictionaryTest() {
+        String table = tempDir.resolve("items.db").toString();
+        LsmDatabase<ItemDatum> db = new LsmDatabase<>(table, new ItemDatumRecordBinaryParser(dictionary), 100, 4);
+        for (int i = 0; i < 500; i++) {
+            db.add(new Record<>(String.valueOf(i), new ItemDatum("Title " + i, "Knuth", i, true, 2, false, LOCATIONS[i % 3])));
+        }
+        db.close();
+        dictionary.close();
+
+        dictionary = new StringDictionary(dictionaryFile);
+        db = new LsmDatabase<>(table, new ItemDatumRecordBinaryParser(dictionary), 100, 4);
+        try {
+            assertEquals(500, db.readAll().size());
+            assertEquals("Steacie Library", db.read("301").getEntry().getLocation());
+            assertEquals("Knuth", db.read("7").getEntry().author);
+        } finally {
+            db.close();
+        }
+    }
+}
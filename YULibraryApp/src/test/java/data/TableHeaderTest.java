@@ -0,0 +1,203 @@
+package data;
+
+import data.binary.datums.UserDatum;
+import data.databases.HashBasedDatabase;
+import data.databases.TableVerifier;
+import data.databases.VerificationReport;
+import data.parsers.binary.StringDictionary;
+import data.parsers.binary.UserDatumRecordBinaryParser;
+import data.util.DataUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TableHeaderTest {
+
+    private static final int HEADER_SIZE = 4096; // the slots start one page into the file
+    private static final int CLEAN_FLAG_OFFSET = 28;
+    private static final int CAPACITY = 1009;
+    private static final int USERS = 300;
+    private static final int PLANTED_KEY = 999999;
+
+    private final UserDatumRecordBinaryParser parser = new UserDatumRecordBinaryParser();
+    private Path tempFile;
+    private UserDatum[] users;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        tempFile = Files.createTempFile("header", "db");
+        HashBasedDatabase<UserDatum> db = new HashBasedDatabase<>(tempFile.toString(), CAPACITY, parser);
+        users = new UserDatum[USERS];
+        for (int i = 0; i < users.length; i++) {
+            users[i] = DataUtils.generateRandomUserDatum();
+            users[i].userId = i + 1;
+            db.add(new Record<>(String.valueOf(i + 1), users[i]));
+        }
+        db.close();
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        for (String suffix : new String[]{"", ".bloom", ".slots", ".dict"}) {
+            Files.deleteIfExists(Path.of(tempFile + suffix));
+        }
+    }
+
+    /**
+     * Copies a live record into an empty slot under a new key, behind the database's back. Only a scan of the slots
+     * can find it.
+     */
+    private void plantRecord(long base) throws IOException {
+        int size = parser.getSize();
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer record = null;
+            for (int slot = 0; slot < CAPACITY; slot++) {
+                ByteBuffer bytes = ByteBuffer.allocate(size);
+                channel.read(bytes, base + (long) slot * size);
+                if (bytes.get(parser.getFlagOffset()) == 1 && record == null) {
+                    record = bytes;
+                } else if (bytes.get(parser.getFlagOffset()) == 0 && record != null) {
+                    record.putInt(parser.getKeyOffset(), PLANTED_KEY).flip();
+                    channel.write(record, base + (long) slot * size);
+                    return;
+                }
+            }
+        }
+        fail("No empty slot after a live one");
+    }
+
+    private void assertAllUsers(HashBasedDatabase<UserDatum> db) {
+        for (int i = 0; i < users.length; i++) {
+            assertEquals(users[i], db.read(String.valueOf(i + 1)).getEntry());
+        }
+    }
+
+    @Test
+    public void cleanCloseReopensWithoutScanningTest() throws IOException {
+        assertTrue(Files.exists(Path.of(tempFile + ".slots")), "A clean close should save the slot index.");
+        plantRecord(HEADER_SIZE);
+
+        HashBasedDatabase<UserDatum> reopened = new HashBasedDatabase<>(tempFile.toString(), CAPACITY, parser);
+        assertFalse(Files.exists(Path.of(tempFile + ".slots")), "The saved index should be consumed on open.");
+        assertEquals(USERS, reopened.readAll().size(), "readAll should see every record right after a restart.");
+        assertNull(reopened.read(String.valueOf(PLANTED_KEY)), "A record no scan has seen should not be found.");
+        assertAllUsers(reopened);
+        reopened.close();
+    }
+
+    @Test
+    public void uncleanShutdownRescansTest() throws IOException {
+        plantRecord(HEADER_SIZE);
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0}), CLEAN_FLAG_OFFSET); // as if the process had died
+        }
+
+        HashBasedDatabase<UserDatum> reopened = new HashBasedDatabase<>(tempFile.toString(), CAPACITY, parser);
+        assertEquals(USERS + 1, reopened.readAll().size(), "The scan should find every record in the slots.");
+        assertNotNull(reopened.read(String.valueOf(PLANTED_KEY)));
+        assertAllUsers(reopened);
+        reopened.close();
+    }
+
+    @Test
+    public void savedBloomFilterIsRebuiltWithTheIndexTest() throws IOException {
+        assertTrue(Files.exists(Path.of(tempFile + ".bloom")), "A clean close should save the Bloom filter.");
+        Files.delete(Path.of(tempFile + ".slots")); // forces a scan, which must refill the filter too
+        plantRecord(HEADER_SIZE);
+
+        HashBasedDatabase<UserDatum> reopened = new HashBasedDatabase<>(tempFile.toString(), CAPACITY, parser);
+        assertFalse(Files.exists(Path.of(tempFile + ".bloom")), "The saved filter should be consumed on open.");
+        assertEquals(USERS + 1, reopened.readAll().size(), "The scan should find every record in the slots.");
+        assertNotNull(reopened.read(String.valueOf(PLANTED_KEY)), "A key the scan indexed should pass the filter too.");
+        assertAllUsers(reopened);
+        reopened.close();
+    }
+
+    @Test
+    public void staleSavedIndexFallsBackToProbingTest() throws IOException {
+        int size = parser.getSize();
+        int movedKey;
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // Copy the first live record to the end of its chain, then give its old slot another key, so the saved
+            // index keeps pointing at a slot that no longer holds it
+            ByteBuffer record = null;
+            long indexedAt = -1;
+            for (int slot = 0; slot < CAPACITY; slot++) {
+                ByteBuffer bytes = ByteBuffer.allocate(size);
+                long offset = HEADER_SIZE + (long) slot * size;
+                channel.read(bytes, offset);
+                if (bytes.get(parser.getFlagOffset()) == 1 && record == null) {
+                    record = bytes;
+                    indexedAt = offset;
+                } else if (bytes.get(parser.getFlagOffset()) == 0 && record != null) {
+                    channel.write(record.flip(), offset);
+                    break;
+                }
+            }
+            assertNotNull(record, "No live record to move");
+            movedKey = record.getInt(parser.getKeyOffset());
+            channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, PLANTED_KEY), indexedAt + parser.getKeyOffset());
+        }
+
+        HashBasedDatabase<UserDatum> reopened = new HashBasedDatabase<>(tempFile.toString(), CAPACITY, parser);
+        assertEquals(users[movedKey - 1], reopened.read(String.valueOf(movedKey)).getEntry(),
+                "A read the index keeps sending to the wrong slot should find the record by probing.");
+        reopened.close();
+    }
+
+    @Test
+    public void reopeningWithMoreSlotsGrowsByRehashingTest() throws IOException {
+        int larger = 2017;
+        HashBasedDatabase<UserDatum> grown = new HashBasedDatabase<>(tempFile.toString(), larger, parser);
+        assertEquals(larger, grown.getCapacity(), "A larger maxRecords should grow the table.");
+        assertAllUsers(grown);
+        grown.close();
+
+        VerificationReport report = TableVerifier.verify(tempFile, parser);
+        assertTrue(report.isClean(), report.getProblems().toString());
+        assertEquals(larger, report.getCapacity(), "The header should describe the layout the records are in.");
+        assertEquals(USERS, report.getLiveRecords());
+
+        HashBasedDatabase<UserDatum> reopened = new HashBasedDatabase<>(tempFile.toString(), CAPACITY, parser);
+        assertEquals(larger, reopened.getCapacity(), "A smaller maxRecords should not shrink the table.");
+        assertAllUsers(reopened);
+        reopened.close();
+    }
+
+    @Test
+    public void tableWithoutHeaderIsUpgradedTest() throws IOException {
+        byte[] file = Files.readAllBytes(tempFile);
+        Files.write(tempFile, Arrays.copyOfRange(file, HEADER_SIZE, file.length)); // the layout before headers
+        Files.delete(Path.of(tempFile + ".slots"));
+        Files.delete(Path.of(tempFile + ".bloom"));
+
+        HashBasedDatabase<UserDatum> upgraded = new HashBasedDatabase<>(tempFile.toString(), CAPACITY, parser);
+        assertAllUsers(upgraded);
+        upgraded.close();
+        byte[] magic = Arrays.copyOf(Files.readAllBytes(tempFile), 4);
+        assertArrayEquals("HDB1".getBytes(), magic, "The table should have been rewritten with a header.");
+
+        HashBasedDatabase<UserDatum> reopened = new HashBasedDatabase<>(tempFile.toString(), CAPACITY, parser);
+        assertEquals(USERS, reopened.readAll().size());
+        reopened.close();
+    }
+
+    @Test
+    public void otherRecordSizeIsRejectedTest() {
+        try (StringDictionary dictionary = new StringDictionary(Path.of(tempFile + ".dict"))) {
+            UserDatumRecordBinaryParser compact = new UserDatumRecordBinaryParser(dictionary);
+            assertThrows(IllegalArgumentException.class,
+                    () -> new HashBasedDatabase<>(tempFile.toString(), CAPACITY, compact));
+        }
+    }
+}
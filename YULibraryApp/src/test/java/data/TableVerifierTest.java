@@ -0,0 +1,148 @@
+package data;
+
+import data.binary.datums.UserDatum;
+import data.databases.HashBasedDatabase;
+import data.databases.TableVerifier;
+import data.databases.VerificationReport;
+import data.parsers.binary.UserDatumRecordBinaryParser;
+import data.util.DataUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TableVerifierTest {
+
+    private static final int HEADER_SIZE = 4096;
+    private static final int CAPACITY = 4001;
+    private static final int USERS = 1000;
+    private static final int DELETED = 100;
+
+    private final UserDatumRecordBinaryParser parser = new UserDatumRecordBinaryParser();
+    private Path tempFile;
+    private Path rebuiltFile;
+    private UserDatum[] users;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        tempFile = Files.createTempFile("verify", "db");
+        rebuiltFile = Path.of(tempFile + ".rebuilt");
+        HashBasedDatabase<UserDatum> db = new HashBasedDatabase<>(tempFile.toString(), CAPACITY, parser);
+        users = new UserDatum[USERS];
+        for (int i = 0; i < users.length; i++) {
+            users[i] = DataUtils.generateRandomUserDatum();
+            users[i].userId = i + 1;
+            db.add(new Record<>(String.valueOf(i + 1), users[i]));
+        }
+        db.flush();
+        for (int i = 1; i <= DELETED; i++) {
+            db.delete(String.valueOf(i));
+        }
+        db.close();
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        for (Path file : new Path[]{tempFile, rebuiltFile}) {
+            for (String suffix : new String[]{"", ".bloom", ".slots"}) {
+                Files.deleteIfExists(Path.of(file + suffix));
+            }
+        }
+    }
+
+    private ByteBuffer readSlot(FileChannel channel, int slot) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(parser.getSize());
+        channel.read(bytes, HEADER_SIZE + (long) slot * parser.getSize());
+        return bytes;
+    }
+
+    private int findSlot(FileChannel channel, int flag, int from) throws IOException {
+        for (int slot = from; slot < CAPACITY; slot++) {
+            if (readSlot(channel, slot).get(parser.getFlagOffset()) == flag) {
+                return slot;
+            }
+        }
+        throw new AssertionError("No slot with flag " + flag);
+    }
+
+    @Test
+    public void intactTableVerifiesCleanTest() {
+        VerificationReport report = TableVerifier.verify(tempFile, parser);
+        assertTrue(report.isClean(), report + " " + report.getProblems());
+        assertEquals(USERS - DELETED, report.getLiveRecords());
+        assertEquals(DELETED, report.getTombstoneCount());
+        assertEquals(CAPACITY - USERS, report.getEmptySlots());
+        assertEquals((long) CAPACITY * parser.getSize(), report.getBytesScanned());
+
+        HashBasedDatabase<UserDatum> reopened = new HashBasedDatabase<>(tempFile.toString(), CAPACITY, parser);
+        reopened.add(new Record<>("5000", DataUtils.generateRandomUserDatum()));
+        VerificationReport online = reopened.verify();
+        assertTrue(online.isClean(), online + " " + online.getProblems());
+        assertEquals(USERS - DELETED + 1, online.getLiveRecords(), "Buffered changes should be flushed first.");
+        reopened.close();
+    }
+
+    @Test
+    public void damageIsFoundAndRebuildKeepsWhatIsIntactTest() throws IOException {
+        int corruptKey;
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            int corrupted = findSlot(channel, 1, 0);
+            corruptKey = readSlot(channel, corrupted).getInt(parser.getKeyOffset());
+            channel.write(ByteBuffer.wrap(new byte[]{7}), HEADER_SIZE + (long) corrupted * parser.getSize() + parser.getFlagOffset());
+
+            // A second copy of some record, in the last empty slot: far from home, behind empty slots
+            int copied = findSlot(channel, 1, corrupted + 1);
+            int lastEmpty = CAPACITY - 1;
+            while (readSlot(channel, lastEmpty).get(parser.getFlagOffset()) != 0) {
+                lastEmpty--;
+            }
+            channel.write(readSlot(channel, copied).flip().position(0), HEADER_SIZE + (long) lastEmpty * parser.getSize());
+        }
+
+        VerificationReport report = TableVerifier.verify(tempFile, parser);
+        assertFalse(report.isClean());
+        assertEquals(1, report.getCorruptRecords(), report.getProblems().toString());
+        assertEquals(1, report.getDuplicateKeys());
+        assertEquals(1, report.getBrokenChains());
+        assertEquals(1, report.getOrphanedIndexEntries(), "The saved index still points at the corrupted slot.");
+        assertFalse(report.isCountsMatch(), "The header counts the corrupted record as live.");
+        assertFalse(report.getProblems().isEmpty());
+
+        TableVerifier.rebuild(tempFile, rebuiltFile, parser);
+        assertThrows(IllegalArgumentException.class, () -> TableVerifier.rebuild(tempFile, rebuiltFile, parser));
+        VerificationReport rebuilt = TableVerifier.verify(rebuiltFile, parser);
+        assertTrue(rebuilt.isClean(), rebuilt + " " + rebuilt.getProblems());
+        assertEquals(USERS - DELETED - 1, rebuilt.getLiveRecords());
+
+        HashBasedDatabase<UserDatum> db = new HashBasedDatabase<>(rebuiltFile.toString(), CAPACITY, parser);
+        for (int i = DELETED; i < users.length; i++) {
+            if (i + 1 != corruptKey) {
+                assertEquals(users[i], db.read(String.valueOf(i + 1)).getEntry());
+            }
+        }
+        assertNull(db.read(String.valueOf(corruptKey)));
+        db.close();
+    }
+
+    @Test
+    public void onlineVerifySeesDamageToTheOpenTableTest() throws IOException {
+        HashBasedDatabase<UserDatum> db = new HashBasedDatabase<>(tempFile.toString(), CAPACITY, parser);
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            int corrupted = findSlot(channel, 1, 0);
+            channel.write(ByteBuffer.wrap(new byte[]{7}), HEADER_SIZE + (long) corrupted * parser.getSize() + parser.getFlagOffset());
+        }
+        VerificationReport report = db.verify();
+        assertEquals(1, report.getCorruptRecords());
+        assertEquals(1, report.getOrphanedIndexEntries());
+        assertFalse(report.isClean());
+        db.close();
+    }
+}
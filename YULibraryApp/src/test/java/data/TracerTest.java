@@ -0,0 +1,164 @@
+package data;
+
+import data.util.AsyncTraceAppender;
+import data.util.Tracer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TracerTest {
+
+    private final Logger logger = Logger.getLogger(TracerTest.class.getName());
+    private final List<LogRecord> received = new CopyOnWriteArrayList<>();
+    private final Handler capture = new Handler() {
+        @Override
+        public void publish(LogRecord record) {
+            received.add(record);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    @BeforeEach
+    public void setUp() {
+        logger.setUseParentHandlers(false);
+        logger.addHandler(capture);
+        capture.setLevel(Level.ALL);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        logger.removeHandler(capture);
+        logger.setLevel(null);
+        Tracer.setSampleEvery(1);
+    }
+
+    private void awaitReceived(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (received.size() < count && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void disabledTracesBuildNothingTest() throws InterruptedException {
+        logger.setLevel(Level.INFO);
+        Tracer tracer = Tracer.forClass(TracerTest.class);
+        Object costly = new Object() {
+            @Override
+            public String toString() {
+                fail("A disabled trace must not format its arguments.");
+                return "";
+            }
+        };
+
+        assertFalse(tracer.isEnabled());
+        tracer.trace("READ {0}", costly);
+        Thread.sleep(50);
+        assertTrue(received.isEmpty());
+    }
+
+    @Test
+    public void enabledTracesArriveFormattedFromTheCallersThreadTest() throws InterruptedException {
+        logger.setLevel(Level.FINE);
+        Tracer tracer = Tracer.forClass(TracerTest.class);
+
+        for (int i = 0; i < 100; i++) {
+            tracer.trace("WROTE {0} OF {1}", "key" + i, "table");
+        }
+        awaitReceived(100);
+
+        assertEquals(100, received.size());
+        LogRecord first = received.get(0);
+        assertEquals(Level.FINE, first.getLevel());
+        assertEquals("WROTE key0 OF table", new SimpleFormatter().formatMessage(first));
+        assertEquals(Thread.currentThread().getId(), first.getLongThreadID());
+    }
+
+    @Test
+    public void intArgumentsAreFormattedAsNumbersTest() throws InterruptedException {
+        logger.setLevel(Level.FINE);
+        Tracer tracer = Tracer.forClass(TracerTest.class);
+
+        tracer.trace("ADD {0,number,#} RECORDS", 12345);
+        awaitReceived(1);
+
+        assertEquals("ADD 12345 RECORDS", new SimpleFormatter().formatMessage(received.get(0)));
+    }
+
+    @Test
+    public void samplingRecordsAboutOneInNTest() throws InterruptedException {
+        logger.setLevel(Level.FINE);
+        Tracer tracer = Tracer.forClass(TracerTest.class);
+        Tracer.setSampleEvery(10);
+
+        for (int i = 0; i < 20000; i++) {
+            tracer.trace("READ {0}", i);
+        }
+        Thread.sleep(200);
+
+        assertTrue(received.size() > 1500 && received.size() < 2500, received.size() + " of 20000 traces");
+    }
+
+    @Test
+    public void fullBufferDropsInsteadOfBlockingTest() throws InterruptedException {
+        logger.setLevel(Level.FINE);
+        CountDownLatch release = new CountDownLatch(1);
+        Handler blocking = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        logger.addHandler(blocking);
+        try (AsyncTraceAppender appender = new AsyncTraceAppender(16)) {
+            int accepted = 0;
+            for (int i = 0; i < 100; i++) {
+                LogRecord record = new LogRecord(Level.FINE, "TRACE " + i);
+                record.setLoggerName(logger.getName());
+                if (appender.append(record)) {
+                    accepted++;
+                }
+            }
+            // 16 in the buffer, plus at most one the drain thread took before blocking
+            assertTrue(accepted <= 17, accepted + " accepted");
+            assertEquals(100 - accepted, appender.getDroppedCount());
+
+            release.countDown();
+            awaitReceived(accepted);
+            assertEquals(accepted, received.size());
+        } finally {
+            logger.removeHandler(blocking);
+        }
+    }
+}
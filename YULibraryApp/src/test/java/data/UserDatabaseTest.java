@@ -2,7 +2,10 @@ package data;
 
 import data.binary.UserBinaryEntry;
 import data.binary.datums.UserDatum;
+import data.databases.FlushPolicy;
 import data.databases.HashBasedDatabase;
+import data.databases.HashDatabaseOptions;
+import data.databases.IndexDefinition;
 import data.parsers.binary.UserDatumRecordBinaryParser;
 import data.util.DataUtils;
 import org.junit.jupiter.api.AfterEach;
@@ -14,31 +17,63 @@ import java.lang.reflect.Field;
 import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 public class UserDatabaseTest {
 
     private HashBasedDatabase<UserDatum> db;
+    private Path tempDir;
     private Path tempFile;
 
     @BeforeEach
     public void setUp() throws IOException {
-        // Create a temporary file to act as our database for testing
-        tempFile = Files.createTempFile("test", "db");
-        db = new HashBasedDatabase<>(tempFile.toString(), 49999, new UserDatumRecordBinaryParser());
+        // Every table a test opens lives in its own directory, so the tables and the files next to them go together
+        tempDir = Files.createTempDirectory("users");
+        tempFile = tempDir.resolve("test.db");
+        db = open(tempFile, 49999, new HashDatabaseOptions());
     }
 
     @AfterEach
     public void tearDown() throws IOException {
-        // Delete the temporary file after each test
-        Files.deleteIfExists(tempFile);
+        db.close();
+        try (Stream<Path> files = Files.walk(tempDir)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private static HashBasedDatabase<UserDatum> open(Path table, int maxRecords, HashDatabaseOptions options) {
+        return new HashBasedDatabase<>(table.toString(), maxRecords, new UserDatumRecordBinaryParser(), options);
+    }
+
+    /**
+     * Adds {@code count} random users keyed 1 to {@code count}.
+     *
+     * @return The users, the one keyed {@code i + 1} at index {@code i}.
+     */
+    private static UserDatum[] addUsers(HashBasedDatabase<UserDatum> target, int count) {
+        UserDatum[] users = new UserDatum[count];
+        for (int i = 0; i < users.length; i++) {
+            users[i] = DataUtils.generateRandomUserDatum();
+            users[i].userId = i + 1;
+            target.add(new Record<>(String.valueOf(i + 1), users[i]));
+        }
+        return users;
     }
 
 
@@ -216,6 +251,295 @@ public class UserDatabaseTest {
         assertEquals(1, records.size(), "Database should contain exactly 1 record after deletion.");
         assertEquals(userToAdd.userId, records.get(0).getEntry().userId, "The remaining record should have the userId of the user that was not deleted.");
     }
+    @Test
+    public void tableGrowsPastInitialCapacityTest() throws IOException {
+        HashBasedDatabase<UserDatum> smallDb = open(tempDir.resolve("small.db"), 11, new HashDatabaseOptions());
+        UserDatum[] users = addUsers(smallDb, 200);
+        smallDb.flush();
+
+        assertTrue(smallDb.getCapacity() > users.length, "The table should have grown to hold every record.");
+        for (UserDatum user : users) {
+            Record<UserDatum> retrievedRecord = smallDb.read(String.valueOf(user.userId));
+            assertNotNull(retrievedRecord, "Record " + user.userId + " should survive the rehash.");
+            assertEquals(user, retrievedRecord.getEntry());
+        }
+        smallDb.close();
+    }
+
+    @Test
+    public void writeAheadLogSurvivesCrashTest() throws IOException {
+        Path walDir = Files.createDirectory(tempDir.resolve("wal"));
+        Path crashDir = Files.createDirectory(tempDir.resolve("crashed"));
+        HashDatabaseOptions options = new HashDatabaseOptions().writeAheadLog(true).flushPolicy(stats -> false);
+        HashBasedDatabase<UserDatum> walDb = open(walDir.resolve("users.db"), 1009, options);
+        UserDatum[] users = addUsers(walDb, 50); // never flushed, so they are only in the change buffer and the log
+
+        // Simulate a crash by copying the files as they are now, before the live instance flushes or closes
+        try (var files = Files.list(walDir)) {
+            for (Path file : files.toList()) {
+                Files.copy(file, crashDir.resolve(file.getFileName()));
+            }
+        }
+        walDb.close();
+
+        HashBasedDatabase<UserDatum> recovered = open(crashDir.resolve("users.db"), 1009, options);
+        for (UserDatum user : users) {
+            Record<UserDatum> retrievedRecord = recovered.read(String.valueOf(user.userId));
+            assertNotNull(retrievedRecord, "Record " + user.userId + " should be replayed from the write-ahead log.");
+            assertEquals(user, retrievedRecord.getEntry());
+        }
+        recovered.close();
+    }
+
+    @Test
+    public void failedWriteAheadLogRollKeepsTheLogUsableTest() throws IOException {
+        Path walTable = tempDir.resolve("users.db");
+        HashDatabaseOptions options = new HashDatabaseOptions().writeAheadLog(true).flushPolicy(stats -> false);
+        HashBasedDatabase<UserDatum> walDb = open(walTable, 1009, options);
+        Path blocker = Files.createDirectory(Path.of(walTable + ".wal.1")); // the next segment cannot be created
+        UserDatum first = DataUtils.generateRandomUserDatum();
+        first.userId = 1;
+        walDb.add(new Record<>("1", first));
+        walDb.flush();
+        assertEquals(1, walDb.pendingStats().getPendingRecords(), "A flush that cannot seal the log should be skipped.");
+
+        UserDatum second = DataUtils.generateRandomUserDatum();
+        second.userId = 2;
+        walDb.add(new Record<>("2", second)); // still logged to the segment the failed roll kept open
+        Files.delete(blocker);
+        walDb.flush();
+        assertEquals(0, walDb.pendingStats().getPendingRecords());
+        walDb.close();
+
+        HashBasedDatabase<UserDatum> reopened = open(walTable, 1009, options);
+        assertEquals(first, reopened.read("1").getEntry());
+        assertEquals(second, reopened.read("2").getEntry());
+        reopened.close();
+    }
+
+    @Test
+    public void backgroundFlusherAppliesPolicyTest() throws IOException, InterruptedException {
+        HashDatabaseOptions options = new HashDatabaseOptions()
+                .flushPolicy(FlushPolicy.byCount(10))
+                .flushPollInterval(Duration.ofMillis(5));
+        HashBasedDatabase<UserDatum> flushDb = open(tempDir.resolve("flush.db"), 1009, options);
+        for (int i = 1; i <= 9; i++) {
+            UserDatum user = DataUtils.generateRandomUserDatum();
+            user.userId = i;
+            flushDb.add(new Record<>(String.valueOf(i), user));
+        }
+        Thread.sleep(100);
+        assertEquals(9, flushDb.pendingStats().getPendingRecords(), "Below the count threshold nothing should be flushed.");
+
+        UserDatum tenth = DataUtils.generateRandomUserDatum();
+        tenth.userId = 10;
+        flushDb.add(new Record<>("10", tenth));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (flushDb.pendingStats().getPendingRecords() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(0, flushDb.pendingStats().getPendingRecords(), "The flusher should drain the buffer once the policy is met.");
+        flushDb.close();
+    }
+
+    @Test
+    public void readsSeeBufferedChangesWithoutFlushingTest() throws IOException {
+        HashDatabaseOptions options = new HashDatabaseOptions().flushPolicy(stats -> false);
+        HashBasedDatabase<UserDatum> bufferedDb = open(tempDir.resolve("buffered.db"), 1009, options);
+        UserDatum kept = DataUtils.generateRandomUserDatum();
+        kept.userId = 1;
+        UserDatum removed = DataUtils.generateRandomUserDatum();
+        removed.userId = 2;
+        bufferedDb.add(new Record<>("1", kept));
+        bufferedDb.add(new Record<>("2", removed));
+        bufferedDb.flush();
+
+        kept.email = "buffered@example.com";
+        bufferedDb.update("1", new Record<>("1", kept));
+        bufferedDb.delete("2");
+
+        assertEquals("buffered@example.com", bufferedDb.read("1").getEntry().email, "A read should see the buffered update.");
+        assertNull(bufferedDb.read("2"), "A read should see the buffered delete.");
+        assertEquals(1, bufferedDb.readAll().size(), "readAll should lay the buffered changes over the table.");
+        assertEquals(2, bufferedDb.pendingStats().getPendingRecords(), "Reads should not flush the buffer.");
+        bufferedDb.close();
+    }
+
+    @Test
+    public void slotIndexIsRebuiltOnReopenTest() throws IOException {
+        Path indexedFile = tempDir.resolve("indexed.db");
+        HashBasedDatabase<UserDatum> indexedDb = open(indexedFile, 1009, new HashDatabaseOptions());
+        UserDatum[] users = addUsers(indexedDb, 200);
+        indexedDb.flush();
+        for (int i = 0; i < users.length; i += 2) {
+            indexedDb.delete(String.valueOf(i + 1));
+        }
+        indexedDb.close();
+
+        HashBasedDatabase<UserDatum> reopened = open(indexedFile, 1009, new HashDatabaseOptions());
+        for (int i = 0; i < users.length; i++) {
+            Record<UserDatum> retrievedRecord = reopened.read(String.valueOf(i + 1));
+            if (i % 2 == 0) {
+                assertNull(retrievedRecord, "Deleted record " + (i + 1) + " should stay deleted after reopening.");
+            } else {
+                assertNotNull(retrievedRecord, "Record " + (i + 1) + " should be found through the rebuilt index.");
+                assertEquals(users[i], retrievedRecord.getEntry());
+            }
+        }
+        reopened.close();
+    }
+
+    @Test
+    public void deletesLeaveTombstonesThatAreCleanedUpTest() throws IOException, InterruptedException {
+        HashDatabaseOptions options = new HashDatabaseOptions().maxTombstoneRatio(0.1);
+        HashBasedDatabase<UserDatum> churnDb = open(tempDir.resolve("churn.db"), 211, options);
+        UserDatum[] users = addUsers(churnDb, 60);
+        churnDb.flush();
+        for (int i = 0; i < users.length; i += 2) {
+            churnDb.delete(String.valueOf(i + 1));
+        }
+        churnDb.flush();
+
+        // 30 tombstones in 211 slots is over the 10% threshold, so a cleanup rehash runs in the background
+        long deadline = System.currentTimeMillis() + 5000;
+        while (churnDb.getTombstoneCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(0, churnDb.getTombstoneCount(), "The cleanup should drop every tombstone.");
+        assertEquals(211, churnDb.getCapacity(), "A cleanup should not grow the table.");
+        for (int i = 1; i < users.length; i += 2) {
+            Record<UserDatum> retrievedRecord = churnDb.read(String.valueOf(i + 1));
+            assertNotNull(retrievedRecord, "Record " + (i + 1) + " should survive the deletes around it.");
+            assertEquals(users[i], retrievedRecord.getEntry());
+        }
+        churnDb.close();
+    }
+
+    @Test
+    public void addAllAndReadManyTest() {
+        List<Record<UserDatum>> records = new ArrayList<>();
+        for (int i = 1; i <= 20; i++) {
+            UserDatum user = DataUtils.generateRandomUserDatum();
+            user.userId = i;
+            records.add(new Record<>(String.valueOf(i), user));
+        }
+        db.addAll(records.subList(0, 10));
+        db.flush();
+        db.addAll(records.subList(10, 20)); // still buffered when read back
+        db.delete("5");
+
+        Map<String, Record<UserDatum>> results = db.readMany(List.of("15", "3", "5", "999", "12", "1"));
+
+        assertEquals(List.of("15", "3", "12", "1"), new ArrayList<>(results.keySet()), "Missing and deleted keys should be left out, the rest kept in order.");
+        assertEquals(records.get(14).getEntry(), results.get("15").getEntry());
+        assertEquals(records.get(2).getEntry(), results.get("3").getEntry());
+    }
+
+    @Test
+    public void parallelStreamVisitsEveryRecordOnceTest() {
+        for (int i = 1; i <= 3000; i++) {
+            UserDatum user = DataUtils.generateRandomUserDatum();
+            user.userId = i;
+            db.add(new Record<>(String.valueOf(i), user));
+        }
+        db.flush();
+        db.delete("10");
+        UserDatum buffered = DataUtils.generateRandomUserDatum();
+        buffered.userId = 3001;
+        db.add(new Record<>("3001", buffered));
+
+        List<String> keys = db.stream().parallel().map(Record::getKey).collect(Collectors.toList());
+
+        assertEquals(3000, keys.size(), "The scan should skip the buffered delete and include the buffered add.");
+        assertEquals(3000, new HashSet<>(keys).size(), "No record should be reported twice.");
+        assertFalse(keys.contains("10"));
+        assertTrue(keys.contains("3001"));
+    }
+
+    @Test
+    public void tableMappedAsSeveralRegionsTest() throws IOException {
+        Path regionedFile = tempDir.resolve("regioned.db");
+        // A region this small holds only a few records, so the table spans many mappings
+        HashDatabaseOptions options = new HashDatabaseOptions().mappingRegionSize(1000);
+        HashBasedDatabase<UserDatum> regionedDb = open(regionedFile, 11, options);
+        UserDatum[] users = addUsers(regionedDb, 300);
+        regionedDb.flush();
+        regionedDb.close();
+
+        HashBasedDatabase<UserDatum> reopened = open(regionedFile, 11, options);
+        for (int i = 0; i < users.length; i++) {
+            Record<UserDatum> retrievedRecord = reopened.read(String.valueOf(i + 1));
+            assertNotNull(retrievedRecord, "Record " + (i + 1) + " should be found in its region after reopening.");
+            assertEquals(users[i], retrievedRecord.getEntry());
+        }
+        assertEquals(users.length, reopened.readAll().size());
+        reopened.close();
+    }
+
+    @Test
+    public void bloomFilterIsSavedOnCloseTest() throws IOException {
+        Path filteredFile = tempDir.resolve("filtered.db");
+        Path bloomFile = Path.of(filteredFile + ".bloom");
+        HashBasedDatabase<UserDatum> filteredDb = open(filteredFile, 1009, new HashDatabaseOptions());
+        UserDatum[] users = addUsers(filteredDb, 200);
+        filteredDb.flush();
+        filteredDb.close();
+        assertTrue(Files.exists(bloomFile), "A clean close should save the Bloom filter next to the data file.");
+
+        HashBasedDatabase<UserDatum> reopened = open(filteredFile, 1009, new HashDatabaseOptions());
+        assertFalse(Files.exists(bloomFile), "The saved filter should be consumed on open, so a crash cannot leave a stale one.");
+        for (int i = 0; i < users.length; i++) {
+            assertEquals(users[i], reopened.read(String.valueOf(i + 1)).getEntry());
+        }
+        for (int i = users.length + 1; i <= 5000; i++) {
+            assertNull(reopened.read(String.valueOf(i)), "Key " + i + " was never written.");
+        }
+        reopened.close();
+    }
+
+    @Test
+    public void secondaryIndexFindsUsersByEmailTest() throws IOException {
+        Path indexedFile = tempDir.resolve("emails.db");
+        Path indexFile = Path.of(indexedFile + ".email.idx");
+        List<IndexDefinition<UserDatum>> indexes = List.of(IndexDefinition.of("email", user -> user.email));
+        HashBasedDatabase<UserDatum> indexedDb = new HashBasedDatabase<>(indexedFile.toString(), 1009, new UserDatumRecordBinaryParser(), new HashDatabaseOptions(), indexes);
+        UserDatum[] users = new UserDatum[300];
+        for (int i = 0; i < users.length; i++) {
+            users[i] = DataUtils.generateRandomUserDatum();
+            users[i].userId = i + 1;
+            users[i].email = "user" + (i + 1) + "@example.com";
+            indexedDb.add(new Record<>(String.valueOf(i + 1), users[i]));
+        }
+        assertEquals(users[41], indexedDb.findBy("email", "user42@example.com").get(0).getEntry(), "Buffered records should be found before a flush.");
+        indexedDb.flush();
+
+        users[9].email = "renamed@example.com";
+        indexedDb.update("10", new Record<>("10", users[9]));
+        indexedDb.flush();
+        indexedDb.delete("20");
+        indexedDb.flush();
+
+        assertEquals(users[99], indexedDb.findBy("email", "user100@example.com").get(0).getEntry());
+        assertEquals(users[9], indexedDb.findBy("email", "renamed@example.com").get(0).getEntry());
+        assertTrue(indexedDb.findBy("email", "user10@example.com").isEmpty(), "The old value should no longer match.");
+        assertTrue(indexedDb.findBy("email", "user20@example.com").isEmpty(), "Deleted records should not be found.");
+        assertThrows(IllegalArgumentException.class, () -> indexedDb.findBy("username", "anyone"));
+        indexedDb.close();
+        assertTrue(Files.exists(indexFile), "The index should live in its own file next to the table.");
+
+        HashBasedDatabase<UserDatum> reopened = new HashBasedDatabase<>(indexedFile.toString(), 1009, new UserDatumRecordBinaryParser(), new HashDatabaseOptions(), indexes);
+        for (int i = 0; i < users.length; i++) {
+            List<Record<UserDatum>> found = reopened.findBy("email", users[i].email);
+            if (i == 19) {
+                assertTrue(found.isEmpty());
+            } else {
+                assertEquals(1, found.size(), "Exactly one user should have " + users[i].email);
+                assertEquals(users[i], found.get(0).getEntry());
+            }
+        }
+        reopened.close();
+    }
+
     @Test
     public void testsetentry() throws IOException{
         String b="k";
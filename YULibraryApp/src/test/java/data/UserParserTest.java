@@ -2,9 +2,11 @@ package data;
 
 import data.binary.datums.UserDatum;
 import data.parsers.binary.UserDatumBinaryParser;
+import data.parsers.binary.UserDatumRecordBinaryParser;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 public class UserParserTest {
@@ -31,4 +33,25 @@ public class UserParserTest {
         // Verify that the original and parsed UserDatum objects are equal
         Assertions.assertEquals(originalUserDatum, parsedUserDatum);
     }
+
+    @Test
+    public void testKeyAndFlagOffsets() {
+        UserDatum user = new UserDatum();
+        user.userId = 777;
+        user.email = "offsets@example.com";
+        user.username = "offsets";
+        user.passwordHash = "hash";
+        user.setFlag(true);
+
+        // The key and flag reported by the parser must be where getData actually writes them
+        UserDatumRecordBinaryParser parser = new UserDatumRecordBinaryParser();
+        byte[] recordBytes = parser.getData(new Record<>("777", user));
+        ByteBuffer buffer = ByteBuffer.wrap(recordBytes);
+        Assertions.assertEquals(Integer.BYTES, parser.getKeyWidth());
+        Assertions.assertEquals(777, buffer.getInt(parser.getKeyOffset()));
+        Assertions.assertEquals(1, recordBytes[parser.getFlagOffset()]);
+
+        user.setFlag(false);
+        Assertions.assertEquals(0, parser.getData(new Record<>("777", user))[parser.getFlagOffset()]);
+    }
 }